@@ -0,0 +1,128 @@
+package com.azero.services.iot.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the payload codecs per codec and compression level, on a small
+ * shadow document and on a larger batch of telemetry readings. The
+ * {@code megabytes} counter is the rate of uncompressed payload bytes going
+ * through the codec, in MB/s, and the bytes in and out of each payload are
+ * printed when a trial starts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PayloadCodecBenchmark {
+
+    private static final String SHADOW = "{\"state\":{\"reported\":{\"power\":\"on\",\"brightness\":80,"
+            + "\"color\":\"warm\",\"firmware\":\"1.2.3\"}},\"clientToken\":\"device-0001-42\"}";
+
+    /** A typical shadow document, with other values than the measured one. */
+    private static final String DICTIONARY = "{\"state\":{\"reported\":{\"power\":\"off\",\"brightness\":20,"
+            + "\"color\":\"cold\",\"firmware\":\"1.2.2\"}},\"clientToken\":\"device-0002-7\"}";
+
+    @Param({ "deflate-1", "deflate-6", "deflate-9", "deflate-dictionary-6", "gzip" })
+    public String codec;
+
+    @Param({ "shadow", "telemetry" })
+    public String payload;
+
+    private AZEROIotPayloadCodec payloadCodec;
+    private byte[] decoded;
+    private byte[] encoded;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    /**
+     * The rate of uncompressed bytes, in megabytes, reported per second.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        switch (codec) {
+        case "deflate-1":
+            payloadCodec = new AZEROIotDeflateCodec(AZEROIotDeflateCodec.DEFAULT_ID, Deflater.BEST_SPEED, null);
+            break;
+        case "deflate-6":
+            payloadCodec = new AZEROIotDeflateCodec(AZEROIotDeflateCodec.DEFAULT_ID, 6, null);
+            break;
+        case "deflate-9":
+            payloadCodec = new AZEROIotDeflateCodec(AZEROIotDeflateCodec.DEFAULT_ID, Deflater.BEST_COMPRESSION, null);
+            break;
+        case "deflate-dictionary-6":
+            payloadCodec = new AZEROIotDeflateCodec(3, 6, DICTIONARY.getBytes(StandardCharsets.UTF_8));
+            break;
+        default:
+            payloadCodec = new AZEROIotGzipCodec();
+        }
+        decoded = ("shadow".equals(payload) ? SHADOW : newTelemetry()).getBytes(StandardCharsets.UTF_8);
+        encoded = encode();
+        System.out.println(codec + " " + payload + ": " + decoded.length + " bytes in, " + encoded.length
+                + " bytes out");
+    }
+
+    @Benchmark
+    public int encode(Counters counters) throws IOException {
+        counters.megabytes += decoded.length / 1e6;
+        return encode().length;
+    }
+
+    @Benchmark
+    public int decode(Counters counters) throws IOException {
+        counters.megabytes += decoded.length / 1e6;
+        out.reset();
+        payloadCodec.decode(encoded, 0, encoded.length, out);
+        return out.size();
+    }
+
+    private byte[] encode() throws IOException {
+        out.reset();
+        payloadCodec.encode(decoded, out);
+        return out.toByteArray();
+    }
+
+    private static String newTelemetry() {
+        // a batch of readings, repetitive in structure but not in values
+        StringBuilder builder = new StringBuilder("{\"readings\":[");
+        for (int i = 0; i < 50; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"timestamp\":").append(1600000000000L + i * 1000L).append(",\"temperature\":")
+                    .append(20 + (i * 7) % 10).append('.').append((i * 3) % 10).append(",\"humidity\":")
+                    .append(40 + (i * 11) % 20).append(",\"battery\":").append(100 - i / 5).append('}');
+        }
+        return builder.append("]}").toString();
+    }
+
+}
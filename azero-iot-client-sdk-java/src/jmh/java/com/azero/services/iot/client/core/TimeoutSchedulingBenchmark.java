@@ -0,0 +1,91 @@
+package com.azero.services.iot.client.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares scheduling and cancelling a request timeout, which is what nearly
+ * every request does, on {@link AzeroIotHashedWheelTimer} and on a
+ * {@link ScheduledThreadPoolExecutor}, with a number of other timeouts already
+ * pending. The executor removes cancelled tasks, as it would otherwise keep
+ * them queued until their deadline.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimeoutSchedulingBenchmark {
+
+    private static final long TIMEOUT = 60000;
+
+    private static final Runnable TASK = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    @Param({ "0", "10000" })
+    public int pending;
+
+    private ScheduledThreadPoolExecutor executor;
+    private ScheduledThreadPoolExecutor scheduler;
+    private AzeroIotHashedWheelTimer timer;
+    private final List<Future<?>> pendingTimeouts = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        timer = new AzeroIotHashedWheelTimer(scheduler, new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                task.run();
+            }
+        });
+        for (int i = 0; i < pending; i++) {
+            pendingTimeouts.add(executor.schedule(TASK, TIMEOUT + i, TimeUnit.MILLISECONDS));
+            pendingTimeouts.add(timer.newTimeout(TASK, TIMEOUT + i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (Future<?> future : pendingTimeouts) {
+            future.cancel(false);
+        }
+        timer.stop();
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean wheelTimer() {
+        return timer.newTimeout(TASK, TIMEOUT).cancel(false);
+    }
+
+    @Benchmark
+    public boolean scheduledExecutor() {
+        return executor.schedule(TASK, TIMEOUT, TimeUnit.MILLISECONDS).cancel(false);
+    }
+
+}
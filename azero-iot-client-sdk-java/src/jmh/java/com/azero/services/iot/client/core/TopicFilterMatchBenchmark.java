@@ -0,0 +1,63 @@
+package com.azero.services.iot.client.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.azero.services.iot.client.AZEROIotMqttClient;
+
+/**
+ * Measures {@link AbstractAzeroIotClient#topicFilterMatch(String, String)},
+ * which is called for every received message and subscription. Run with
+ * {@code -prof gc} to check that matching doesn't allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TopicFilterMatchBenchmark {
+
+    @Param({ "exact", "single", "multi", "mismatch" })
+    public String filter;
+
+    private AZEROIotMqttClient client;
+    private String topicFilter;
+    private String topic;
+
+    @Setup
+    public void setUp() {
+        client = AzeroIotTestUtils.newClient();
+        topic = "$azero/things/device-0001/shadow/update/accepted";
+        switch (filter) {
+        case "exact":
+            topicFilter = topic;
+            break;
+        case "single":
+            topicFilter = "$azero/things/+/shadow/update/+";
+            break;
+        case "multi":
+            topicFilter = "$azero/things/device-0001/#";
+            break;
+        default:
+            topicFilter = "$azero/things/device-0001/shadow/delete/accepted";
+        }
+    }
+
+    @Benchmark
+    public boolean topicFilterMatch() {
+        return client.topicFilterMatch(topicFilter, topic);
+    }
+
+}
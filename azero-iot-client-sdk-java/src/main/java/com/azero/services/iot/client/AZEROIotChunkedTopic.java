@@ -0,0 +1,236 @@
+package com.azero.services.iot.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.azero.services.iot.client.core.AzeroIotChunkedTransfer;
+
+/**
+ * This class is a subscription for payloads published in chunks through
+ * {@link AZEROIotMqttClient#publishChunked(String, AZEROIotQos, InputStream, long)}.
+ * Chunks are collected per transfer and, once all of them have arrived, the
+ * reassembled payload is delivered to {@link #onStream(String, InputStream)},
+ * which applications are expected to override. Messages that are not chunked
+ * are delivered the same way, as a single-chunk stream.
+ * <p>
+ * Memory is bounded by the maximum size of a transfer and the maximum number
+ * of incomplete transfers; a transfer exceeding its size is discarded, and so
+ * is the oldest incomplete transfer when a new one would exceed the number.
+ * Duplicate chunks, e.g. from QoS 1 redelivery, are ignored.
+ * </p>
+ */
+public class AZEROIotChunkedTopic extends AZEROIotTopic {
+
+    private static final Logger LOGGER = Logger.getLogger(AZEROIotChunkedTopic.class.getName());
+
+    /** The maximum number of payload bytes of a transfer. */
+    private final int maxTransferSize;
+
+    /** The maximum number of incomplete transfers. */
+    private final int maxTransfers;
+
+    /** The incomplete transfers in the order they started. */
+    private final Map<String, Transfer> transfers = new LinkedHashMap<>();
+
+    /**
+     * The recently completed or discarded transfers, whose late or duplicate
+     * chunks are ignored.
+     */
+    private final Map<String, Boolean> finishedTransfers;
+
+    /** The number of transfers discarded before completion. */
+    private final AtomicLong discardedCount = new AtomicLong();
+
+    /**
+     * Instantiates a new chunked topic object with QoS0.
+     *
+     * @param topic
+     *            the topic to be subscribed to
+     * @param maxTransferSize
+     *            the maximum number of payload bytes of a transfer
+     * @param maxTransfers
+     *            the maximum number of incomplete transfers
+     */
+    public AZEROIotChunkedTopic(String topic, int maxTransferSize, int maxTransfers) {
+        this(topic, AZEROIotQos.QOS0, maxTransferSize, maxTransfers);
+    }
+
+    /**
+     * Instantiates a new chunked topic object.
+     *
+     * @param topic
+     *            the topic to be subscribed to
+     * @param qos
+     *            the MQTT QoS level for the subscription
+     * @param maxTransferSize
+     *            the maximum number of payload bytes of a transfer
+     * @param maxTransfers
+     *            the maximum number of incomplete transfers
+     */
+    public AZEROIotChunkedTopic(String topic, AZEROIotQos qos, int maxTransferSize, int maxTransfers) {
+        super(topic, qos);
+        if (maxTransferSize <= 0 || maxTransfers <= 0) {
+            throw new IllegalArgumentException("Maximum transfer size and number of transfers must be positive");
+        }
+        this.maxTransferSize = maxTransferSize;
+        this.maxTransfers = maxTransfers;
+        this.finishedTransfers = new LinkedHashMap<String, Boolean>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > AZEROIotChunkedTopic.this.maxTransfers;
+            }
+        };
+    }
+
+    /**
+     * Collects the chunk carried by the message, and delivers the reassembled
+     * payload once the transfer is complete.
+     *
+     * @param message
+     *            the message received from the subscription
+     */
+    @Override
+    public void onMessage(AZEROIotMessage message) {
+        byte[] payload = message.getPayloadArray();
+        if (!AzeroIotChunkedTransfer.isChunk(payload)) {
+            onStream(message.getTopic(), new ByteArrayInputStream((payload != null) ? payload : new byte[0]));
+            return;
+        }
+
+        String key = message.getTopic() + "/" + AzeroIotChunkedTransfer.getTransferId(payload);
+        List<byte[]> chunks;
+        synchronized (transfers) {
+            if (finishedTransfers.containsKey(key)) {
+                return;
+            }
+            Transfer transfer = transfers.get(key);
+            if (transfer == null) {
+                if (transfers.size() >= maxTransfers) {
+                    Iterator<Map.Entry<String, Transfer>> it = transfers.entrySet().iterator();
+                    String eldest = it.next().getKey();
+                    LOGGER.warning("Too many incomplete transfers, discarding " + eldest);
+                    it.remove();
+                    finishedTransfers.put(eldest, Boolean.TRUE);
+                    discardedCount.incrementAndGet();
+                }
+                transfer = new Transfer();
+                transfers.put(key, transfer);
+            }
+            if (!transfer.add(payload)) {
+                LOGGER.warning("Transfer exceeded the maximum size of " + maxTransferSize + " bytes, discarding " + key);
+                transfers.remove(key);
+                finishedTransfers.put(key, Boolean.TRUE);
+                discardedCount.incrementAndGet();
+                return;
+            }
+            if (!transfer.isComplete()) {
+                return;
+            }
+            transfers.remove(key);
+            finishedTransfers.put(key, Boolean.TRUE);
+            chunks = transfer.chunks;
+        }
+
+        List<InputStream> streams = new ArrayList<>(chunks.size());
+        for (byte[] chunk : chunks) {
+            streams.add(new ByteArrayInputStream(chunk, AzeroIotChunkedTransfer.HEADER_LENGTH,
+                    chunk.length - AzeroIotChunkedTransfer.HEADER_LENGTH));
+        }
+        onStream(message.getTopic(), new SequenceInputStream(Collections.enumeration(streams)));
+    }
+
+    /**
+     * Callback function to be invoked when a payload has been reassembled.
+     * The stream is backed by the received chunks and can be consumed after
+     * this function returns.
+     *
+     * @param topic
+     *            the topic the payload was published to
+     * @param stream
+     *            the reassembled payload
+     */
+    public void onStream(String topic, InputStream stream) {
+    }
+
+    /**
+     * Gets the number of transfers waiting for more chunks.
+     *
+     * @return the number of incomplete transfers
+     */
+    public int getPendingTransfers() {
+        synchronized (transfers) {
+            return transfers.size();
+        }
+    }
+
+    /**
+     * Gets the number of transfers discarded before completion, because they
+     * exceeded the maximum size or were evicted by newer transfers.
+     *
+     * @return the number of discarded transfers
+     */
+    public long getDiscardedCount() {
+        return discardedCount.get();
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getMaxTransferSize() {
+        return this.maxTransferSize;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getMaxTransfers() {
+        return this.maxTransfers;
+    }
+
+    /**
+     * The chunks of an incomplete transfer, indexed by their sequence number.
+     */
+    private class Transfer {
+        private final List<byte[]> chunks = new ArrayList<>();
+        private int received;
+        private int lastSequence = -1;
+        private long size;
+
+        private boolean add(byte[] chunk) {
+            int sequence = AzeroIotChunkedTransfer.getSequence(chunk);
+            // every chunk but the last carries at least one byte
+            if (sequence < 0 || sequence > maxTransferSize) {
+                return false;
+            }
+            while (chunks.size() <= sequence) {
+                chunks.add(null);
+            }
+            if (chunks.get(sequence) != null) {
+                // duplicate
+                return true;
+            }
+            size += chunk.length - AzeroIotChunkedTransfer.HEADER_LENGTH;
+            if (size > maxTransferSize) {
+                return false;
+            }
+            chunks.set(sequence, chunk);
+            received++;
+            if (AzeroIotChunkedTransfer.isLast(chunk)) {
+                lastSequence = sequence;
+            }
+            return true;
+        }
+
+        private boolean isComplete() {
+            return lastSequence >= 0 && received == lastSequence + 1;
+        }
+    }
+
+}
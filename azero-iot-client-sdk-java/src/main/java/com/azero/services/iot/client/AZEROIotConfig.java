@@ -61,6 +61,142 @@ public class AZEROIotConfig {
      */
     public static final int MAX_OFFLINE_QUEUE_SIZE = 64;
 
+    /**
+     * The default value for maximum offline queue bytes, 0 meaning the queues
+     * are only bounded by their size. See also
+     * {@link AZEROIotMqttClient#getMaxOfflineQueueBytes()}.
+     */
+    public static final long MAX_OFFLINE_QUEUE_BYTES = 0;
+
+    /**
+     * The default value for the maximum total size (bytes) of the segment
+     * files of the persistent offline queue. See also
+     * {@link AZEROIotMqttClient#getPersistentQueueCapacity()}.
+     */
+    public static final long PERSISTENT_QUEUE_CAPACITY = 64L * 1024 * 1024;
+
+    /**
+     * The default value for the size (bytes) of a segment file of the
+     * persistent offline queue. See also
+     * {@link AZEROIotMqttClient#getPersistentQueueSegmentSize()}.
+     */
+    public static final int PERSISTENT_QUEUE_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The default value for forcing each message written to the persistent
+     * offline queue to the storage device. See also
+     * {@link AZEROIotMqttClient#isPersistentQueueSync()}.
+     */
+    public static final boolean PERSISTENT_QUEUE_SYNC = false;
+
+    /**
+     * The default value for the number of queued messages replayed per second
+     * after the connection is established. See also
+     * {@link AZEROIotMqttClient#getOfflineReplayRate()}.
+     */
+    public static final int OFFLINE_REPLAY_RATE = 200;
+
+    /**
+     * The default value for the maximum number of replayed requests waiting
+     * for completion. See also
+     * {@link AZEROIotMqttClient#getOfflineReplayMaxInflight()}.
+     */
+    public static final int OFFLINE_REPLAY_MAX_INFLIGHT = 5;
+
+    /**
+     * The default value for the initial size (bytes) of the file persisting
+     * messages in flight. See also
+     * {@link AZEROIotMqttClient#getMqttPersistenceFileSize()}.
+     */
+    public static final int MQTT_PERSISTENCE_FILE_SIZE = 1024 * 1024;
+
+    /**
+     * The default value for maximum callback queue size. See also
+     * {@link AZEROIotMqttClient#getMaxCallbackQueueSize()}.
+     */
+    public static final int MAX_CALLBACK_QUEUE_SIZE = 0;
+
+    /**
+     * The default value for ordered message dispatch. See also
+     * {@link AZEROIotMqttClient#isOrderedDispatch()}.
+     */
+    public static final boolean ORDERED_DISPATCH = false;
+
+    /**
+     * The default value for the topic match cache size. See also
+     * {@link AZEROIotMqttClient#getTopicMatchCacheSize()}.
+     */
+    public static final int TOPIC_MATCH_CACHE_SIZE = 0;
+
+    /**
+     * The default value for the inbound message pool size, 0 meaning message
+     * recycling is disabled. See also
+     * {@link AZEROIotMqttClient#getMessagePoolSize()}.
+     */
+    public static final int MESSAGE_POOL_SIZE = 0;
+
+    /**
+     * The default value for the maximum number of QoS 1 and QoS 2 publishes in
+     * flight. See also {@link AZEROIotMqttClient#getMaxInflight()}.
+     */
+    public static final int MAX_INFLIGHT = 10;
+
+    /**
+     * The default value for adapting the in-flight window to the link. See
+     * also {@link AZEROIotMqttClient#isAdaptiveInflight()}.
+     */
+    public static final boolean ADAPTIVE_INFLIGHT = false;
+
+    /**
+     * The default value for the maximum number of publishes in flight the
+     * adaptive in-flight window can grow to. See also
+     * {@link AZEROIotMqttClient#getMaxAdaptiveInflight()}.
+     */
+    public static final int MAX_ADAPTIVE_INFLIGHT = 100;
+
+    /**
+     * The default value for the maximum payload size (bytes) of a chunk in
+     * chunked transfers. See also {@link AZEROIotMqttClient#getChunkSize()}.
+     */
+    public static final int CHUNK_SIZE = 65536;
+
+    /**
+     * The default value for the maximum number of chunks in flight in chunked
+     * transfers. See also {@link AZEROIotMqttClient#getChunkWindowSize()}.
+     */
+    public static final int CHUNK_WINDOW_SIZE = 8;
+
+    /**
+     * The default value for the maximum number of messages in a publish batch.
+     * See also {@link AZEROIotMqttClient#getBatchMaxMessages()}.
+     */
+    public static final int BATCH_MAX_MESSAGES = 64;
+
+    /**
+     * The default value for the maximum size (bytes) of a publish batch. See
+     * also {@link AZEROIotMqttClient#getBatchMaxBytes()}.
+     */
+    public static final int BATCH_MAX_BYTES = 16384;
+
+    /**
+     * The default value for the time (milliseconds) a publish batch lingers
+     * for more messages. See also {@link AZEROIotMqttClient#getBatchLingerTime()}.
+     */
+    public static final int BATCH_LINGER_TIME = 20;
+
+    /**
+     * The default value for expanding inbound batches. See also
+     * {@link AZEROIotMqttClient#isReceiveBatches()}.
+     */
+    public static final boolean RECEIVE_BATCHES = false;
+
+    /**
+     * The default value for the maximum size (bytes) of an inbound payload
+     * after decoding. See also
+     * {@link AZEROIotMqttClient#getMaxDecodedPayloadSize()}.
+     */
+    public static final int MAX_DECODED_PAYLOAD_SIZE = 1024 * 1024;
+
     /**
      * The default value for device reporting interval (milliseconds). See also
      * {@link AZEROIotDevice#getReportInterval()}.
@@ -0,0 +1,114 @@
+package com.azero.services.iot.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class compresses payloads with the raw DEFLATE format.
+ * <p>
+ * For small and repetitive payloads, such as shadow documents, a preset
+ * dictionary containing the common strings, e.g. a typical document, can
+ * improve the compression ratio considerably. Both the publisher and the
+ * receiver must use the same dictionary and codec ID.
+ * </p>
+ */
+public class AZEROIotDeflateCodec implements AZEROIotPayloadCodec {
+
+    /** The codec ID used when there's no dictionary. */
+    public static final int DEFAULT_ID = 1;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final int id;
+    private final int level;
+    private final byte[] dictionary;
+
+    /** Deflaters and inflaters are costly to create, so they are reused per thread. */
+    private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(level, true);
+        }
+    };
+    private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    /**
+     * Instantiates a new codec with the default compression level and no
+     * dictionary.
+     */
+    public AZEROIotDeflateCodec() {
+        this(DEFAULT_ID, Deflater.DEFAULT_COMPRESSION, null);
+    }
+
+    /**
+     * Instantiates a new codec.
+     *
+     * @param id
+     *            the codec ID, which must be distinct from
+     *            {@link #DEFAULT_ID} if a dictionary is used
+     * @param level
+     *            the compression level from 0 to 9, or -1 for the default
+     * @param dictionary
+     *            the preset dictionary, or null if none
+     */
+    public AZEROIotDeflateCodec(int id, int level, byte[] dictionary) {
+        if (id < 1 || id > 255) {
+            throw new IllegalArgumentException("Codec ID must be between 1 and 255");
+        }
+        this.id = id;
+        this.level = level;
+        this.dictionary = (dictionary == null) ? null : dictionary.clone();
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public void encode(byte[] payload, OutputStream out) throws IOException {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(payload);
+        deflater.finish();
+        byte[] buffer = new byte[Math.min(BUFFER_SIZE, payload.length + 64)];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            out.write(buffer, 0, count);
+        }
+    }
+
+    @Override
+    public void decode(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        if (dictionary != null) {
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(data, offset, length);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated or corrupted payload");
+                }
+                out.write(buffer, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+}
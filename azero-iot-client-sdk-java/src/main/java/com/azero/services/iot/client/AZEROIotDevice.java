@@ -157,6 +157,32 @@ public class AZEROIotDevice extends AbstractAzeroIotDevice {
         super.setMethodAckQos(methodAckQos);
     }
 
+    /**
+     * Gets the format of the shadow documents exchanged by the device. The
+     * default format is JSON.
+     *
+     * @return the document format
+     */
+    @Override
+    public AZEROIotDocumentFormat getDocumentFormat() {
+        return super.getDocumentFormat();
+    }
+
+    /**
+     * Sets the format of the shadow documents exchanged by the device, e.g. a
+     * {@link AZEROIotJacksonDocumentFormat} with a CBOR or Smile object mapper.
+     * The format must be understood by the receiving end of the shadow topics.
+     * This value must be set before the device is attached to a client via the
+     * {@link AZEROIotMqttClient#attach(AZEROIotDevice)} call.
+     *
+     * @param documentFormat
+     *            the new document format
+     */
+    @Override
+    public void setDocumentFormat(AZEROIotDocumentFormat documentFormat) {
+        super.setDocumentFormat(documentFormat);
+    }
+
     /**
      * Retrieves the latest state stored in the thing shadow. This method
      * returns the full JSON document, including meta data. This is a blocking
@@ -222,6 +248,26 @@ public class AZEROIotDevice extends AbstractAzeroIotDevice {
         super.get(message, timeout);
     }
 
+    /**
+     * Retrieves the latest state stored in the thing shadow. This method
+     * returns the full JSON document, including meta data. This is a
+     * non-blocking call, so it immediately returns once the operation has been
+     * queued in the system. The returned future is completed with the JSON
+     * document if the operation succeeded, or exceptionally if it failed or
+     * timed out.
+     *
+     * @param timeout
+     *            the timeout in milliseconds for the operation to be considered
+     *            timed out
+     * @return the future of the JSON document of the device state
+     * @throws AZEROIotException
+     *             exception thrown if the operation fails to be queued
+     */
+    @Override
+    public AZEROIotFuture<String> getAsync(long timeout) throws AZEROIotException {
+        return super.getAsync(timeout);
+    }
+
     /**
      * Updates the content of a thing shadow with the data provided in the
      * request. This is a blocking call, so the calling thread will be blocked
@@ -284,6 +330,26 @@ public class AZEROIotDevice extends AbstractAzeroIotDevice {
         super.update(message, timeout);
     }
 
+    /**
+     * Updates the content of a thing shadow with the data provided in the
+     * request. This is a non-blocking call, so it immediately returns once the
+     * operation has been queued in the system. The returned future is
+     * completed once the operation succeeded, failed, or timed out.
+     *
+     * @param jsonState
+     *            the JSON document of the new device state
+     * @param timeout
+     *            the timeout in milliseconds for the operation to be considered
+     *            timed out
+     * @return the future of the operation
+     * @throws AZEROIotException
+     *             exception thrown if the operation fails to be queued
+     */
+    @Override
+    public AZEROIotFuture<Void> updateAsync(String jsonState, long timeout) throws AZEROIotException {
+        return super.updateAsync(jsonState, timeout);
+    }
+
     /**
      * Deletes the content of a thing shadow. This is a blocking call, so the
      * calling thread will be blocked until the operation succeeded or failed.
@@ -349,7 +415,8 @@ public class AZEROIotDevice extends AbstractAzeroIotDevice {
      * One can override this function to provide their own implementation for
      * updating the device. The shadow update containing the delta (between the
      * 'desired' state and the 'reported' state) is passed in as an input
-     * argument.
+     * argument. Overriding this function makes the device convert the update
+     * to JSON text, even if a binary document format is used.
      *
      * @param jsonState
      *            the JSON document containing the delta between 'desired' and
@@ -365,7 +432,9 @@ public class AZEROIotDevice extends AbstractAzeroIotDevice {
      * By default, it invokes the getter methods provided for the annotated
      * device attributes. The data is serialized in a JSON document and reported
      * to the shadow. One could override this default implementation and provide
-     * their own JSON document for reporting.
+     * their own JSON document for reporting. Overriding this function makes
+     * the device parse the returned JSON text before encoding it in the
+     * document format.
      *
      * @return the JSON document containing 'reported' state
      */
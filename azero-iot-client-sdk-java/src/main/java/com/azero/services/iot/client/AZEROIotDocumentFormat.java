@@ -0,0 +1,52 @@
+package com.azero.services.iot.client;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * This interface defines the encoding of the shadow documents exchanged by an
+ * {@link AZEROIotDevice}, i.e. device reports, delta updates, and the
+ * responses to shadow methods. By default, documents are encoded as JSON
+ * text. A compact binary encoding, such as CBOR or Smile, can be used instead
+ * through {@link AZEROIotJacksonDocumentFormat} and the corresponding Jackson
+ * data format module, provided that the receiving end, e.g. the shadow service
+ * or a gateway in front of it, understands the same encoding.
+ * <p>
+ * Documents are handled as Jackson trees, so the device never goes through the
+ * JSON text representation unless the application overrides one of the
+ * string-based callback functions, e.g. {@link AZEROIotDevice#onDeviceReport()}.
+ * </p>
+ */
+public interface AZEROIotDocumentFormat {
+
+    /**
+     * Parses a document.
+     *
+     * @param document
+     *            the encoded document
+     * @return the document tree
+     * @throws IOException
+     *             exception thrown if the document can't be parsed
+     */
+    JsonNode read(byte[] document) throws IOException;
+
+    /**
+     * Encodes a document.
+     *
+     * @param document
+     *            the document tree
+     * @return the encoded document
+     * @throws IOException
+     *             exception thrown if the document can't be encoded
+     */
+    byte[] write(JsonNode document) throws IOException;
+
+    /**
+     * Gets the name of the format, e.g. "JSON" or "CBOR".
+     *
+     * @return the format name
+     */
+    String getFormatName();
+
+}
@@ -0,0 +1,53 @@
+package com.azero.services.iot.client;
+
+import java.util.concurrent.Future;
+
+/**
+ * This interface represents the pending result of an asynchronous API, such as
+ * {@link AZEROIotMqttClient#publishAsync(String, AZEROIotQos, byte[], long)}.
+ * <p>
+ * Besides blocking on {@link #get()}, the application can register listeners
+ * through {@link #addListener}, so that many requests can be pipelined from a
+ * few threads without a thread blocked for each request. If the request fails
+ * or times out, {@link #get()} throws an
+ * {@link java.util.concurrent.ExecutionException} whose cause is an
+ * {@link AZEROIotException} or an {@link AZEROIotTimeoutException}
+ * respectively.
+ * </p>
+ * <p>
+ * Cancelling the future only detaches it from the request; the request itself
+ * can't be withdrawn once it has been queued in the system.
+ * </p>
+ *
+ * @param <V>
+ *            the type of the result
+ */
+public interface AZEROIotFuture<V> extends Future<V> {
+
+    /**
+     * Adds a listener to be notified when the future is completed. If the
+     * future has already completed, the listener is notified immediately on
+     * the calling thread; otherwise, it's notified on the thread completing
+     * the future, which is usually one of the client threads.
+     *
+     * @param listener
+     *            the listener to be notified
+     */
+    void addListener(AZEROIotFutureListener<V> listener);
+
+    /**
+     * Checks if the future has completed successfully.
+     *
+     * @return true, if the request has succeeded
+     */
+    boolean isSuccess();
+
+    /**
+     * Gets the cause of the failure if the request has failed or timed out.
+     *
+     * @return the cause of the failure, or null if the future is not completed
+     *         or has completed successfully
+     */
+    Throwable getCause();
+
+}
@@ -0,0 +1,22 @@
+package com.azero.services.iot.client;
+
+/**
+ * This interface defines the callback function invoked when an
+ * {@link AZEROIotFuture} is completed.
+ *
+ * @param <V>
+ *            the type of the result
+ */
+public interface AZEROIotFutureListener<V> {
+
+    /**
+     * Invoked when the future has completed, either successfully, with
+     * failure, or by timeout or cancellation. Listeners should not block, as
+     * they may be invoked on the client threads.
+     *
+     * @param future
+     *            the completed future
+     */
+    void onComplete(AZEROIotFuture<V> future);
+
+}
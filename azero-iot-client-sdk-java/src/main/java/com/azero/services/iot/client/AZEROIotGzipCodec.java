@@ -0,0 +1,68 @@
+package com.azero.services.iot.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class compresses payloads with the GZIP format, which is larger than
+ * {@link AZEROIotDeflateCodec} by the GZIP header and trailer, but can be
+ * decoded by most other tools.
+ */
+public class AZEROIotGzipCodec implements AZEROIotPayloadCodec {
+
+    /** The codec ID. */
+    public static final int ID = 2;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public void encode(byte[] payload, OutputStream out) throws IOException {
+        // closing the GZIP stream releases its native deflater, but mustn't
+        // close the caller's stream
+        try (GZIPOutputStream gzip = new GZIPOutputStream(new NonClosingOutputStream(out))) {
+            gzip.write(payload);
+        }
+    }
+
+    @Override
+    public void decode(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data, offset, length))) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = gzip.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+        }
+    }
+
+    /**
+     * A stream writing through to the given stream, except that closing it
+     * only flushes the given stream.
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        private NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // FilterOutputStream writes one byte at a time by default
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.azero.services.iot.client;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * This class implements {@link AZEROIotDocumentFormat} with a Jackson
+ * {@link ObjectMapper}. The format is determined by the factory of the mapper,
+ * e.g. {@code new ObjectMapper(new CBORFactory())} for CBOR, which requires the
+ * corresponding Jackson data format module on the class path.
+ */
+public class AZEROIotJacksonDocumentFormat implements AZEROIotDocumentFormat {
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Instantiates a new JSON document format.
+     */
+    public AZEROIotJacksonDocumentFormat() {
+        this(new ObjectMapper());
+    }
+
+    /**
+     * Instantiates a new document format.
+     *
+     * @param objectMapper
+     *            the object mapper for the format
+     */
+    public AZEROIotJacksonDocumentFormat(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public JsonNode read(byte[] document) throws IOException {
+        return objectMapper.readTree(document);
+    }
+
+    @Override
+    public byte[] write(JsonNode document) throws IOException {
+        return objectMapper.writeValueAsBytes(document);
+    }
+
+    @Override
+    public String getFormatName() {
+        return objectMapper.getFactory().getFormatName();
+    }
+
+    /**
+     * Checks if the given format is JSON text.
+     *
+     * @param format
+     *            the document format
+     * @return true, if the format is JSON
+     */
+    public static boolean isJson(AZEROIotDocumentFormat format) {
+        return JsonFactory.FORMAT_NAME_JSON.equals(format.getFormatName());
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public ObjectMapper getObjectMapper() {
+        return this.objectMapper;
+    }
+
+}
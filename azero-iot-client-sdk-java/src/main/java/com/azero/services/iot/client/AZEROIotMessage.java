@@ -1,9 +1,9 @@
 package com.azero.services.iot.client;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import com.azero.services.iot.client.core.AzeroIotMessageCallback;
-import com.azero.services.iot.client.core.AzeroIotRuntimeException;
 
 /**
  * A common data structure that is used in a lot of non-blocking APIs in this
@@ -42,6 +42,22 @@ public class AZEROIotMessage implements AzeroIotMessageCallback {
      * returned by those shadow method APIs.
      */
     protected String errorMessage;
+    /**
+     * The time to live of the message in milliseconds, 0 meaning it never
+     * expires.
+     */
+    protected long timeToLive;
+    /**
+     * The time the message expires, in milliseconds since the epoch, 0
+     * meaning it never expires.
+     */
+    protected long expiryTime;
+    /**
+     * The cached string payload, which is only valid for the payload array it
+     * was decoded from, so that it's never stale even if the payload field is
+     * replaced directly.
+     */
+    private StringView stringView;
 
     /**
      * Instantiates a new message object.
@@ -72,6 +88,33 @@ public class AZEROIotMessage implements AzeroIotMessageCallback {
         setPayload(payload);
     }
 
+    /**
+     * Instantiates a new message object, optionally taking ownership of the
+     * payload array instead of copying it. When {@code copyPayload} is false,
+     * the caller must not modify the array after the message is created, as
+     * the message and anything it's passed to, e.g. the network layer, may
+     * still be reading it.
+     *
+     * @param topic
+     *            the topic of the message
+     * @param qos
+     *            the QoS level of the message
+     * @param payload
+     *            the payload of the message
+     * @param copyPayload
+     *            whether the payload should be copied (true) or owned by the
+     *            message (false)
+     */
+    public AZEROIotMessage(String topic, AZEROIotQos qos, byte[] payload, boolean copyPayload) {
+        this.topic = topic;
+        this.qos = qos;
+        if (copyPayload) {
+            setPayload(payload);
+        } else {
+            this.payload = payload;
+        }
+    }
+
     /**
      * Instantiates a new message object.
      *
@@ -100,6 +143,57 @@ public class AZEROIotMessage implements AzeroIotMessageCallback {
         return payload.clone();
     }
 
+    /**
+     * Gets a read-only view of the payload without copying it.
+     *
+     * @return the read-only payload buffer, or null if there's no payload
+     */
+    public ByteBuffer getPayloadBuffer() {
+        if (payload == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+    }
+
+    /**
+     * Gets the payload array without copying it. It's intended for handing the
+     * payload over to APIs that require an array, such as the network layer;
+     * the returned array must not be modified. Use {@link #getPayload()} for a
+     * private copy, or {@link #getPayloadBuffer()} for a read-only view.
+     *
+     * @return the payload array, or null if there's no payload
+     */
+    public byte[] getPayloadArray() {
+        return payload;
+    }
+
+    /**
+     * Retains the message, so that it stays valid after the callback it was
+     * passed to has returned. This is only needed when message recycling is
+     * enabled on the client, see
+     * {@link AZEROIotMqttClient#setMessagePoolSize(int)}, in which case an
+     * inbound message is only valid until {@link AZEROIotTopic#onMessage}
+     * returns, unless it's retained. Each call must be paired with a call to
+     * {@link #release()} once the message is no longer used. For messages not
+     * obtained from a pool, this function does nothing.
+     *
+     * @return this message
+     */
+    public AZEROIotMessage retain() {
+        return this;
+    }
+
+    /**
+     * Releases the message previously retained through {@link #retain()}. For
+     * messages not obtained from a pool, this function does nothing.
+     *
+     * @return true if the message has been returned to its pool; false
+     *         otherwise
+     */
+    public boolean release() {
+        return false;
+    }
+
     /**
      * Sets the byte array payload.
      *
@@ -107,6 +201,7 @@ public class AZEROIotMessage implements AzeroIotMessageCallback {
      *            the new byte array payload
      */
     public void setPayload(byte[] payload) {
+        stringView = null;
         if (payload == null) {
             this.payload = null;
             return;
@@ -115,21 +210,22 @@ public class AZEROIotMessage implements AzeroIotMessageCallback {
     }
 
     /**
-     * Gets the string payload.
+     * Gets the string payload. The payload is decoded once and the string is
+     * cached until the payload is replaced.
      *
      * @return the string payload
      */
     public String getStringPayload() {
-        if (payload == null) {
+        byte[] bytes = payload;
+        if (bytes == null) {
             return null;
         }
-        String str;
-        try {
-            str = new String(payload, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new AzeroIotRuntimeException(e);
+        StringView view = stringView;
+        if (view == null || view.source != bytes) {
+            view = new StringView(bytes, new String(bytes, StandardCharsets.UTF_8));
+            stringView = view;
         }
-        return str;
+        return view.value;
     }
 
     /**
@@ -141,13 +237,40 @@ public class AZEROIotMessage implements AzeroIotMessageCallback {
     public void setStringPayload(String payload) {
         if (payload == null) {
             this.payload = null;
+            stringView = null;
             return;
         }
-        try {
-            this.payload = payload.getBytes("UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new AzeroIotRuntimeException(e);
-        }
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        this.payload = bytes;
+        stringView = new StringView(bytes, payload);
+    }
+
+    /**
+     * Sets the time to live of the message, starting from now. A message
+     * published while the connection is being established is dropped from the
+     * offline queue, without being sent, if it has expired by the time the
+     * queue is replayed; its {@link #onFailure()} callback is invoked. Dropped
+     * messages are counted per topic, see
+     * {@link AZEROIotMqttClient#getExpiredMessageCounts()}. To expire the
+     * messages delivered to a subscription instead, see
+     * {@link AZEROIotTopic#setMessageTimeToLive(long)}.
+     *
+     * @param timeToLive
+     *            the time to live in milliseconds, or 0 for the message to
+     *            never expire
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+        this.expiryTime = (timeToLive > 0) ? System.currentTimeMillis() + timeToLive : 0;
+    }
+
+    /**
+     * Checks if the message has expired.
+     *
+     * @return true, if the time to live of the message has elapsed
+     */
+    public boolean isExpired() {
+        return expiryTime != 0 && System.currentTimeMillis() >= expiryTime;
     }
 
     /**
@@ -259,4 +382,51 @@ public class AZEROIotMessage implements AzeroIotMessageCallback {
     public void setErrorMessage(final String errorMessage) {
         this.errorMessage = errorMessage;
     }
+
+    /**
+     * The time to live of the message in milliseconds, 0 meaning it never
+     * expires.
+     *
+     * @return the current time to live of the message
+     */
+    @java.lang.SuppressWarnings("all")
+    public long getTimeToLive() {
+        return this.timeToLive;
+    }
+
+    /**
+     * The time the message expires, in milliseconds since the epoch, 0
+     * meaning it never expires.
+     *
+     * @return the current expiry time of the message
+     */
+    @java.lang.SuppressWarnings("all")
+    public long getExpiryTime() {
+        return this.expiryTime;
+    }
+
+    /**
+     * The time the message expires, in milliseconds since the epoch, 0
+     * meaning it never expires.
+     *
+     * @param expiryTime the new expiry time of the message
+     */
+    @java.lang.SuppressWarnings("all")
+    public void setExpiryTime(final long expiryTime) {
+        this.expiryTime = expiryTime;
+    }
+
+    /**
+     * A decoded string along with the payload array it was decoded from. Both
+     * fields are final, so the pair can be safely shared between threads.
+     */
+    private static final class StringView {
+        private final byte[] source;
+        private final String value;
+
+        private StringView(byte[] source, String value) {
+            this.source = source;
+            this.value = value;
+        }
+    }
 }
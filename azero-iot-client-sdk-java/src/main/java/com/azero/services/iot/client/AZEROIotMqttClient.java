@@ -4,7 +4,10 @@ import javax.net.ssl.SSLSocketFactory;
 
 import com.azero.services.iot.client.core.AbstractAzeroIotClient;
 
+import java.io.InputStream;
 import java.security.KeyStore;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 public class AZEROIotMqttClient extends AbstractAzeroIotClient {
 
@@ -199,8 +202,10 @@ public class AZEROIotMqttClient extends AbstractAzeroIotClient {
     /**
      * Gets the number of client threads currently configured. Each client has
      * their own thread pool, which is used to execute user callback functions
-     * as well as any timeout callback functions requested. By default, the
-     * thread pool is configured with one execution thread.
+     * as well as any timeout callback functions requested. Timers are kept on
+     * a separate thread, so slow callbacks don't delay timeouts or connection
+     * retries. By default, the thread pool is configured with one execution
+     * thread.
      *
      * @return the number of client threads
      */
@@ -221,6 +226,96 @@ public class AZEROIotMqttClient extends AbstractAzeroIotClient {
         super.setNumOfClientThreads(numOfClientThreads);
     }
 
+    /**
+     * Gets the maximum callback queue size currently configured. It limits the
+     * number of message deliveries to topic subscriptions, i.e.
+     * {@link AZEROIotTopic#onMessage(AZEROIotMessage)}, waiting for a client
+     * thread. When the limit is reached, new messages are dropped and counted
+     * in {@link #getRejectedCallbackCount()}, rather than delivered on the
+     * thread receiving them from the network. The limit also applies to a
+     * callback executor supplied through {@link #setCallbackExecutor}.
+     * <p>
+     * Request completions and timeouts, including the callback functions of
+     * asynchronous requests, are never dropped, as requests would otherwise
+     * never complete. Synchronous requests are completed on the thread
+     * receiving the acknowledgement, so they return even if all client threads
+     * are busy. By default, it's 0, which means the number of waiting
+     * deliveries is unbounded.
+     *
+     * @return the max callback queue size
+     */
+    @Override
+    public int getMaxCallbackQueueSize() {
+        return super.getMaxCallbackQueueSize();
+    }
+
+    /**
+     * Sets a new value for the maximum callback queue size. This value must be
+     * set before {@link #connect()} is called. Setting it to 0 will make the
+     * queue unbounded.
+     *
+     * @param maxCallbackQueueSize
+     *            the new max callback queue size. The default value is 0.
+     */
+    @Override
+    public void setMaxCallbackQueueSize(int maxCallbackQueueSize) {
+        super.setMaxCallbackQueueSize(maxCallbackQueueSize);
+    }
+
+    /**
+     * Sets the executor for running user callback functions, instead of the
+     * thread pool created by the client, e.g. a shared
+     * {@link java.util.concurrent.ThreadPoolExecutor} or
+     * {@link java.util.concurrent.ForkJoinPool}. The executor must be set
+     * before {@link #connect()} is called, and it's not shut down by the
+     * client. When it's supplied, {@link #getNumOfClientThreads()} has no
+     * effect. The executor should not reject tasks, as internal tasks, such as
+     * request timeouts, are lost if it does.
+     *
+     * @param callbackExecutor
+     *            the executor for running user callback functions
+     */
+    @Override
+    public void setCallbackExecutor(ExecutorService callbackExecutor) {
+        super.setCallbackExecutor(callbackExecutor);
+    }
+
+    /**
+     * Gets the number of callbacks waiting for a client thread. For callback
+     * executors other than {@link java.util.concurrent.ThreadPoolExecutor} and
+     * {@link java.util.concurrent.ForkJoinPool}, it always returns 0.
+     *
+     * @return the callback queue depth
+     */
+    @Override
+    public int getCallbackQueueDepth() {
+        return super.getCallbackQueueDepth();
+    }
+
+    /**
+     * Gets the number of callbacks dropped by the client, either because too
+     * many message deliveries were waiting for a client thread (see
+     * {@link #getMaxCallbackQueueSize()}) or because the callback executor
+     * rejected them, e.g. after the client had been shut down.
+     *
+     * @return the number of dropped callbacks
+     */
+    @Override
+    public long getRejectedCallbackCount() {
+        return super.getRejectedCallbackCount();
+    }
+
+    /**
+     * Gets the number of timers, such as request timeouts and connection
+     * retries, waiting to expire.
+     *
+     * @return the timer queue depth
+     */
+    @Override
+    public int getTimerQueueDepth() {
+        return super.getTimerQueueDepth();
+    }
+
     /**
      * Gets the connection timeout in milliseconds currently configured.
      * Connection timeout specifies how long the client should wait for the
@@ -279,134 +374,909 @@ public class AZEROIotMqttClient extends AbstractAzeroIotClient {
      * {@code delay = min(baseRetryDelay * pow(2, numRetries), maxRetryDelay)}.
      * By default, the base retry delay is 3,000ms.
      *
-     * @return the base retry delay
+     * @return the base retry delay
+     */
+    @Override
+    public int getBaseRetryDelay() {
+        return super.getBaseRetryDelay();
+    }
+
+    /**
+     * Sets a new value in milliseconds for the base retry delay. This value
+     * must be set before {@link #connect()} is called.
+     *
+     * @param baseRetryDelay
+     *            the new base retry delay. The default value is 3,000ms.
+     */
+    @Override
+    public void setBaseRetryDelay(int baseRetryDelay) {
+        super.setBaseRetryDelay(baseRetryDelay);
+    }
+
+    /**
+     * Gets the maximum retry delay in milliseconds currently configured. For
+     * each connection failure, a brief delay has to elapse before the
+     * connection is retried. The retry delay is calculated using this simple
+     * formula
+     * {@code delay = min(baseRetryDelay * pow(2, numRetries), maxRetryDelay)}.
+     * By default, the maximum retry delay is 30,000ms.
+     *
+     * @return the maximum retry delay
+     */
+    @Override
+    public int getMaxRetryDelay() {
+        return super.getMaxRetryDelay();
+    }
+
+    /**
+     * Sets a new value in milliseconds for the maximum retry delay. This value
+     * must be set before {@link #connect()} is called.
+     *
+     * @param maxRetryDelay
+     *            the new max retry delay. The default value is 30,000ms.
+     */
+    @Override
+    public void setMaxRetryDelay(int maxRetryDelay) {
+        super.setMaxRetryDelay(maxRetryDelay);
+    }
+
+    /**
+     * Gets the server acknowledge timeout in milliseconds currently configured.
+     * This timeout is used internally by the SDK when subscribing to shadow
+     * confirmation topics for get, update, and delete requests. It's also used
+     * for re-subscribing to user topics when the connection is retried. For
+     * most of the APIs provided in the SDK, the user can specify the timeout as
+     * an argument. By default, the server acknowledge timeout is 3,000ms.
+     *
+     * @return the server acknowledge timeout
+     */
+    @Override
+    public int getServerAckTimeout() {
+        return super.getServerAckTimeout();
+    }
+
+    /**
+     * Sets a new value in milliseconds for the default server acknowledge
+     * timeout. This value must be set before {@link #connect()} is called.
+     *
+     * @param serverAckTimeout
+     *            the new server acknowledge timeout. The default value is
+     *            3,000ms.
+     */
+    @Override
+    public void setServerAckTimeout(int serverAckTimeout) {
+        super.setServerAckTimeout(serverAckTimeout);
+    }
+
+    /**
+     * Gets the keep-alive interval for the MQTT connection in milliseconds
+     * currently configured. Setting this value to 0 will disable the keep-alive
+     * function for the connection. The default keep alive interval is 30,000ms.
+     *
+     * @return the keep alive interval
+     */
+    @Override
+    public int getKeepAliveInterval() {
+        return super.getKeepAliveInterval();
+    }
+
+    /**
+     * Sets a new value in milliseconds for the connection keep-alive interval.
+     * This value must be set before {@link #connect()} is called. Setting this
+     * value to 0 will disable the keep-alive function.
+     *
+     * @param keepAliveInterval
+     *            the new keep alive interval. The default value is 30,000ms.
+     */
+    @Override
+    public void setKeepAliveInterval(int keepAliveInterval) {
+        super.setKeepAliveInterval(keepAliveInterval);
+    }
+
+    /**
+     * Gets the maximum offline queue size current configured. The offline
+     * queues are used for temporarily holding outgoing requests while the
+     * connection is being established or retried. When the connection is
+     * established, offline queue messages will be sent out as usual. They can
+     * be useful for dealing with transient connection failures by allowing the
+     * application to continuously send requests while the connection is being
+     * established. Each type of request, namely publish, subscribe, and
+     * unsubscribe, has their own offline queue. The default offline queue size
+     * is 64. Setting it to 0 will disable the offline queues.
+     *
+     * @return the max offline queue size
+     */
+    @Override
+    public int getMaxOfflineQueueSize() {
+        return super.getMaxOfflineQueueSize();
+    }
+
+    /**
+     * Sets a new value for the maximum offline queue size. This value must be
+     * set before {@link #connect()} is called. Setting it to 0 will disable the
+     * offline queues.
+     *
+     * @param maxOfflineQueueSize
+     *            the new maximum offline queue size. The default value is 64.
+     */
+    @Override
+    public void setMaxOfflineQueueSize(int maxOfflineQueueSize) {
+        super.setMaxOfflineQueueSize(maxOfflineQueueSize);
+    }
+
+    /**
+     * Gets the maximum total payload size in bytes of each offline queue. It
+     * applies in addition to {@link #getMaxOfflineQueueSize()}, so that a few
+     * large messages can't exhaust memory during an outage. It doesn't apply
+     * to the persistent queue, which is bounded by
+     * {@link #getPersistentQueueCapacity()}. By default, it's 0, meaning the
+     * queues are only bounded by their size.
+     *
+     * @return the max offline queue bytes
+     */
+    @Override
+    public long getMaxOfflineQueueBytes() {
+        return super.getMaxOfflineQueueBytes();
+    }
+
+    /**
+     * Sets a new value for the maximum offline queue bytes. This value must be
+     * set before {@link #connect()} is called.
+     *
+     * @param maxOfflineQueueBytes
+     *            the new maximum total payload size in bytes, or 0 for no
+     *            limit. The default value is 0.
+     */
+    @Override
+    public void setMaxOfflineQueueBytes(long maxOfflineQueueBytes) {
+        super.setMaxOfflineQueueBytes(maxOfflineQueueBytes);
+    }
+
+    /**
+     * Gets the directory of the persistent offline publish queue. When it's
+     * set, queued publish requests are written to an append-only log of
+     * memory-mapped segment files in this directory instead of being held in
+     * memory. The queue is then bounded by
+     * {@link #getPersistentQueueCapacity()} in bytes rather than by
+     * {@link #getMaxOfflineQueueSize()}, and messages still queued when the
+     * application exits are published after the next connection is
+     * established. Only the topic, QoS and payload of a message are persisted,
+     * so callbacks of messages queued by a previous run are not invoked. The
+     * directory is locked while the client is connected, and messages with
+     * callbacks are moved back to memory when the connection is closed, so
+     * that their callbacks are still invoked after reconnecting. By default,
+     * it's not set, and the queue is held in memory.
+     *
+     * @return the persistent queue directory, or null if it's not set
+     */
+    @Override
+    public String getPersistentQueueDirectory() {
+        return super.getPersistentQueueDirectory();
+    }
+
+    /**
+     * Sets the directory of the persistent offline publish queue. This value
+     * must be set before {@link #connect()} is called, and the directory must
+     * not be shared with other clients.
+     *
+     * @param persistentQueueDirectory
+     *            the directory, which is created if it doesn't exist, or null
+     *            to hold the queue in memory
+     */
+    @Override
+    public void setPersistentQueueDirectory(String persistentQueueDirectory) {
+        super.setPersistentQueueDirectory(persistentQueueDirectory);
+    }
+
+    /**
+     * Gets the maximum total size in bytes of the segment files of the
+     * persistent offline publish queue. Publish requests are rejected once
+     * it's reached. By default, it's 64 MB.
+     *
+     * @return the capacity of the persistent queue in bytes
+     */
+    @Override
+    public long getPersistentQueueCapacity() {
+        return super.getPersistentQueueCapacity();
+    }
+
+    /**
+     * Sets a new value for the capacity of the persistent offline publish
+     * queue. This value must be set before {@link #connect()} is called.
+     *
+     * @param persistentQueueCapacity
+     *            the capacity in bytes, at least the segment size. The default
+     *            value is 67108864.
+     */
+    @Override
+    public void setPersistentQueueCapacity(long persistentQueueCapacity) {
+        super.setPersistentQueueCapacity(persistentQueueCapacity);
+    }
+
+    /**
+     * Gets the size in bytes of a segment file of the persistent offline
+     * publish queue. A segment file is deleted once all its messages have
+     * been published, so smaller segments return disk space sooner, while a
+     * message larger than a segment can't be queued. By default, it's 4 MB.
+     *
+     * @return the segment size in bytes
+     */
+    @Override
+    public int getPersistentQueueSegmentSize() {
+        return super.getPersistentQueueSegmentSize();
+    }
+
+    /**
+     * Sets a new value for the segment size of the persistent offline publish
+     * queue. This value must be set before {@link #connect()} is called, and
+     * must not be changed for a directory that still has queued messages.
+     *
+     * @param persistentQueueSegmentSize
+     *            the segment size in bytes. The default value is 4194304.
+     */
+    @Override
+    public void setPersistentQueueSegmentSize(int persistentQueueSegmentSize) {
+        super.setPersistentQueueSegmentSize(persistentQueueSegmentSize);
+    }
+
+    /**
+     * Checks if each message written to the persistent offline publish queue
+     * is forced to the storage device before the publish request returns.
+     * Without it, queued messages survive a crash of the application, but
+     * surviving a crash of the operating system or a power loss is up to the
+     * operating system flushing the written pages in time. Forcing each
+     * message makes queuing considerably slower. By default, it's disabled.
+     *
+     * @return true, if writes to the persistent queue are forced
+     */
+    @Override
+    public boolean isPersistentQueueSync() {
+        return super.isPersistentQueueSync();
+    }
+
+    /**
+     * Enables or disables forcing the messages written to the persistent
+     * offline publish queue to the storage device. This value must be set
+     * before {@link #connect()} is called.
+     *
+     * @param persistentQueueSync
+     *            true to force each message to the storage device. The
+     *            default value is false.
+     */
+    @Override
+    public void setPersistentQueueSync(boolean persistentQueueSync) {
+        super.setPersistentQueueSync(persistentQueueSync);
+    }
+
+    /**
+     * Gets the number of queued requests sent per second after the connection
+     * is established. Queued subscribe requests are replayed first, then
+     * unsubscribe requests, then publish requests. Replaying a large offline
+     * queue at a controlled rate keeps it from flooding the connection and
+     * getting throttled by the server. Requests sent by the application during
+     * the replay are not delayed, and take up to half of this rate from the
+     * replay. By default, it's 200.
+     *
+     * @return the replay rate in messages per second
+     */
+    @Override
+    public int getOfflineReplayRate() {
+        return super.getOfflineReplayRate();
+    }
+
+    /**
+     * Sets a new value for the offline queue replay rate.
+     *
+     * @param offlineReplayRate
+     *            the replay rate in messages per second, or 0 to only limit
+     *            the replay by {@link #getOfflineReplayMaxInflight()}. The
+     *            default value is 200.
+     */
+    @Override
+    public void setOfflineReplayRate(int offlineReplayRate) {
+        super.setOfflineReplayRate(offlineReplayRate);
+    }
+
+    /**
+     * Gets the maximum number of replayed requests waiting for completion,
+     * i.e. for the acknowledgement of QoS 1 publishes and subscribe requests,
+     * or for QoS 0 publishes to be written out. It should be kept below
+     * {@link #getMaxInflight()}, so that the replay leaves room for requests
+     * sent by the application. By default, it's 5.
+     *
+     * @return the maximum number of replayed requests in flight
+     */
+    @Override
+    public int getOfflineReplayMaxInflight() {
+        return super.getOfflineReplayMaxInflight();
+    }
+
+    /**
+     * Sets a new value for the maximum number of replayed requests in flight.
+     *
+     * @param offlineReplayMaxInflight
+     *            the maximum number of replayed requests in flight, or 0 for
+     *            no limit. The default value is 5.
+     */
+    @Override
+    public void setOfflineReplayMaxInflight(int offlineReplayMaxInflight) {
+        super.setOfflineReplayMaxInflight(offlineReplayMaxInflight);
+    }
+
+    /**
+     * Gets the directory of the file persisting QoS 1 messages in flight. When
+     * it's set, messages that have been sent but not yet acknowledged, or
+     * received but not yet acknowledged, are kept in a memory-mapped log file
+     * in this directory, one per client ID and endpoint, instead of in memory,
+     * so they are delivered after the application restarts. This requires
+     * {@link #isCleanSession()} to be false, as the MQTT library discards the
+     * persisted messages when a clean session is established. By default, it's
+     * not set, and the messages in flight are held in memory.
+     *
+     * @return the persistence directory, or null if it's not set
+     */
+    @Override
+    public String getMqttPersistenceDirectory() {
+        return super.getMqttPersistenceDirectory();
+    }
+
+    /**
+     * Sets the directory of the file persisting QoS 1 messages in flight. This
+     * value must be set before {@link #connect()} is called; a change made
+     * afterwards is applied once the client has been disconnected and is
+     * connected again. The file is locked until the connection is permanently
+     * closed, e.g. by {@link #disconnect()}, so it can't be shared by clients.
+     *
+     * @param mqttPersistenceDirectory
+     *            the directory, which is created if it doesn't exist, or null
+     *            to hold the messages in memory
+     */
+    @Override
+    public void setMqttPersistenceDirectory(String mqttPersistenceDirectory) {
+        super.setMqttPersistenceDirectory(mqttPersistenceDirectory);
+    }
+
+    /**
+     * Gets the initial size in bytes of the file persisting messages in
+     * flight. When the file is full, the messages still in flight are moved to
+     * a new file, which is grown if they don't fit. By default, it's 1 MB.
+     *
+     * @return the initial persistence file size in bytes
+     */
+    @Override
+    public int getMqttPersistenceFileSize() {
+        return super.getMqttPersistenceFileSize();
+    }
+
+    /**
+     * Sets a new value for the initial size of the file persisting messages in
+     * flight. This value must be set before {@link #connect()} is called for
+     * the first time.
+     *
+     * @param mqttPersistenceFileSize
+     *            the initial file size in bytes. The default value is 1048576.
+     */
+    @Override
+    public void setMqttPersistenceFileSize(int mqttPersistenceFileSize) {
+        super.setMqttPersistenceFileSize(mqttPersistenceFileSize);
+    }
+
+    /**
+     * Gets whether ordered dispatch is enabled. When it's enabled, messages
+     * for the same subscription, or more generally for subscriptions sharing
+     * the same {@link AZEROIotTopic#getDispatchKey()}, are delivered to
+     * {@link AZEROIotTopic#onMessage} one at a time in the order they arrived,
+     * even when the client is configured with more than one thread. Messages
+     * with different keys are still delivered in parallel. By default, it's
+     * disabled.
+     *
+     * @return whether ordered dispatch is enabled
+     */
+    @Override
+    public boolean isOrderedDispatch() {
+        return super.isOrderedDispatch();
+    }
+
+    /**
+     * Sets whether ordered dispatch should be enabled. This value must be set
+     * before {@link #connect()} is called.
+     *
+     * @param orderedDispatch
+     *            true to deliver messages in order for each dispatch key;
+     *            false to deliver all messages independently. The default
+     *            value is false.
+     */
+    @Override
+    public void setOrderedDispatch(boolean orderedDispatch) {
+        super.setOrderedDispatch(orderedDispatch);
+    }
+
+    /**
+     * Gets the topic match cache size currently configured. The cache maps
+     * the topics of inbound messages to the subscriptions matching them, so
+     * that messages arriving on a small, stable set of topics are dispatched
+     * without matching the subscriptions every time. The cache is cleared
+     * whenever the subscriptions change. Lookups are spread over up to 16
+     * independently locked segments by topic hash, so concurrent dispatch
+     * threads rarely contend, and the least recently used topic is evicted per
+     * segment. By default, the cache size is 0, which disables the cache.
+     *
+     * @return the topic match cache size
+     */
+    @Override
+    public int getTopicMatchCacheSize() {
+        return super.getTopicMatchCacheSize();
+    }
+
+    /**
+     * Sets a new value for the topic match cache size. The new value takes
+     * effect immediately, even if the client is already connected, by
+     * replacing the cache with an empty one of the new size; the cache hit and
+     * miss counters restart from 0. Setting it to 0 will disable the cache.
+     *
+     * @param topicMatchCacheSize
+     *            the maximum number of topics to be cached. The default value
+     *            is 0.
+     */
+    @Override
+    public void setTopicMatchCacheSize(int topicMatchCacheSize) {
+        super.setTopicMatchCacheSize(topicMatchCacheSize);
+    }
+
+    /**
+     * Gets the inbound message pool size currently configured. When it's
+     * greater than 0, message recycling is enabled: inbound messages are taken
+     * from a pool of this size and returned to it once delivered, which avoids
+     * allocating a message for every frame received. By default, the pool size
+     * is 0, which disables message recycling.
+     *
+     * @return the inbound message pool size
+     */
+    @Override
+    public int getMessagePoolSize() {
+        return super.getMessagePoolSize();
+    }
+
+    /**
+     * Sets a new value for the inbound message pool size. This value must be
+     * set before {@link #connect()} is called. Setting it to 0 will disable
+     * message recycling.
+     * <p>
+     * With message recycling enabled, a message passed to
+     * {@link AZEROIotTopic#onMessage} is only valid until that function
+     * returns. Handlers that keep the message, e.g. to process it on another
+     * thread, must call {@link AZEROIotMessage#retain()} before returning and
+     * {@link AZEROIotMessage#release()} once done with it.
+     * </p>
+     *
+     * @param messagePoolSize
+     *            the maximum number of idle messages kept in the pool. The
+     *            default value is 0.
+     */
+    @Override
+    public void setMessagePoolSize(int messagePoolSize) {
+        super.setMessagePoolSize(messagePoolSize);
+    }
+
+    /**
+     * Adds a payload codec, e.g. {@link AZEROIotDeflateCodec}, for messages
+     * published to topics matching the given topic filter. Payloads are only
+     * encoded if that makes them smaller, and carry a small header identifying
+     * the codec. Inbound payloads from topics matching the topic filter are
+     * decoded automatically before they are delivered if they carry the header
+     * of a known codec, as long as the decoded payload doesn't exceed
+     * {@link #getMaxDecodedPayloadSize()}. Payloads from other topics are
+     * always delivered as is.
+     *
+     * @param topicFilter
+     *            the topic filter of the messages to be encoded
+     * @param codec
+     *            the payload codec
+     */
+    @Override
+    public void addPayloadCodec(String topicFilter, AZEROIotPayloadCodec codec) {
+        super.addPayloadCodec(topicFilter, codec);
+    }
+
+    /**
+     * Gets the maximum number of QoS 1 and QoS 2 publishes in flight, i.e.
+     * sent but not yet acknowledged by the server. On links with a high
+     * round-trip time, a larger value allows for a higher throughput. By
+     * default, it's 10.
+     *
+     * @return the maximum number of publishes in flight
+     */
+    @Override
+    public int getMaxInflight() {
+        return super.getMaxInflight();
+    }
+
+    /**
+     * Sets a new value for the maximum number of publishes in flight. This
+     * value must be set before {@link #connect()} is called. Publishing beyond
+     * it fails, unless the adaptive in-flight window is enabled.
+     *
+     * @param maxInflight
+     *            the maximum number of publishes in flight. The default value
+     *            is 10.
+     */
+    @Override
+    public void setMaxInflight(int maxInflight) {
+        super.setMaxInflight(maxInflight);
+    }
+
+    /**
+     * Checks if the in-flight window adapts to the link. When enabled, the
+     * number of QoS 1 and QoS 2 publishes in flight is limited by a window
+     * adjusted by additive increase, multiplicative decrease on the
+     * acknowledgement latency: it starts at {@link #getMaxInflight()} and
+     * grows up to {@link #getMaxAdaptiveInflight()} while acknowledgements
+     * keep their pace, and is halved when they slow down. The in-flight limit
+     * of the MQTT connection is raised to the latter accordingly. Publishes beyond the window wait, up to
+     * {@link #getMaxOfflineQueueSize()} of them, and are sent as
+     * acknowledgements arrive. By default, it's disabled.
+     *
+     * @return true, if the in-flight window is adaptive
+     */
+    @Override
+    public boolean isAdaptiveInflight() {
+        return super.isAdaptiveInflight();
+    }
+
+    /**
+     * Enables or disables the adaptive in-flight window. This value must be
+     * set before {@link #connect()} is called.
+     *
+     * @param adaptiveInflight
+     *            true to enable the adaptive in-flight window. The default
+     *            value is false.
+     */
+    @Override
+    public void setAdaptiveInflight(boolean adaptiveInflight) {
+        super.setAdaptiveInflight(adaptiveInflight);
+    }
+
+    /**
+     * Gets the maximum number of QoS 1 and QoS 2 publishes in flight the
+     * adaptive in-flight window can grow to, see
+     * {@link #isAdaptiveInflight()}. If {@link #getMaxInflight()} is larger,
+     * the window is capped by the latter instead. By default, it's 100.
+     *
+     * @return the maximum adaptive in-flight window
+     */
+    @Override
+    public int getMaxAdaptiveInflight() {
+        return super.getMaxAdaptiveInflight();
+    }
+
+    /**
+     * Sets a new value for the maximum adaptive in-flight window. This value
+     * must be set before {@link #connect()} is called.
+     *
+     * @param maxAdaptiveInflight
+     *            the maximum adaptive in-flight window. The default value is
+     *            100.
+     */
+    @Override
+    public void setMaxAdaptiveInflight(int maxAdaptiveInflight) {
+        super.setMaxAdaptiveInflight(maxAdaptiveInflight);
+    }
+
+    /**
+     * Gets the current in-flight window, i.e. the number of QoS 1 and QoS 2
+     * publishes currently allowed in flight. It's the same as
+     * {@link #getMaxInflight()}, unless the adaptive in-flight window is
+     * enabled.
+     *
+     * @return the current in-flight window
+     */
+    @Override
+    public int getInflightWindow() {
+        return super.getInflightWindow();
+    }
+
+    /**
+     * Gets the maximum number of payload bytes carried by a chunk in chunked
+     * transfers, see {@link #publishChunked(String, AZEROIotQos, InputStream, long)}.
+     * It should be well below the message size limit of the broker. By
+     * default, it's 64 KB.
+     *
+     * @return the chunk size in bytes
+     */
+    @Override
+    public int getChunkSize() {
+        return super.getChunkSize();
+    }
+
+    /**
+     * Sets a new value for the chunk size. Transfers already in progress are
+     * not affected.
+     *
+     * @param chunkSize
+     *            the maximum number of payload bytes in a chunk. The default
+     *            value is 65536.
+     */
+    @Override
+    public void setChunkSize(int chunkSize) {
+        super.setChunkSize(chunkSize);
+    }
+
+    /**
+     * Gets the maximum number of chunks a chunked transfer keeps in flight,
+     * i.e. published but not yet completed. It should not exceed
+     * {@link #getMaxInflight()}. By default, the window size is 8.
+     *
+     * @return the chunk window size
+     */
+    @Override
+    public int getChunkWindowSize() {
+        return super.getChunkWindowSize();
+    }
+
+    /**
+     * Sets a new value for the chunk window size. Transfers already in
+     * progress are not affected.
+     *
+     * @param chunkWindowSize
+     *            the maximum number of chunks in flight. The default value is
+     *            8.
+     */
+    @Override
+    public void setChunkWindowSize(int chunkWindowSize) {
+        super.setChunkWindowSize(chunkWindowSize);
+    }
+
+    /**
+     * Gets the maximum number of messages packed into a batch by
+     * {@link #publishBatched(AZEROIotMessage)}. A batch reaching this number
+     * is published immediately. By default, it's 64.
+     *
+     * @return the maximum number of messages in a batch
+     */
+    @Override
+    public int getBatchMaxMessages() {
+        return super.getBatchMaxMessages();
+    }
+
+    /**
+     * Sets a new value for the maximum number of messages in a batch.
+     *
+     * @param batchMaxMessages
+     *            the maximum number of messages in a batch. The default value
+     *            is 64.
+     */
+    @Override
+    public void setBatchMaxMessages(int batchMaxMessages) {
+        super.setBatchMaxMessages(batchMaxMessages);
+    }
+
+    /**
+     * Gets the maximum size in bytes of a batch, including the framing. A
+     * batch that would grow beyond this size is published before the next
+     * message is added. By default, it's 16 KB.
+     *
+     * @return the maximum size of a batch in bytes
+     */
+    @Override
+    public int getBatchMaxBytes() {
+        return super.getBatchMaxBytes();
+    }
+
+    /**
+     * Sets a new value for the maximum size of a batch.
+     *
+     * @param batchMaxBytes
+     *            the maximum size of a batch in bytes. The default value is
+     *            16384.
+     */
+    @Override
+    public void setBatchMaxBytes(int batchMaxBytes) {
+        super.setBatchMaxBytes(batchMaxBytes);
+    }
+
+    /**
+     * Gets the time in milliseconds a batch waits for more messages after its
+     * first message, before it's published regardless of its size. This
+     * bounds the latency added by batching. By default, it's 20 milliseconds.
+     *
+     * @return the linger time in milliseconds
+     */
+    @Override
+    public int getBatchLingerTime() {
+        return super.getBatchLingerTime();
+    }
+
+    /**
+     * Sets a new value for the batch linger time.
+     *
+     * @param batchLingerTime
+     *            the linger time in milliseconds. The default value is 20.
+     */
+    @Override
+    public void setBatchLingerTime(int batchLingerTime) {
+        super.setBatchLingerTime(batchLingerTime);
+    }
+
+    /**
+     * Gets whether inbound batches, published by
+     * {@link #publishBatched(AZEROIotMessage)}, are expanded into individual
+     * messages before they are delivered. When it's enabled, every inbound
+     * payload starting with the batch header is treated as a batch, so it
+     * should only be enabled if all the subscribed topics either carry batches
+     * or text payloads, e.g. JSON, which never start with the header. By
+     * default, it's disabled, and batches are delivered as single messages
+     * with the framed payload.
+     *
+     * @return whether inbound batches are expanded
+     */
+    @Override
+    public boolean isReceiveBatches() {
+        return super.isReceiveBatches();
+    }
+
+    /**
+     * Sets whether inbound batches should be expanded into individual
+     * messages.
+     *
+     * @param receiveBatches
+     *            true to expand inbound batches; false to deliver them as is.
+     *            The default value is false.
+     */
+    @Override
+    public void setReceiveBatches(boolean receiveBatches) {
+        super.setReceiveBatches(receiveBatches);
+    }
+
+    /**
+     * Gets the maximum size in bytes an inbound payload may have after being
+     * decoded by a payload codec. Decoding runs on the thread receiving
+     * messages, and is aborted as soon as the limit is exceeded, in which case
+     * the message is dropped, so that a small compressed payload can't expand
+     * into an arbitrarily large one. By default, it's 1MB.
+     *
+     * @return the maximum decoded payload size in bytes
+     */
+    @Override
+    public int getMaxDecodedPayloadSize() {
+        return super.getMaxDecodedPayloadSize();
+    }
+
+    /**
+     * Sets a new value for the maximum decoded payload size.
+     *
+     * @param maxDecodedPayloadSize
+     *            the maximum decoded payload size in bytes. The default value
+     *            is 1048576.
+     */
+    @Override
+    public void setMaxDecodedPayloadSize(int maxDecodedPayloadSize) {
+        super.setMaxDecodedPayloadSize(maxDecodedPayloadSize);
+    }
+
+    /**
+     * Removes the payload codec for the given topic filter. Messages published
+     * to and received from matching topics are passed as is afterwards, unless
+     * another topic filter with a codec matches them.
+     *
+     * @param topicFilter
+     *            the topic filter the codec was added for
      */
     @Override
-    public int getBaseRetryDelay() {
-        return super.getBaseRetryDelay();
+    public void removePayloadCodec(String topicFilter) {
+        super.removePayloadCodec(topicFilter);
     }
 
     /**
-     * Sets a new value in milliseconds for the base retry delay. This value
-     * must be set before {@link #connect()} is called.
+     * Enables conflation for messages published to topics matching the given
+     * topic filter, for state-like topics where only the latest value matters.
+     * While the client is offline, a message published to a conflated topic
+     * replaces the message for the same topic still waiting in the offline
+     * queue, which then fails with its {@link AZEROIotMessage#onFailure()}
+     * callback. The offline queue therefore holds at most one message per
+     * conflated topic.
      *
-     * @param baseRetryDelay
-     *            the new base retry delay. The default value is 3,000ms.
+     * @param topicFilter
+     *            the topic filter of the topics to be conflated
      */
     @Override
-    public void setBaseRetryDelay(int baseRetryDelay) {
-        super.setBaseRetryDelay(baseRetryDelay);
+    public void addConflatedTopic(String topicFilter) {
+        super.addConflatedTopic(topicFilter);
     }
 
     /**
-     * Gets the maximum retry delay in milliseconds currently configured. For
-     * each connection failure, a brief delay has to elapse before the
-     * connection is retried. The retry delay is calculated using this simple
-     * formula
-     * {@code delay = min(baseRetryDelay * pow(2, numRetries), maxRetryDelay)}.
-     * By default, the maximum retry delay is 30,000ms.
+     * Disables conflation for the given topic filter. Messages already queued
+     * are not affected.
      *
-     * @return the maximum retry delay
+     * @param topicFilter
+     *            the topic filter conflation was enabled for
      */
     @Override
-    public int getMaxRetryDelay() {
-        return super.getMaxRetryDelay();
+    public void removeConflatedTopic(String topicFilter) {
+        super.removeConflatedTopic(topicFilter);
     }
 
     /**
-     * Sets a new value in milliseconds for the maximum retry delay. This value
-     * must be set before {@link #connect()} is called.
+     * Gets the number of queued messages that were replaced by newer messages
+     * for the same conflated topic, see {@link #addConflatedTopic(String)}.
      *
-     * @param maxRetryDelay
-     *            the new max retry delay. The default value is 30,000ms.
+     * @return the number of superseded messages
      */
     @Override
-    public void setMaxRetryDelay(int maxRetryDelay) {
-        super.setMaxRetryDelay(maxRetryDelay);
+    public long getSupersededMessageCount() {
+        return super.getSupersededMessageCount();
     }
 
     /**
-     * Gets the server acknowledge timeout in milliseconds currently configured.
-     * This timeout is used internally by the SDK when subscribing to shadow
-     * confirmation topics for get, update, and delete requests. It's also used
-     * for re-subscribing to user topics when the connection is retried. For
-     * most of the APIs provided in the SDK, the user can specify the timeout as
-     * an argument. By default, the server acknowledge timeout is 3,000ms.
+     * Gets the number of messages dropped because their time to live had
+     * elapsed, keyed by topic. It includes queued publish requests that
+     * expired before the offline queue was replayed, and received messages
+     * that expired before they could be delivered to a subscription, see
+     * {@link AZEROIotMessage#setTimeToLive(long)} and
+     * {@link AZEROIotTopic#setMessageTimeToLive(long)}. The counts can be used to
+     * tune the time to live and the offline queue size.
      *
-     * @return the server acknowledge timeout
+     * @return a snapshot of the expired message counts by topic
      */
     @Override
-    public int getServerAckTimeout() {
-        return super.getServerAckTimeout();
+    public Map<String, Long> getExpiredMessageCounts() {
+        return super.getExpiredMessageCounts();
     }
 
     /**
-     * Sets a new value in milliseconds for the default server acknowledge
-     * timeout. This value must be set before {@link #connect()} is called.
+     * Checks if the offline queues are being replayed after the connection
+     * was established, see {@link #getOfflineReplayRate()}.
      *
-     * @param serverAckTimeout
-     *            the new server acknowledge timeout. The default value is
-     *            3,000ms.
+     * @return true, if a replay is in progress
      */
     @Override
-    public void setServerAckTimeout(int serverAckTimeout) {
-        super.setServerAckTimeout(serverAckTimeout);
+    public boolean isReplaying() {
+        return super.isReplaying();
     }
 
     /**
-     * Gets the keep-alive interval for the MQTT connection in milliseconds
-     * currently configured. Setting this value to 0 will disable the keep-alive
-     * function for the connection. The default keep alive interval is 30,000ms.
+     * Gets the number of requests waiting in the offline queues, which is
+     * what's left to replay while {@link #isReplaying()} is true.
      *
-     * @return the keep alive interval
+     * @return the number of queued requests
      */
     @Override
-    public int getKeepAliveInterval() {
-        return super.getKeepAliveInterval();
+    public long getReplayBacklog() {
+        return super.getReplayBacklog();
     }
 
     /**
-     * Sets a new value in milliseconds for the connection keep-alive interval.
-     * This value must be set before {@link #connect()} is called. Setting this
-     * value to 0 will disable the keep-alive function.
+     * Gets the number of queued requests sent by the current replay, or by
+     * the last one if no replay is in progress. Together with
+     * {@link #getReplayBacklog()}, it gives the progress of the replay.
      *
-     * @param keepAliveInterval
-     *            the new keep alive interval. The default value is 30,000ms.
+     * @return the number of replayed requests
      */
     @Override
-    public void setKeepAliveInterval(int keepAliveInterval) {
-        super.setKeepAliveInterval(keepAliveInterval);
+    public long getReplayedRequestCount() {
+        return super.getReplayedRequestCount();
     }
 
     /**
-     * Gets the maximum offline queue size current configured. The offline
-     * queues are used for temporarily holding outgoing requests while the
-     * connection is being established or retried. When the connection is
-     * established, offline queue messages will be sent out as usual. They can
-     * be useful for dealing with transient connection failures by allowing the
-     * application to continuously send requests while the connection is being
-     * established. Each type of request, namely publish, subscribe, and
-     * unsubscribe, has their own offline queue. The default offline queue size
-     * is 64. Setting it to 0 will disable the offline queues.
+     * Gets the number of inbound messages whose matching subscriptions were
+     * found in the topic match cache. Together with
+     * {@link #getTopicMatchCacheMisses()}, it can be used to size the cache.
      *
-     * @return the max offline queue size
+     * @return the number of cache hits
      */
     @Override
-    public int getMaxOfflineQueueSize() {
-        return super.getMaxOfflineQueueSize();
+    public long getTopicMatchCacheHits() {
+        return super.getTopicMatchCacheHits();
     }
 
     /**
-     * Sets a new value for the maximum offline queue size. This value must be
-     * set before {@link #connect()} is called. Setting it to 0 will disable the
-     * offline queues.
+     * Gets the number of inbound messages whose topic was not found in the
+     * topic match cache.
      *
-     * @param maxOfflineQueueSize
-     *            the new maximum offline queue size. The default value is 64.
+     * @return the number of cache misses
      */
     @Override
-    public void setMaxOfflineQueueSize(int maxOfflineQueueSize) {
-        super.setMaxOfflineQueueSize(maxOfflineQueueSize);
+    public long getTopicMatchCacheMisses() {
+        return super.getTopicMatchCacheMisses();
     }
 
     /**
@@ -511,6 +1381,24 @@ public class AZEROIotMqttClient extends AbstractAzeroIotClient {
         super.connect(timeout, blocking);
     }
 
+    /**
+     * Connect the client to the server. This is a non-blocking call, so it
+     * immediately returns once the operation has been queued in the system.
+     * The returned future is completed once the connection is established,
+     * has failed, or timed out.
+     *
+     * @param timeout
+     *            the timeout in milliseconds for the operation to be considered
+     *            timed out
+     * @return the future of the operation
+     * @throws AZEROIotException
+     *             exception thrown if the operation fails to be queued
+     */
+    @Override
+    public AZEROIotFuture<Void> connectAsync(long timeout) throws AZEROIotException {
+        return super.connectAsync(timeout);
+    }
+
     /**
      * Disconnect the client from the server. This is a blocking call, so the
      * calling thread will be blocked until the operation succeeded or failed.
@@ -803,6 +1691,225 @@ public class AZEROIotMqttClient extends AbstractAzeroIotClient {
         super.publish(message, timeout);
     }
 
+    /**
+     * Publishes the payload to a given topic. This is a non-blocking call so it
+     * immediately returns once the operation has been queued in the system.
+     * The returned future is completed once the publish operation succeeded,
+     * failed, or timed out, so that many requests can be pipelined without
+     * blocking a thread for each of them.
+     *
+     * @param topic
+     *            the topic to be published to
+     * @param qos
+     *            the MQTT QoS used for publishing
+     * @param payload
+     *            the payload to be published
+     * @param timeout
+     *            the timeout in milliseconds for the operation to be considered
+     *            timed out
+     * @return the future of the operation
+     * @throws AZEROIotException
+     *             the exception thrown if the publish operation fails to be
+     *             queued
+     */
+    @Override
+    public AZEROIotFuture<Void> publishAsync(String topic, AZEROIotQos qos, String payload, long timeout)
+            throws AZEROIotException {
+        return super.publishAsync(topic, qos, payload, timeout);
+    }
+
+    /**
+     * Publishes the payload to a given topic. This is a non-blocking call so it
+     * immediately returns once the operation has been queued in the system.
+     * The returned future is completed once the publish operation succeeded,
+     * failed, or timed out, so that many requests can be pipelined without
+     * blocking a thread for each of them.
+     *
+     * @param topic
+     *            the topic to be published to
+     * @param qos
+     *            the MQTT QoS used for publishing
+     * @param payload
+     *            the payload to be published
+     * @param timeout
+     *            the timeout in milliseconds for the operation to be considered
+     *            timed out
+     * @return the future of the operation
+     * @throws AZEROIotException
+     *             the exception thrown if the publish operation fails to be
+     *             queued
+     */
+    @Override
+    public AZEROIotFuture<Void> publishAsync(String topic, AZEROIotQos qos, byte[] payload, long timeout)
+            throws AZEROIotException {
+        return super.publishAsync(topic, qos, payload, timeout);
+    }
+
+    /**
+     * Publishes the payload to a given topic. Topic, MQTT QoS, and payload are
+     * given in the {@code message} argument. This is a non-blocking call so it
+     * immediately returns once the operation has been queued in the system.
+     * The callback functions of {@code message} are invoked as in
+     * {@link #publish(AZEROIotMessage, long)}, after which the returned future
+     * is completed.
+     *
+     * @param message
+     *            the message, including the topic, MQTT QoS, and payload, to be
+     *            published
+     * @param timeout
+     *            the timeout in milliseconds for the operation to be considered
+     *            timed out
+     * @return the future of the operation
+     * @throws AZEROIotException
+     *             the exception thrown if the publish operation fails to be
+     *             queued
+     */
+    @Override
+    public AZEROIotFuture<Void> publishAsync(AZEROIotMessage message, long timeout) throws AZEROIotException {
+        return super.publishAsync(message, timeout);
+    }
+
+    /**
+     * Publishes a payload to a given topic with QoS 0, without any completion
+     * tracking. See also {@link #publishFireAndForget(String, byte[])}.
+     *
+     * @param topic
+     *            the topic to be published to
+     * @param payload
+     *            the payload to be published
+     * @throws AZEROIotException
+     *             exception thrown if the message can neither be sent nor
+     *             queued
+     */
+    @Override
+    public void publishFireAndForget(String topic, String payload) throws AZEROIotException {
+        super.publishFireAndForget(topic, payload);
+    }
+
+    /**
+     * Publishes a payload to a given topic with QoS 0, without any completion
+     * tracking. Unlike {@link #publish(String, byte[])}, no completion object
+     * is created, no callback is scheduled on the client threads, and the
+     * payload is not copied, which makes it suitable for high-rate streams such
+     * as sensor readings. The payload array must not be modified after this
+     * call. While the client is offline, the message is kept in the offline
+     * queue as with the other publish calls.
+     *
+     * @param topic
+     *            the topic to be published to
+     * @param payload
+     *            the payload to be published, which must not be modified
+     *            afterwards
+     * @throws AZEROIotException
+     *             exception thrown if the message can neither be sent nor
+     *             queued
+     */
+    @Override
+    public void publishFireAndForget(String topic, byte[] payload) throws AZEROIotException {
+        super.publishFireAndForget(topic, payload);
+    }
+
+    /**
+     * Publishes a payload to a given topic as part of a batch. See also
+     * {@link #publishBatched(AZEROIotMessage)}.
+     *
+     * @param topic
+     *            the topic to be published to
+     * @param qos
+     *            the MQTT QoS level
+     * @param payload
+     *            the payload to be published
+     */
+    @Override
+    public void publishBatched(String topic, AZEROIotQos qos, byte[] payload) {
+        super.publishBatched(topic, qos, payload);
+    }
+
+    /**
+     * Publishes a message as part of a batch. Messages published to the same
+     * topic with the same QoS level are packed into one framed payload, which
+     * is published once it holds {@link #getBatchMaxMessages()} messages or
+     * {@link #getBatchMaxBytes()} bytes, or once it has waited
+     * {@link #getBatchLingerTime()} milliseconds. This saves a PUBLISH and a
+     * completion per message for frequent, small messages such as telemetry
+     * readings. The receiving client expands the frame back into individual
+     * messages before delivering them if it has enabled
+     * {@link #setReceiveBatches(boolean)}. This is a non-blocking call, and the
+     * callback functions of {@code message} are invoked when its batch has
+     * been published.
+     *
+     * @param message
+     *            the message, including the topic, MQTT QoS, and payload, to be
+     *            published
+     */
+    @Override
+    public void publishBatched(AZEROIotMessage message) {
+        super.publishBatched(message);
+    }
+
+    /**
+     * Publishes all the batches that are still waiting for more messages.
+     */
+    @Override
+    public void flushBatches() {
+        super.flushBatches();
+    }
+
+    /**
+     * Publishes a stream to a given topic in chunks of at most
+     * {@link #getChunkSize()} bytes, so that large payloads, e.g. logs or
+     * snapshots, neither exceed the message size limit of the broker nor
+     * block other messages for long. Each chunk carries a transfer ID and a
+     * sequence number, and is reassembled by an {@link AZEROIotChunkedTopic}
+     * subscribed to the topic. Up to {@link #getChunkWindowSize()} chunks are
+     * kept in flight at a time. This is a blocking call, which returns once all
+     * the chunks have been published. The stream is not closed.
+     *
+     * @param topic
+     *            the topic to be published to
+     * @param qos
+     *            the MQTT QoS level of the chunks
+     * @param stream
+     *            the stream to be published
+     * @param timeout
+     *            the timeout in milliseconds for the whole transfer, or 0 for
+     *            no timeout
+     * @throws AZEROIotException
+     *             exception thrown if the stream can't be read or a chunk fails
+     *             to be published
+     * @throws AZEROIotTimeoutException
+     *             exception thrown if the transfer doesn't complete in time
+     */
+    @Override
+    public void publishChunked(String topic, AZEROIotQos qos, InputStream stream, long timeout)
+            throws AZEROIotException, AZEROIotTimeoutException {
+        super.publishChunked(topic, qos, stream, timeout);
+    }
+
+    /**
+     * Publishes a payload to a given topic in chunks. See also
+     * {@link #publishChunked(String, AZEROIotQos, InputStream, long)}.
+     *
+     * @param topic
+     *            the topic to be published to
+     * @param qos
+     *            the MQTT QoS level of the chunks
+     * @param payload
+     *            the payload to be published
+     * @param timeout
+     *            the timeout in milliseconds for the whole transfer, or 0 for
+     *            no timeout
+     * @throws AZEROIotException
+     *             exception thrown if a chunk fails to be published
+     * @throws AZEROIotTimeoutException
+     *             exception thrown if the transfer doesn't complete in time
+     */
+    @Override
+    public void publishChunked(String topic, AZEROIotQos qos, byte[] payload, long timeout)
+            throws AZEROIotException, AZEROIotTimeoutException {
+        super.publishChunked(topic, qos, payload, timeout);
+    }
+
     /**
      * Subscribes to a given topic. Topic and MQTT QoS are given in the
      * {@code topic} argument. This call can be either blocking or non-blocking
@@ -924,6 +2031,29 @@ public class AZEROIotMqttClient extends AbstractAzeroIotClient {
         super.subscribe(topic, timeout);
     }
 
+    /**
+     * Subscribes to a given topic. Topic and MQTT QoS are given in the
+     * {@code topic} argument. This is a non-blocking call so it immediately
+     * returns once the operation has been queued in the system. The callback
+     * functions of {@code topic} are invoked as in
+     * {@link #subscribe(AZEROIotTopic, long)}, after which the returned future
+     * is completed.
+     *
+     * @param topic
+     *            the topic to subscribe to
+     * @param timeout
+     *            the timeout in milliseconds for the operation to be considered
+     *            timed out
+     * @return the future of the operation
+     * @throws AZEROIotException
+     *             the exception thrown if the subscribe operation fails to be
+     *             queued
+     */
+    @Override
+    public AZEROIotFuture<Void> subscribeAsync(AZEROIotTopic topic, long timeout) throws AZEROIotException {
+        return super.subscribeAsync(topic, timeout);
+    }
+
     /**
      * Unsubscribes to a given topic. This is a blocking call, so the calling
      * thread is blocked until the unsubscribe operation completed or failed.
@@ -1009,6 +2139,49 @@ public class AZEROIotMqttClient extends AbstractAzeroIotClient {
         super.unsubscribe(topic, timeout);
     }
 
+    /**
+     * Unsubscribes to a given topic. This is a non-blocking call so it
+     * immediately returns once the operation has been queued in the system.
+     * The returned future is completed once the unsubscribe operation
+     * succeeded, failed, or timed out.
+     *
+     * @param topic
+     *            the topic to unsubscribe to
+     * @param timeout
+     *            the timeout in milliseconds for the operation to be considered
+     *            timed out
+     * @return the future of the operation
+     * @throws AZEROIotException
+     *             the exception thrown if the unsubscribe operation fails to be
+     *             queued
+     */
+    @Override
+    public AZEROIotFuture<Void> unsubscribeAsync(String topic, long timeout) throws AZEROIotException {
+        return super.unsubscribeAsync(topic, timeout);
+    }
+
+    /**
+     * Unsubscribes to a given topic. This is a non-blocking call so it
+     * immediately returns once the operation has been queued in the system.
+     * The callback functions of {@code topic} are invoked as in
+     * {@link #unsubscribe(AZEROIotTopic, long)}, after which the returned
+     * future is completed.
+     *
+     * @param topic
+     *            the topic to unsubscribe to
+     * @param timeout
+     *            the timeout in milliseconds for the operation to be considered
+     *            timed out
+     * @return the future of the operation
+     * @throws AZEROIotException
+     *             the exception thrown if the unsubscribe operation fails to be
+     *             queued
+     */
+    @Override
+    public AZEROIotFuture<Void> unsubscribeAsync(AZEROIotTopic topic, long timeout) throws AZEROIotException {
+        return super.unsubscribeAsync(topic, timeout);
+    }
+
     /**
      * Attach a shadow device to the client. Once attached, the device, if
      * configured, will be automatically synchronized with the AZERO Thing shadow
@@ -0,0 +1,30 @@
+package com.azero.services.iot.client;
+
+/**
+ * Strategies for handling messages arriving at a full buffer of an
+ * {@link AZEROIotStreamTopic}.
+ */
+public enum AZEROIotOverflowStrategy {
+
+    /** Discard the oldest buffered message to make room for the new one. */
+    DROP_OLDEST,
+
+    /** Discard the new message. */
+    DROP_NEWEST,
+
+    /**
+     * Block the thread receiving messages from the network until there is room
+     * in the buffer, which stops the client from reading further messages and
+     * eventually slows down the sender through TCP flow control.
+     * <p>
+     * While that thread is blocked, no acknowledgements are processed either.
+     * Therefore {@link AZEROIotStreamTopic#onNext} must not make synchronous
+     * QoS 1 publish, subscribe or unsubscribe calls, or wait for any other
+     * request to complete, as the acknowledgement can't be received until the
+     * buffer has room, which deadlocks the client once the buffer is full. Use
+     * the asynchronous calls instead, or one of the dropping strategies.
+     * </p>
+     */
+    BLOCK
+
+}
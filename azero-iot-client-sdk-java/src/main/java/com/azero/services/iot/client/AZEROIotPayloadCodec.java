@@ -0,0 +1,57 @@
+package com.azero.services.iot.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This interface defines a payload codec, e.g. a compression algorithm, that
+ * can be applied to the messages published to and received from particular
+ * topics. See {@link AZEROIotMqttClient#addPayloadCodec(String, AZEROIotPayloadCodec)}.
+ * <p>
+ * Encoded payloads are prefixed with a small header carrying the codec ID, so
+ * the receiver can detect and decode them automatically. Implementations must
+ * be thread-safe, as they are shared by all the publishing threads and the
+ * thread receiving messages.
+ * </p>
+ */
+public interface AZEROIotPayloadCodec {
+
+    /**
+     * Gets the ID written to the header of the encoded payloads. IDs are in
+     * the range of 1 to 255, and must be unique among the codecs added to a
+     * client. IDs 1 and 2 are used by {@link AZEROIotDeflateCodec} and
+     * {@link AZEROIotGzipCodec} without a dictionary.
+     *
+     * @return the codec ID
+     */
+    int getId();
+
+    /**
+     * Encodes the payload.
+     *
+     * @param payload
+     *            the payload to be encoded
+     * @param out
+     *            the stream the encoded payload is written to
+     * @throws IOException
+     *             exception thrown if the payload can't be encoded
+     */
+    void encode(byte[] payload, OutputStream out) throws IOException;
+
+    /**
+     * Decodes the payload.
+     *
+     * @param data
+     *            the array containing the encoded payload
+     * @param offset
+     *            the offset of the encoded payload in the array
+     * @param length
+     *            the length of the encoded payload
+     * @param out
+     *            the stream the decoded payload is written to
+     * @throws IOException
+     *             exception thrown if the payload can't be decoded
+     */
+    void decode(byte[] data, int offset, int length, OutputStream out) throws IOException;
+
+}
@@ -0,0 +1,271 @@
+package com.azero.services.iot.client;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.azero.services.iot.client.core.AbstractAzeroIotClient;
+import com.azero.services.iot.client.core.AzeroIotRuntimeException;
+
+/**
+ * This class is a subscription with flow control, for consumers that can't
+ * always keep up with the rate messages arrive at.
+ * <p>
+ * Instead of being pushed to {@link #onMessage}, messages are buffered up to
+ * a fixed bound and delivered to {@link #onNext} only as demanded by the
+ * application through {@link #request(long)}, similar to a Reactive Streams
+ * subscription. When the buffer is full, the {@link AZEROIotOverflowStrategy}
+ * given to the constructor decides whether messages are dropped or the client
+ * stops receiving until the application catches up.
+ * </p>
+ * <p>
+ * {@link #onNext} is invoked on the client threads, one message at a time in
+ * the order the messages arrived. Applications are expected to override it,
+ * and to call {@link #request(long)} whenever they are ready for more
+ * messages, for example once at the beginning and then once after each
+ * message has been processed. With message recycling enabled on the client,
+ * the message is only valid until {@link #onNext} returns, unless it's
+ * retained.
+ * </p>
+ */
+public class AZEROIotStreamTopic extends AZEROIotTopic {
+
+    private static final Logger LOGGER = Logger.getLogger(AZEROIotStreamTopic.class.getName());
+
+    /** The maximum number of messages delivered before yielding the thread. */
+    private static final int MAX_MESSAGES_PER_RUN = 16;
+
+    /** The client providing the threads to deliver messages. */
+    private final AbstractAzeroIotClient client;
+
+    /** The messages waiting to be demanded. */
+    private final BlockingQueue<AZEROIotMessage> buffer;
+
+    /** The strategy applied when the buffer is full. */
+    private final AZEROIotOverflowStrategy overflowStrategy;
+
+    /** The number of messages demanded but not yet delivered. */
+    private final AtomicLong requested = new AtomicLong();
+
+    /** The number of messages dropped due to buffer overflow. */
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /** Whether the delivery task is scheduled or running. */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /** The task delivering buffered messages as demanded. */
+    private final Runnable deliveryTask = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    /**
+     * Instantiates a new stream topic object with QoS0.
+     *
+     * @param client
+     *            the client the topic is subscribed with
+     * @param topic
+     *            the topic to be subscribed to
+     * @param bufferSize
+     *            the maximum number of messages to be buffered
+     * @param overflowStrategy
+     *            the strategy applied when the buffer is full
+     */
+    public AZEROIotStreamTopic(AbstractAzeroIotClient client, String topic, int bufferSize,
+            AZEROIotOverflowStrategy overflowStrategy) {
+        this(client, topic, AZEROIotQos.QOS0, bufferSize, overflowStrategy);
+    }
+
+    /**
+     * Instantiates a new stream topic object.
+     *
+     * @param client
+     *            the client the topic is subscribed with
+     * @param topic
+     *            the topic to be subscribed to
+     * @param qos
+     *            the MQTT QoS level for the subscription
+     * @param bufferSize
+     *            the maximum number of messages to be buffered
+     * @param overflowStrategy
+     *            the strategy applied when the buffer is full
+     */
+    public AZEROIotStreamTopic(AbstractAzeroIotClient client, String topic, AZEROIotQos qos, int bufferSize,
+            AZEROIotOverflowStrategy overflowStrategy) {
+        super(topic, qos);
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.client = client;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.overflowStrategy = overflowStrategy;
+    }
+
+    /**
+     * Requests the given number of messages to be delivered to {@link #onNext}.
+     * Demand accumulates across calls; {@link Long#MAX_VALUE} means unbounded
+     * demand, which turns off flow control.
+     *
+     * @param n
+     *            the number of messages requested, which must be positive
+     */
+    public void request(long n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Number of requested messages must be positive");
+        }
+        while (true) {
+            long current = requested.get();
+            long next = current + n;
+            if (next < 0) {
+                next = Long.MAX_VALUE;
+            }
+            if (requested.compareAndSet(current, next)) {
+                break;
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * Callback function to be invoked for each message demanded through
+     * {@link #request(long)}.
+     *
+     * @param message
+     *            the message received
+     */
+    public void onNext(AZEROIotMessage message) {
+        // Default callback implementation is no-op
+    }
+
+    /**
+     * Messages are only added to the buffer here, so it's always safe to be
+     * invoked on the thread receiving messages. With
+     * {@link AZEROIotOverflowStrategy#BLOCK}, that thread is blocked while the
+     * buffer is full, which is intended, but it also means that
+     * {@link #onNext} must not wait for acknowledgements, e.g. through a
+     * synchronous QoS 1 publish.
+     *
+     * @return always true
+     */
+    @Override
+    public boolean isNonBlocking() {
+        return true;
+    }
+
+    /**
+     * Adds the message to the buffer, applying the overflow strategy if the
+     * buffer is full. Subclasses should override {@link #onNext} instead.
+     *
+     * @param message
+     *            the message received
+     */
+    @Override
+    public void onMessage(AZEROIotMessage message) {
+        // buffered messages are retained until delivered or dropped
+        message.retain();
+        switch (overflowStrategy) {
+        case DROP_NEWEST:
+            if (!buffer.offer(message)) {
+                drop(message);
+            }
+            break;
+        case DROP_OLDEST:
+            while (!buffer.offer(message)) {
+                AZEROIotMessage oldest = buffer.poll();
+                if (oldest != null) {
+                    drop(oldest);
+                }
+            }
+            break;
+        default:
+            try {
+                buffer.put(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                drop(message);
+            }
+            break;
+        }
+        schedule();
+    }
+
+    private void drop(AZEROIotMessage message) {
+        droppedCount.incrementAndGet();
+        message.release();
+    }
+
+    private void schedule() {
+        if (requested.get() == 0 || buffer.isEmpty()) {
+            return;
+        }
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            client.scheduleTask(deliveryTask);
+        } catch (AzeroIotRuntimeException e) {
+            // not connected, messages stay buffered until the next request
+            scheduled.set(false);
+        }
+    }
+
+    private void deliver() {
+        for (int i = 0; i < MAX_MESSAGES_PER_RUN && requested.get() > 0; i++) {
+            AZEROIotMessage message = buffer.poll();
+            if (message == null) {
+                break;
+            }
+            if (requested.get() != Long.MAX_VALUE) {
+                requested.decrementAndGet();
+            }
+            try {
+                onNext(message);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Unexpected error from message handler", e);
+            } finally {
+                message.release();
+            }
+        }
+        scheduled.set(false);
+        // pick up demand or messages added while the task was being released
+        schedule();
+    }
+
+    /**
+     * Gets the number of messages waiting in the buffer.
+     *
+     * @return the number of buffered messages
+     */
+    public int getBufferedCount() {
+        return buffer.size();
+    }
+
+    /**
+     * Gets the number of messages demanded but not yet delivered.
+     *
+     * @return the outstanding demand
+     */
+    public long getRequested() {
+        return requested.get();
+    }
+
+    /**
+     * Gets the number of messages dropped due to buffer overflow.
+     *
+     * @return the number of dropped messages
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public AZEROIotOverflowStrategy getOverflowStrategy() {
+        return this.overflowStrategy;
+    }
+
+}
@@ -20,6 +20,12 @@ import com.azero.services.iot.client.core.AzeroIotTopicCallback;
  */
 public class AZEROIotTopic extends AZEROIotMessage implements AzeroIotTopicCallback {
 
+    /**
+     * The time to live of each message delivered to the subscription in
+     * milliseconds, 0 meaning messages never expire.
+     */
+    private long messageTimeToLive;
+
     /**
      * Instantiates a new topic object.
      *
@@ -42,6 +48,63 @@ public class AZEROIotTopic extends AZEROIotMessage implements AzeroIotTopicCallb
         super(topic, qos);
     }
 
+    /**
+     * Gets the key used to order message delivery when ordered dispatch is
+     * enabled on the client. Messages for subscriptions sharing the same key
+     * are delivered one at a time in the order they arrived, while messages
+     * with different keys may be delivered in parallel. By default, the key is
+     * the topic of the subscription. Subclasses could override this function
+     * to group related subscriptions, e.g. by thing name.
+     *
+     * @return the dispatch key
+     * @see AZEROIotMqttClient#setOrderedDispatch(boolean)
+     */
+    public String getDispatchKey() {
+        return topic;
+    }
+
+    /**
+     * Gets whether {@link #onMessage} is non-blocking. Non-blocking handlers
+     * are invoked directly on the thread receiving messages from the network,
+     * skipping the hand-off to the client thread pool, which reduces the
+     * delivery latency. By default, it returns false. Subclasses could
+     * override this function to opt in, but only if {@link #onMessage} returns
+     * quickly and never blocks, because no other message can be received
+     * while it's running.
+     *
+     * @return true if {@link #onMessage} can be invoked on the receiving
+     *         thread; false otherwise
+     */
+    public boolean isNonBlocking() {
+        return false;
+    }
+
+    /**
+     * Gets the time to live of each message delivered to the subscription,
+     * counted from when the message arrived.
+     *
+     * @return the time to live in milliseconds, or 0 if messages never expire
+     */
+    public long getMessageTimeToLive() {
+        return messageTimeToLive;
+    }
+
+    /**
+     * Sets the time to live of each message delivered to the subscription,
+     * counted from when the message arrived. Messages that waited longer than
+     * that for a client thread are dropped without invoking
+     * {@link #onMessage}, and are counted per topic, see
+     * {@link AZEROIotMqttClient#getExpiredMessageCounts()}. It has no effect on
+     * handlers invoked on the receiving thread, see {@link #isNonBlocking()}.
+     *
+     * @param messageTimeToLive
+     *            the time to live in milliseconds, or 0 for messages to never
+     *            expire
+     */
+    public void setMessageTimeToLive(long messageTimeToLive) {
+        this.messageTimeToLive = messageTimeToLive;
+    }
+
     /**
      * Callback function to be invoked upon the arrival of a subscribed message.
      *
@@ -1,12 +1,29 @@
 package com.azero.services.iot.client.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.net.ssl.SSLSocketFactory;
 
@@ -14,7 +31,9 @@ import com.azero.services.iot.client.AZEROIotConfig;
 import com.azero.services.iot.client.AZEROIotConnectionStatus;
 import com.azero.services.iot.client.AZEROIotDevice;
 import com.azero.services.iot.client.AZEROIotException;
+import com.azero.services.iot.client.AZEROIotFuture;
 import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotPayloadCodec;
 import com.azero.services.iot.client.AZEROIotQos;
 import com.azero.services.iot.client.AZEROIotTimeoutException;
 import com.azero.services.iot.client.AZEROIotTopic;
@@ -39,12 +58,49 @@ public abstract class AbstractAzeroIotClient implements AzeroIotConnectionCallba
     protected int baseRetryDelay = AZEROIotConfig.CONNECTION_BASE_RETRY_DELAY;
     protected int maxRetryDelay = AZEROIotConfig.CONNECTION_MAX_RETRY_DELAY;
     protected int maxOfflineQueueSize = AZEROIotConfig.MAX_OFFLINE_QUEUE_SIZE;
+    protected long maxOfflineQueueBytes = AZEROIotConfig.MAX_OFFLINE_QUEUE_BYTES;
+    protected String persistentQueueDirectory;
+    protected long persistentQueueCapacity = AZEROIotConfig.PERSISTENT_QUEUE_CAPACITY;
+    protected int persistentQueueSegmentSize = AZEROIotConfig.PERSISTENT_QUEUE_SEGMENT_SIZE;
+    protected boolean persistentQueueSync = AZEROIotConfig.PERSISTENT_QUEUE_SYNC;
+    protected int offlineReplayRate = AZEROIotConfig.OFFLINE_REPLAY_RATE;
+    protected int offlineReplayMaxInflight = AZEROIotConfig.OFFLINE_REPLAY_MAX_INFLIGHT;
+    protected String mqttPersistenceDirectory;
+    protected int mqttPersistenceFileSize = AZEROIotConfig.MQTT_PERSISTENCE_FILE_SIZE;
+    protected int maxCallbackQueueSize = AZEROIotConfig.MAX_CALLBACK_QUEUE_SIZE;
     protected boolean cleanSession = AZEROIotConfig.CLEAN_SESSION;
+    protected boolean orderedDispatch = AZEROIotConfig.ORDERED_DISPATCH;
+    protected int topicMatchCacheSize = AZEROIotConfig.TOPIC_MATCH_CACHE_SIZE;
+    protected int messagePoolSize = AZEROIotConfig.MESSAGE_POOL_SIZE;
+    protected int maxInflight = AZEROIotConfig.MAX_INFLIGHT;
+    protected boolean adaptiveInflight = AZEROIotConfig.ADAPTIVE_INFLIGHT;
+    protected int maxAdaptiveInflight = AZEROIotConfig.MAX_ADAPTIVE_INFLIGHT;
+    protected int chunkSize = AZEROIotConfig.CHUNK_SIZE;
+    protected int chunkWindowSize = AZEROIotConfig.CHUNK_WINDOW_SIZE;
+    protected int batchMaxMessages = AZEROIotConfig.BATCH_MAX_MESSAGES;
+    protected int batchMaxBytes = AZEROIotConfig.BATCH_MAX_BYTES;
+    protected int batchLingerTime = AZEROIotConfig.BATCH_LINGER_TIME;
+    protected boolean receiveBatches = AZEROIotConfig.RECEIVE_BATCHES;
+    protected int maxDecodedPayloadSize = AZEROIotConfig.MAX_DECODED_PAYLOAD_SIZE;
     protected AZEROIotMessage willMessage;
     private final ConcurrentMap<String, AZEROIotTopic> subscriptions = new ConcurrentHashMap<>();
+    private final AzeroIotTopicTrie subscriptionIndex = new AzeroIotTopicTrie();
+    private final AzeroIotDispatchLanes dispatchLanes = new AzeroIotDispatchLanes(this);
+    private final AzeroIotBatchPublisher batchPublisher = new AzeroIotBatchPublisher(this);
+    private final Set<String> conflatedTopics = new CopyOnWriteArraySet<>();
+    private final ConcurrentMap<String, AtomicLong> expiredMessageCounts = new ConcurrentHashMap<>();
+    private final AtomicLong rejectedCallbackCount = new AtomicLong();
+    /** The number of user callbacks waiting for a client thread. */
+    private final AtomicInteger queuedCallbacks = new AtomicInteger();
+    private volatile AzeroIotTopicMatchCache topicMatchCache;
+    private AzeroIotMessagePool messagePool;
+    private final AzeroIotPayloadCodecs payloadCodecs = new AzeroIotPayloadCodecs(this);
     private final ConcurrentMap<String, AbstractAzeroIotDevice> devices = new ConcurrentHashMap<>();
     private final AzeroIotConnection connection;
     private ScheduledExecutorService executionService;
+    private AzeroIotHashedWheelTimer timeoutTimer;
+    private volatile ExecutorService callbackExecutor;
+    private boolean ownCallbackExecutor;
 
     protected AbstractAzeroIotClient(String clientEndpoint, String clientId, KeyStore keyStore, String keyPassword, boolean enableSdkMetrics) {
         this.clientEndpoint = clientEndpoint;
@@ -153,14 +209,50 @@ public abstract class AbstractAzeroIotClient implements AzeroIotConnectionCallba
     }
 
     public void connect(long timeout, boolean blocking) throws AZEROIotException, AZEROIotTimeoutException {
+        AzeroIotCompletion completion = new AzeroIotCompletion(timeout, !blocking);
+        _connect(completion);
+        completion.get(this);
+    }
+
+    public AZEROIotFuture<Void> connectAsync(long timeout) throws AZEROIotException {
+        AzeroIotFutureMessage<Void> future = new AzeroIotFutureMessage<>(null, null);
+        AzeroIotCompletion completion = new AzeroIotCompletion(future, timeout, true);
+        _connect(completion);
+        try {
+            completion.get(this);
+        } catch (AZEROIotTimeoutException e) {
+            // We shouldn't get timeout exception because it's asynchronous call
+            throw new AzeroIotRuntimeException(e);
+        }
+        return future;
+    }
+
+    private void _connect(AzeroIotCompletion completion) throws AZEROIotException {
         synchronized (this) {
-            if (executionService == null) {
-                executionService = Executors.newScheduledThreadPool(numOfClientThreads);
+            if (executionService == null || executionService.isShutdown()) {
+                // a single thread is enough as timer tasks only hand off the
+                // actual work to the callback executor
+                executionService = Executors.newSingleThreadScheduledExecutor();
+                timeoutTimer = null;
+            }
+            if (timeoutTimer == null || timeoutTimer.isStopped()) {
+                // request timeouts are far more frequent than routine tasks
+                // and mostly cancelled, so they are kept on a timer wheel,
+                // which ticks on the same thread as the routine tasks
+                timeoutTimer = new AzeroIotHashedWheelTimer(executionService, new CallbackHandoffExecutor());
+            }
+            if (callbackExecutor == null || (ownCallbackExecutor && callbackExecutor.isShutdown())) {
+                callbackExecutor = newCallbackExecutor();
+                ownCallbackExecutor = true;
+            }
+            if (topicMatchCache == null && topicMatchCacheSize > 0) {
+                topicMatchCache = new AzeroIotTopicMatchCache(topicMatchCacheSize);
+            }
+            if (messagePool == null && messagePoolSize > 0) {
+                messagePool = new AzeroIotMessagePool(messagePoolSize);
             }
         }
-        AzeroIotCompletion completion = new AzeroIotCompletion(timeout, !blocking);
         connection.connect(completion);
-        completion.get(this);
     }
 
     public void disconnect() throws AZEROIotException {
@@ -243,6 +335,53 @@ public abstract class AbstractAzeroIotClient implements AzeroIotConnectionCallba
         }
     }
 
+    public void publishFireAndForget(String topic, String payload) throws AZEROIotException {
+        connection.publishFireAndForget(topic, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void publishFireAndForget(String topic, byte[] payload) throws AZEROIotException {
+        connection.publishFireAndForget(topic, payload);
+    }
+
+    public AZEROIotFuture<Void> publishAsync(String topic, AZEROIotQos qos, String payload, long timeout) throws AZEROIotException {
+        AzeroIotFutureMessage<Void> future = new AzeroIotFutureMessage<>(topic, qos, payload);
+        publish(future, timeout);
+        return future;
+    }
+
+    public AZEROIotFuture<Void> publishAsync(String topic, AZEROIotQos qos, byte[] payload, long timeout) throws AZEROIotException {
+        AzeroIotFutureMessage<Void> future = new AzeroIotFutureMessage<>(topic, qos, payload);
+        publish(future, timeout);
+        return future;
+    }
+
+    public AZEROIotFuture<Void> publishAsync(AZEROIotMessage message, long timeout) throws AZEROIotException {
+        AzeroIotFutureMessage<Void> future = new AzeroIotFutureMessage<>(message);
+        publish(future, timeout);
+        return future;
+    }
+
+    public void publishChunked(String topic, AZEROIotQos qos, InputStream stream, long timeout) throws AZEROIotException, AZEROIotTimeoutException {
+        AzeroIotChunkedTransfer transfer = new AzeroIotChunkedTransfer(this, topic, qos, chunkSize, chunkWindowSize);
+        transfer.send(stream, timeout);
+    }
+
+    public void publishChunked(String topic, AZEROIotQos qos, byte[] payload, long timeout) throws AZEROIotException, AZEROIotTimeoutException {
+        publishChunked(topic, qos, new ByteArrayInputStream(payload), timeout);
+    }
+
+    public void publishBatched(String topic, AZEROIotQos qos, byte[] payload) {
+        publishBatched(new AZEROIotMessage(topic, qos, payload));
+    }
+
+    public void publishBatched(AZEROIotMessage message) {
+        batchPublisher.add(message);
+    }
+
+    public void flushBatches() {
+        batchPublisher.flush();
+    }
+
     public void subscribe(AZEROIotTopic topic, boolean blocking) throws AZEROIotException {
         try {
             _subscribe(topic, 0, !blocking);
@@ -269,11 +408,26 @@ public abstract class AbstractAzeroIotClient implements AzeroIotConnectionCallba
         }
     }
 
+    public AZEROIotFuture<Void> subscribeAsync(AZEROIotTopic topic, long timeout) throws AZEROIotException {
+        AzeroIotFutureMessage<Void> future = new AzeroIotFutureMessage<>(topic);
+        try {
+            _subscribe(topic, future, timeout, true);
+        } catch (AZEROIotTimeoutException e) {
+            // We shouldn't get timeout exception because it's asynchronous call
+            throw new AzeroIotRuntimeException(e);
+        }
+        return future;
+    }
+
     private void _subscribe(AZEROIotTopic topic, long timeout, boolean async) throws AZEROIotException, AZEROIotTimeoutException {
-        AzeroIotCompletion completion = new AzeroIotCompletion(topic, timeout, async);
+        _subscribe(topic, topic, timeout, async);
+    }
+
+    private void _subscribe(AZEROIotTopic topic, AZEROIotMessage request, long timeout, boolean async) throws AZEROIotException, AZEROIotTimeoutException {
+        AzeroIotCompletion completion = new AzeroIotCompletion(request, timeout, async);
         connection.subscribe(completion);
         completion.get(this);
-        subscriptions.put(topic.getTopic(), topic);
+        addSubscription(topic);
     }
 
     public void unsubscribe(String topic) throws AZEROIotException {
@@ -286,7 +440,7 @@ public abstract class AbstractAzeroIotClient implements AzeroIotConnectionCallba
     }
 
     public void unsubscribe(String topic, long timeout) throws AZEROIotException, AZEROIotTimeoutException {
-        if (subscriptions.remove(topic) == null) {
+        if (!removeSubscription(topic)) {
             return;
         }
         AzeroIotCompletion completion = new AzeroIotCompletion(topic, AZEROIotQos.QOS0, timeout);
@@ -299,7 +453,7 @@ public abstract class AbstractAzeroIotClient implements AzeroIotConnectionCallba
     }
 
     public void unsubscribe(AZEROIotTopic topic, long timeout) throws AZEROIotException {
-        if (subscriptions.remove(topic.getTopic()) == null) {
+        if (!removeSubscription(topic.getTopic())) {
             return;
         }
         AzeroIotCompletion completion = new AzeroIotCompletion(topic, timeout, true);
@@ -312,44 +466,265 @@ public abstract class AbstractAzeroIotClient implements AzeroIotConnectionCallba
         }
     }
 
+    public AZEROIotFuture<Void> unsubscribeAsync(String topic, long timeout) throws AZEROIotException {
+        return unsubscribeAsync(new AzeroIotFutureMessage<Void>(topic, AZEROIotQos.QOS0), timeout);
+    }
+
+    public AZEROIotFuture<Void> unsubscribeAsync(AZEROIotTopic topic, long timeout) throws AZEROIotException {
+        return unsubscribeAsync(new AzeroIotFutureMessage<Void>(topic), timeout);
+    }
+
+    private AZEROIotFuture<Void> unsubscribeAsync(AzeroIotFutureMessage<Void> future, long timeout) throws AZEROIotException {
+        if (!removeSubscription(future.getTopic())) {
+            // nothing to unsubscribe from, same as the synchronous calls
+            future.complete(null);
+            return future;
+        }
+        AzeroIotCompletion completion = new AzeroIotCompletion(future, timeout, true);
+        connection.unsubscribe(completion);
+        try {
+            completion.get(this);
+        } catch (AZEROIotTimeoutException e) {
+            // We shouldn't get timeout exception because it's asynchronous call
+            throw new AzeroIotRuntimeException(e);
+        }
+        return future;
+    }
+
     public boolean topicFilterMatch(String topicFilter, String topic) {
         if (topicFilter == null || topic == null) {
             return false;
         }
-        String[] filterTokens = topicFilter.split("/");
-        String[] topicTokens = topic.split("/");
-        if (filterTokens.length > topicTokens.length) {
+        // wildcards at the first level don't match topics starting with '$'
+        if (topic.startsWith("$") && (topicFilter.startsWith("+") || topicFilter.startsWith("#"))) {
             return false;
         }
-        for (int i = 0; i < filterTokens.length; i++) {
-            if (filterTokens[i].equals("#")) {
-                // '#' must be the last character
-                return ((i + 1) == filterTokens.length);
+        // compare one level at a time in place, without splitting the strings
+        int filterLength = topicFilter.length();
+        int topicLength = topic.length();
+        int filterStart = 0;
+        int topicStart = 0;
+        while (true) {
+            int filterEnd = topicFilter.indexOf('/', filterStart);
+            if (filterEnd < 0) {
+                filterEnd = filterLength;
             }
-            if (!(filterTokens[i].equals(topicTokens[i]) || filterTokens[i].equals("+"))) {
+            int levelLength = filterEnd - filterStart;
+            if (levelLength == 1 && topicFilter.charAt(filterStart) == '#') {
+                // '#' must be the last character, and it also matches the parent level
+                return (filterEnd == filterLength);
+            }
+            if (topicStart > topicLength) {
                 return false;
             }
+            int topicEnd = topic.indexOf('/', topicStart);
+            if (topicEnd < 0) {
+                topicEnd = topicLength;
+            }
+            if (!(levelLength == 1 && topicFilter.charAt(filterStart) == '+')) {
+                if (levelLength != topicEnd - topicStart
+                        || !topicFilter.regionMatches(filterStart, topic, topicStart, levelLength)) {
+                    return false;
+                }
+            }
+            filterStart = filterEnd + 1;
+            topicStart = topicEnd + 1;
+            if (filterStart > filterLength) {
+                return (topicStart > topicLength);
+            }
         }
-        return (filterTokens.length == topicTokens.length);
     }
 
     public void dispatch(final AZEROIotMessage message) {
-        boolean matches = false;
-        for (String topicFilter : subscriptions.keySet()) {
-            if (topicFilterMatch(topicFilter, message.getTopic())) {
-                final AZEROIotTopic topic = subscriptions.get(topicFilter);
-                scheduleTask(new Runnable() {
-                    @Override
-                    public void run() {
+        List<AZEROIotTopic> matches = matchSubscriptions(message.getTopic());
+        if (matches.isEmpty()) {
+            LOGGER.warning("Unexpected message received from topic " + message.getTopic());
+            return;
+        }
+        final long arrivalTime = System.nanoTime();
+        for (final AZEROIotTopic topic : matches) {
+            if (topic.isNonBlocking()) {
+                // invoke directly on the receiving thread
+                try {
+                    topic.onMessage(message);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Unexpected error from message handler", e);
+                }
+                continue;
+            }
+            // the task holds its own reference in case the message is pooled
+            message.retain();
+            AzeroIotCallbackTask task = new AzeroIotCallbackTask() {
+                @Override
+                public void run() {
+                    try {
+                        if (isExpired(topic, arrivalTime)) {
+                            // dropped before the handler has to parse it
+                            onMessageExpired(message.getTopic());
+                            return;
+                        }
                         topic.onMessage(message);
+                    } finally {
+                        message.release();
                     }
-                });
-                matches = true;
+                }
+
+                @Override
+                public void onDropped() {
+                    message.release();
+                }
+            };
+            try {
+                if (orderedDispatch) {
+                    dispatchLanes.submit(topic.getDispatchKey(), task);
+                } else if (!scheduleCallback(task)) {
+                    onCallbackDropped(task);
+                }
+            } catch (RuntimeException e) {
+                message.release();
+                throw e;
             }
         }
-        if (!matches) {
-            LOGGER.warning("Unexpected message received from topic " + message.getTopic());
+    }
+
+    private static boolean isExpired(AZEROIotTopic topic, long arrivalTime) {
+        long timeToLive = topic.getMessageTimeToLive();
+        return timeToLive > 0 && System.nanoTime() - arrivalTime > TimeUnit.MILLISECONDS.toNanos(timeToLive);
+    }
+
+    public void onMessageExpired(String topic) {
+        AtomicLong count = expiredMessageCounts.get(topic);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = expiredMessageCounts.putIfAbsent(topic, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    public Map<String, Long> getExpiredMessageCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : expiredMessageCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
         }
+        return counts;
+    }
+
+    public void addPayloadCodec(String topicFilter, AZEROIotPayloadCodec codec) {
+        payloadCodecs.add(topicFilter, codec);
+    }
+
+    public void removePayloadCodec(String topicFilter) {
+        payloadCodecs.remove(topicFilter);
+    }
+
+    public void addConflatedTopic(String topicFilter) {
+        conflatedTopics.add(topicFilter);
+    }
+
+    public void removeConflatedTopic(String topicFilter) {
+        conflatedTopics.remove(topicFilter);
+    }
+
+    public boolean isConflatedTopic(String topic) {
+        if (conflatedTopics.isEmpty()) {
+            return false;
+        }
+        for (String topicFilter : conflatedTopics) {
+            if (topicFilter.equals(topic) || topicFilterMatch(topicFilter, topic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getInflightWindow() {
+        return connection.getInflightWindow();
+    }
+
+    public long getSupersededMessageCount() {
+        return connection.getOfflinePublishQueue().getSupersededCount();
+    }
+
+    public boolean isReplaying() {
+        return connection.getReplayPipeline().isReplaying();
+    }
+
+    public long getReplayBacklog() {
+        return connection.getReplayPipeline().getBacklog();
+    }
+
+    public long getReplayedRequestCount() {
+        return connection.getReplayPipeline().getReplayedCount();
+    }
+
+    public AZEROIotMessage obtainMessage(String topic, AZEROIotQos qos, byte[] payload) {
+        AzeroIotMessagePool pool = messagePool;
+        if (pool == null) {
+            return new AZEROIotMessage(topic, qos, payload, false);
+        }
+        return pool.obtain(topic, qos, payload);
+    }
+
+    private List<AZEROIotTopic> matchSubscriptions(String topic) {
+        AzeroIotTopicMatchCache cache = topicMatchCache;
+        if (cache == null || topic == null) {
+            return subscriptionIndex.match(topic);
+        }
+        List<AZEROIotTopic> matches = cache.get(topic);
+        if (matches == null) {
+            long generation = cache.getGeneration();
+            matches = cache.put(topic, subscriptionIndex.match(topic), generation);
+        }
+        return matches;
+    }
+
+    private void addSubscription(AZEROIotTopic topic) {
+        // the map, the index and the cache are updated together so they never
+        // disagree
+        synchronized (subscriptionIndex) {
+            subscriptions.put(topic.getTopic(), topic);
+            subscriptionIndex.put(topic.getTopic(), topic);
+            invalidateTopicMatchCache();
+        }
+    }
+
+    private boolean removeSubscription(String topicFilter) {
+        synchronized (subscriptionIndex) {
+            if (subscriptions.remove(topicFilter) == null) {
+                return false;
+            }
+            subscriptionIndex.remove(topicFilter);
+            invalidateTopicMatchCache();
+            return true;
+        }
+    }
+
+    private void clearSubscriptions() {
+        synchronized (subscriptionIndex) {
+            subscriptions.clear();
+            subscriptionIndex.clear();
+            invalidateTopicMatchCache();
+        }
+    }
+
+    private void invalidateTopicMatchCache() {
+        AzeroIotTopicMatchCache cache = topicMatchCache;
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    public long getTopicMatchCacheHits() {
+        AzeroIotTopicMatchCache cache = topicMatchCache;
+        return (cache != null) ? cache.getHits() : 0;
+    }
+
+    public long getTopicMatchCacheMisses() {
+        AzeroIotTopicMatchCache cache = topicMatchCache;
+        return (cache != null) ? cache.getMisses() : 0;
     }
 
     public void attach(AZEROIotDevice device) throws AZEROIotException {
@@ -427,27 +802,207 @@ public abstract class AbstractAzeroIotClient implements AzeroIotConnectionCallba
                 LOGGER.warning("Failed to deactive all the devices, ignoring the error");
             }
         }
-        subscriptions.clear();
+        // complete the batched messages, which would otherwise linger forever
+        batchPublisher.flush();
+        clearSubscriptions();
+        dispatchLanes.clear();
         devices.clear();
+        // stopped first, so that pending timeouts still expire on the
+        // execution service once it's shut down
+        timeoutTimer.stop();
         executionService.shutdown();
+        if (ownCallbackExecutor) {
+            callbackExecutor.shutdown();
+        }
     }
 
+    /**
+     * Schedules an internal task, such as the completion of a request, on the
+     * client thread pool. Unlike user callbacks, such tasks are never dropped
+     * when the callback queue is full, as requests would otherwise never
+     * complete.
+     *
+     * @param runnable
+     *            the task to be executed
+     * @return the future of the task
+     * @throws AzeroIotRuntimeException
+     *             if the client is not connected or the task is rejected by
+     *             the callback executor, e.g. because it has been shut down
+     */
     public Future<?> scheduleTask(Runnable runnable) {
-        return scheduleTimeoutTask(runnable, 0);
+        ExecutorService executor = callbackExecutor;
+        if (executor == null) {
+            throw new AzeroIotRuntimeException("Client is not connected");
+        }
+        try {
+            return executor.submit(runnable);
+        } catch (RejectedExecutionException e) {
+            onCallbackDropped(runnable);
+            throw new AzeroIotRuntimeException(e);
+        }
+    }
+
+    /**
+     * Schedules a user callback, such as the delivery of a message to a
+     * subscription, on the client thread pool, unless
+     * {@link #getMaxCallbackQueueSize()} callbacks are already waiting for a
+     * client thread.
+     *
+     * @param callback
+     *            the callback to be executed
+     * @return true, if the callback was scheduled, or false if it was
+     *         rejected, in which case the caller is expected to drop it
+     *         through {@link #onCallbackDropped(Runnable)}
+     * @throws AzeroIotRuntimeException
+     *             if the client is not connected
+     */
+    public boolean scheduleCallback(Runnable callback) {
+        ExecutorService executor = callbackExecutor;
+        if (executor == null) {
+            throw new AzeroIotRuntimeException("Client is not connected");
+        }
+        int limit = maxCallbackQueueSize;
+        if (limit <= 0) {
+            try {
+                executor.execute(callback);
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+        }
+        while (true) {
+            int count = queuedCallbacks.get();
+            if (count >= limit) {
+                return false;
+            }
+            if (queuedCallbacks.compareAndSet(count, count + 1)) {
+                break;
+            }
+        }
+        try {
+            executor.execute(new QueuedCallback(callback));
+            return true;
+        } catch (RejectedExecutionException e) {
+            queuedCallbacks.decrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Drops a callback that couldn't be scheduled. The drop is counted, and
+     * logged at increasing intervals to avoid flooding the log when the client
+     * is overloaded.
+     *
+     * @param callback
+     *            the dropped callback
+     */
+    public void onCallbackDropped(Runnable callback) {
+        long count = rejectedCallbackCount.incrementAndGet();
+        if ((count & (count - 1)) == 0) {
+            LOGGER.warning("Dropped callback because the callback queue is full or the client has been shut down, "
+                    + count + " callbacks dropped in total");
+        }
+        if (callback instanceof AzeroIotCallbackTask) {
+            ((AzeroIotCallbackTask) callback).onDropped();
+        }
     }
 
     public Future<?> scheduleTimeoutTask(Runnable runnable, long timeout) {
-        if (executionService == null) {
+        if (timeout <= 0) {
+            return scheduleTask(runnable);
+        }
+        if (timeoutTimer == null || callbackExecutor == null) {
             throw new AzeroIotRuntimeException("Client is not connected");
         }
-        return executionService.schedule(runnable, timeout, TimeUnit.MILLISECONDS);
+        return timeoutTimer.newTimeout(runnable, timeout);
     }
 
     public Future<?> scheduleRoutineTask(Runnable runnable, long initialDelay, long period) {
-        if (executionService == null) {
+        if (executionService == null || callbackExecutor == null) {
             throw new AzeroIotRuntimeException("Client is not connected");
         }
-        return executionService.scheduleAtFixedRate(runnable, initialDelay, period, TimeUnit.MILLISECONDS);
+        return executionService.scheduleAtFixedRate(new CallbackHandoff(runnable), initialDelay, period,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public int getCallbackQueueDepth() {
+        return getQueueDepth(callbackExecutor);
+    }
+
+    public int getTimerQueueDepth() {
+        int depth = getQueueDepth(executionService);
+        if (timeoutTimer != null) {
+            depth += timeoutTimer.getPendingTimeouts();
+        }
+        return depth;
+    }
+
+    private ExecutorService newCallbackExecutor() {
+        // internal tasks, such as completions and timeouts, must never be
+        // dropped, so only user callbacks are bounded, see scheduleCallback()
+        return new ThreadPoolExecutor(numOfClientThreads, numOfClientThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
+    }
+
+    public long getRejectedCallbackCount() {
+        return rejectedCallbackCount.get();
+    }
+
+    private static int getQueueDepth(ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        if (executor instanceof ForkJoinPool) {
+            ForkJoinPool pool = (ForkJoinPool) executor;
+            return (int) Math.min(Integer.MAX_VALUE, pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+        }
+        return 0;
+    }
+
+    /**
+     * Timer task which hands off the actual work to the callback executor, so
+     * that slow callbacks never delay other timers.
+     */
+    private class CallbackHandoff implements Runnable {
+        private final Runnable task;
+
+        private CallbackHandoff(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            callbackExecutor.execute(task);
+        }
+    }
+
+    /**
+     * User callback holding a slot in the callback queue until it starts
+     * running.
+     */
+    private class QueuedCallback implements Runnable {
+        private final Runnable callback;
+
+        private QueuedCallback(Runnable callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            queuedCallbacks.decrementAndGet();
+            callback.run();
+        }
+    }
+
+    /**
+     * Executor used by the timeout timer, which hands off expired timeouts to
+     * the current callback executor.
+     */
+    private class CallbackHandoffExecutor implements Executor {
+        @Override
+        public void execute(Runnable task) {
+            callbackExecutor.execute(task);
+        }
     }
 
     @java.lang.SuppressWarnings("all")
@@ -515,11 +1070,131 @@ public abstract class AbstractAzeroIotClient implements AzeroIotConnectionCallba
         return this.maxOfflineQueueSize;
     }
 
+    @java.lang.SuppressWarnings("all")
+    public long getMaxOfflineQueueBytes() {
+        return this.maxOfflineQueueBytes;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public String getPersistentQueueDirectory() {
+        return this.persistentQueueDirectory;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public long getPersistentQueueCapacity() {
+        return this.persistentQueueCapacity;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getPersistentQueueSegmentSize() {
+        return this.persistentQueueSegmentSize;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public boolean isPersistentQueueSync() {
+        return this.persistentQueueSync;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getOfflineReplayRate() {
+        return this.offlineReplayRate;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getOfflineReplayMaxInflight() {
+        return this.offlineReplayMaxInflight;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public String getMqttPersistenceDirectory() {
+        return this.mqttPersistenceDirectory;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getMqttPersistenceFileSize() {
+        return this.mqttPersistenceFileSize;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getMaxCallbackQueueSize() {
+        return this.maxCallbackQueueSize;
+    }
+
     @java.lang.SuppressWarnings("all")
     public boolean isCleanSession() {
         return this.cleanSession;
     }
 
+    @java.lang.SuppressWarnings("all")
+    public boolean isOrderedDispatch() {
+        return this.orderedDispatch;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getTopicMatchCacheSize() {
+        return this.topicMatchCacheSize;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public AzeroIotPayloadCodecs getPayloadCodecs() {
+        return this.payloadCodecs;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getMessagePoolSize() {
+        return this.messagePoolSize;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getMaxInflight() {
+        return this.maxInflight;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public boolean isAdaptiveInflight() {
+        return this.adaptiveInflight;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getMaxAdaptiveInflight() {
+        return this.maxAdaptiveInflight;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getChunkWindowSize() {
+        return this.chunkWindowSize;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getBatchMaxMessages() {
+        return this.batchMaxMessages;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getBatchMaxBytes() {
+        return this.batchMaxBytes;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getBatchLingerTime() {
+        return this.batchLingerTime;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public boolean isReceiveBatches() {
+        return this.receiveBatches;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getMaxDecodedPayloadSize() {
+        return this.maxDecodedPayloadSize;
+    }
+
     @java.lang.SuppressWarnings("all")
     public AZEROIotMessage getWillMessage() {
         return this.willMessage;
@@ -590,11 +1265,130 @@ public abstract class AbstractAzeroIotClient implements AzeroIotConnectionCallba
         this.maxOfflineQueueSize = maxOfflineQueueSize;
     }
 
+    @java.lang.SuppressWarnings("all")
+    public void setMaxOfflineQueueBytes(final long maxOfflineQueueBytes) {
+        this.maxOfflineQueueBytes = maxOfflineQueueBytes;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setPersistentQueueDirectory(final String persistentQueueDirectory) {
+        this.persistentQueueDirectory = persistentQueueDirectory;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setPersistentQueueCapacity(final long persistentQueueCapacity) {
+        this.persistentQueueCapacity = persistentQueueCapacity;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setPersistentQueueSegmentSize(final int persistentQueueSegmentSize) {
+        this.persistentQueueSegmentSize = persistentQueueSegmentSize;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setPersistentQueueSync(final boolean persistentQueueSync) {
+        this.persistentQueueSync = persistentQueueSync;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setOfflineReplayRate(final int offlineReplayRate) {
+        this.offlineReplayRate = offlineReplayRate;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setOfflineReplayMaxInflight(final int offlineReplayMaxInflight) {
+        this.offlineReplayMaxInflight = offlineReplayMaxInflight;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setMqttPersistenceDirectory(final String mqttPersistenceDirectory) {
+        this.mqttPersistenceDirectory = mqttPersistenceDirectory;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setMqttPersistenceFileSize(final int mqttPersistenceFileSize) {
+        this.mqttPersistenceFileSize = mqttPersistenceFileSize;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setMaxCallbackQueueSize(final int maxCallbackQueueSize) {
+        this.maxCallbackQueueSize = maxCallbackQueueSize;
+    }
+
     @java.lang.SuppressWarnings("all")
     public void setCleanSession(final boolean cleanSession) {
         this.cleanSession = cleanSession;
     }
 
+    @java.lang.SuppressWarnings("all")
+    public void setOrderedDispatch(final boolean orderedDispatch) {
+        this.orderedDispatch = orderedDispatch;
+    }
+
+    public void setTopicMatchCacheSize(final int topicMatchCacheSize) {
+        this.topicMatchCacheSize = topicMatchCacheSize;
+        synchronized (subscriptionIndex) {
+            // applied right away, even when connected; lookups still holding
+            // the old cache only put into the old one, which is discarded
+            topicMatchCache = (topicMatchCacheSize > 0) ? new AzeroIotTopicMatchCache(topicMatchCacheSize) : null;
+        }
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setMessagePoolSize(final int messagePoolSize) {
+        this.messagePoolSize = messagePoolSize;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setMaxInflight(final int maxInflight) {
+        this.maxInflight = maxInflight;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setAdaptiveInflight(final boolean adaptiveInflight) {
+        this.adaptiveInflight = adaptiveInflight;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setMaxAdaptiveInflight(final int maxAdaptiveInflight) {
+        this.maxAdaptiveInflight = maxAdaptiveInflight;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setChunkSize(final int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setChunkWindowSize(final int chunkWindowSize) {
+        this.chunkWindowSize = chunkWindowSize;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setBatchMaxMessages(final int batchMaxMessages) {
+        this.batchMaxMessages = batchMaxMessages;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setBatchMaxBytes(final int batchMaxBytes) {
+        this.batchMaxBytes = batchMaxBytes;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setBatchLingerTime(final int batchLingerTime) {
+        this.batchLingerTime = batchLingerTime;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setReceiveBatches(final boolean receiveBatches) {
+        this.receiveBatches = receiveBatches;
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public void setMaxDecodedPayloadSize(final int maxDecodedPayloadSize) {
+        this.maxDecodedPayloadSize = maxDecodedPayloadSize;
+    }
+
     @java.lang.SuppressWarnings("all")
     public void setWillMessage(final AZEROIotMessage willMessage) {
         this.willMessage = willMessage;
@@ -604,4 +1398,14 @@ public abstract class AbstractAzeroIotClient implements AzeroIotConnectionCallba
     public void setExecutionService(final ScheduledExecutorService executionService) {
         this.executionService = executionService;
     }
+
+    @java.lang.SuppressWarnings("all")
+    public ExecutorService getCallbackExecutor() {
+        return this.callbackExecutor;
+    }
+
+    public void setCallbackExecutor(final ExecutorService callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        this.ownCallbackExecutor = false;
+    }
 }
@@ -0,0 +1,324 @@
+package com.azero.services.iot.client.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.azero.services.iot.client.AZEROIotException;
+import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotQos;
+
+/**
+ * This class packs small messages bound for the same topic and QoS level into
+ * a single framed payload, so that they share one MQTT PUBLISH and one
+ * completion on the connection.
+ * <p>
+ * A batch is published once it reaches the maximum number of messages or
+ * bytes configured on the client, or once it has lingered for the configured
+ * time after its first message, whichever comes first. The linger time is
+ * measured on the request timeout wheel, so it's accurate only to its tick
+ * duration. The callback functions of the batched messages are invoked when
+ * their batch completes.
+ * </p>
+ * <p>
+ * The framed payload starts with two magic bytes and the number of messages,
+ * followed by the length and bytes of each message. Frames are expanded back
+ * into individual messages on the receiving side by {@link #unbatch(byte[])},
+ * if the receiving client has enabled
+ * {@link AbstractAzeroIotClient#isReceiveBatches()}.
+ * A batch with a single message is published as is.
+ * </p>
+ */
+public class AzeroIotBatchPublisher {
+
+    private static final Logger LOGGER = Logger.getLogger(AzeroIotBatchPublisher.class.getName());
+
+    private static final int HEADER_LENGTH = 6;
+    private static final int LENGTH_FIELD_LENGTH = 4;
+    private static final byte MAGIC_0 = (byte) 0xBA;
+    private static final byte MAGIC_1 = (byte) 0x7C;
+
+    private final AbstractAzeroIotClient client;
+
+    /** The open batches keyed by topic and QoS level. */
+    private final Map<String, Batch> batches = new HashMap<>();
+
+    public AzeroIotBatchPublisher(AbstractAzeroIotClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Adds a message to the open batch for its topic and QoS level, and
+     * publishes the batch if it's full.
+     *
+     * @param message
+     *            the message to be published
+     */
+    public void add(AZEROIotMessage message) {
+        byte[] payload = message.getPayloadArray();
+        int length = (payload != null) ? payload.length : 0;
+        String key = message.getQos().getValue() + ":" + message.getTopic();
+
+        Batch full = null;
+        Batch opened = null;
+        Batch batch;
+        synchronized (this) {
+            batch = batches.get(key);
+            if (batch != null && batch.size + LENGTH_FIELD_LENGTH + length > client.getBatchMaxBytes()) {
+                // publish what's there, and start a new batch for the message
+                batches.remove(key);
+                full = batch;
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new Batch(key, message.getTopic(), message.getQos());
+                batches.put(key, batch);
+                opened = batch;
+            }
+            batch.add(message, length);
+            if (batch.messages.size() >= client.getBatchMaxMessages() || batch.size >= client.getBatchMaxBytes()) {
+                batches.remove(key);
+            } else {
+                batch = null;
+            }
+        }
+
+        if (full != null) {
+            publish(full);
+        }
+        if (batch != null) {
+            publish(batch);
+        } else if (opened != null) {
+            scheduleLinger(opened);
+        }
+    }
+
+    /**
+     * Publishes all the open batches.
+     */
+    public void flush() {
+        List<Batch> flushed;
+        synchronized (this) {
+            flushed = new ArrayList<>(batches.values());
+            batches.clear();
+        }
+        for (Batch batch : flushed) {
+            publish(batch);
+        }
+    }
+
+    /**
+     * Checks if the payload is a batch frame, i.e. it has the batch header and
+     * its lengths add up.
+     *
+     * @param payload
+     *            the message payload
+     * @return true, if the payload is a batch frame
+     */
+    public static boolean isBatch(byte[] payload) {
+        if (payload == null || payload.length < HEADER_LENGTH || payload[0] != MAGIC_0 || payload[1] != MAGIC_1) {
+            return false;
+        }
+        int count = readInt(payload, 2);
+        int offset = HEADER_LENGTH;
+        for (int i = 0; i < count; i++) {
+            if (offset + LENGTH_FIELD_LENGTH > payload.length) {
+                return false;
+            }
+            int length = readInt(payload, offset);
+            offset += LENGTH_FIELD_LENGTH;
+            if (length < 0 || length > payload.length - offset) {
+                return false;
+            }
+            offset += length;
+        }
+        return count > 0 && offset == payload.length;
+    }
+
+    /**
+     * Expands a batch frame into the payloads of its messages.
+     *
+     * @param payload
+     *            the batch frame, which must have been checked with
+     *            {@link #isBatch(byte[])}
+     * @return the payloads of the batched messages
+     */
+    public static List<byte[]> unbatch(byte[] payload) {
+        int count = readInt(payload, 2);
+        List<byte[]> payloads = new ArrayList<>(count);
+        int offset = HEADER_LENGTH;
+        for (int i = 0; i < count; i++) {
+            int length = readInt(payload, offset);
+            offset += LENGTH_FIELD_LENGTH;
+            byte[] bytes = new byte[length];
+            System.arraycopy(payload, offset, bytes, 0, length);
+            payloads.add(bytes);
+            offset += length;
+        }
+        return payloads;
+    }
+
+    private void scheduleLinger(final Batch batch) {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (AzeroIotBatchPublisher.this) {
+                    // the batch may have been published already
+                    if (batches.get(batch.key) != batch) {
+                        return;
+                    }
+                    batches.remove(batch.key);
+                }
+                publish(batch);
+            }
+        };
+        try {
+            Future<?> lingerTask = client.scheduleTimeoutTask(task, client.getBatchLingerTime());
+            synchronized (this) {
+                batch.lingerTask = lingerTask;
+            }
+        } catch (AzeroIotRuntimeException e) {
+            // not connected, so there's nothing to wait for
+            task.run();
+        }
+    }
+
+    private void publish(Batch batch) {
+        Future<?> lingerTask;
+        synchronized (this) {
+            lingerTask = batch.lingerTask;
+        }
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+        }
+        AZEROIotMessage message;
+        if (batch.messages.size() == 1) {
+            message = batch.messages.get(0);
+        } else {
+            message = new BatchMessage(batch);
+        }
+        try {
+            client.publish(message, 0);
+        } catch (AZEROIotException e) {
+            LOGGER.log(Level.WARNING, "Failed to publish batch to " + batch.topic, e);
+            message.onFailure();
+        }
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * The messages of an open batch.
+     */
+    private static class Batch {
+        private final String key;
+        private final String topic;
+        private final AZEROIotQos qos;
+        private final List<AZEROIotMessage> messages = new ArrayList<>();
+        private int size = HEADER_LENGTH;
+        private Future<?> lingerTask;
+
+        private Batch(String key, String topic, AZEROIotQos qos) {
+            this.key = key;
+            this.topic = topic;
+            this.qos = qos;
+        }
+
+        private void add(AZEROIotMessage message, int length) {
+            messages.add(message);
+            size += LENGTH_FIELD_LENGTH + length;
+        }
+
+        private byte[] toFrame() {
+            byte[] frame = new byte[size];
+            frame[0] = MAGIC_0;
+            frame[1] = MAGIC_1;
+            writeInt(frame, 2, messages.size());
+            int offset = HEADER_LENGTH;
+            for (AZEROIotMessage message : messages) {
+                byte[] payload = message.getPayloadArray();
+                int length = (payload != null) ? payload.length : 0;
+                writeInt(frame, offset, length);
+                offset += LENGTH_FIELD_LENGTH;
+                if (length > 0) {
+                    System.arraycopy(payload, 0, frame, offset, length);
+                    offset += length;
+                }
+            }
+            return frame;
+        }
+    }
+
+    /**
+     * The message carrying a batch frame, which passes its completion on to
+     * the batched messages.
+     */
+    private static class BatchMessage extends AZEROIotMessage {
+        private final List<AZEROIotMessage> messages;
+
+        private BatchMessage(Batch batch) {
+            super(batch.topic, batch.qos, batch.toFrame(), false);
+            this.messages = batch.messages;
+            // the batch expires once all its messages have expired
+            for (AZEROIotMessage message : messages) {
+                if (message.getExpiryTime() == 0) {
+                    timeToLive = 0;
+                    expiryTime = 0;
+                    break;
+                }
+                timeToLive = Math.max(timeToLive, message.getTimeToLive());
+                expiryTime = Math.max(expiryTime, message.getExpiryTime());
+            }
+        }
+
+        @Override
+        public void onSuccess() {
+            for (AZEROIotMessage message : messages) {
+                try {
+                    message.onSuccess();
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Unexpected error from message callback", e);
+                }
+            }
+        }
+
+        @Override
+        public void onFailure() {
+            for (AZEROIotMessage message : messages) {
+                try {
+                    message.setErrorCode(errorCode);
+                    message.setErrorMessage(errorMessage);
+                    message.onFailure();
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Unexpected error from message callback", e);
+                }
+            }
+        }
+
+        @Override
+        public void onTimeout() {
+            for (AZEROIotMessage message : messages) {
+                try {
+                    message.onTimeout();
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Unexpected error from message callback", e);
+                }
+            }
+        }
+    }
+
+}
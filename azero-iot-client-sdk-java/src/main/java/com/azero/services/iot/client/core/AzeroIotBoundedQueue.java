@@ -0,0 +1,163 @@
+package com.azero.services.iot.client.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.azero.services.iot.client.AZEROIotMessage;
+
+/**
+ * This class is a lock-free offline request queue bounded by both the maximum
+ * offline queue size and the maximum offline queue bytes of the client.
+ * <p>
+ * The number of queued messages and their total payload size are kept in
+ * atomic counters, so that checking the bounds is O(1) instead of traversing
+ * the queue. A slot is reserved in the counters before a message is added, so
+ * the bounds hold under concurrent offers.
+ * </p>
+ */
+public class AzeroIotBoundedQueue implements AzeroIotMessageQueue {
+
+    private final AbstractAzeroIotClient client;
+
+    private final ConcurrentLinkedDeque<AZEROIotMessage> messages = new ConcurrentLinkedDeque<>();
+
+    /** The number of queued messages. */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /** The total payload size of the queued messages. */
+    private final AtomicLong bytes = new AtomicLong();
+
+    public AzeroIotBoundedQueue(AbstractAzeroIotClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Adds a message to the tail of the queue.
+     *
+     * @param message
+     *            the message to be queued
+     * @return true, if the message was queued, or false if the queue is full
+     */
+    @Override
+    public boolean offer(AZEROIotMessage message) {
+        if (!reserve(client, count, bytes, getPayloadLength(message))) {
+            return false;
+        }
+        messages.add(message);
+        return true;
+    }
+
+    /**
+     * Adds a message back to the head of the queue.
+     *
+     * @param message
+     *            the message to be queued
+     * @return true, if the message was queued, or false if the queue is full
+     */
+    @Override
+    public boolean offerFirst(AZEROIotMessage message) {
+        if (!reserve(client, count, bytes, getPayloadLength(message))) {
+            return false;
+        }
+        messages.addFirst(message);
+        return true;
+    }
+
+    /**
+     * Removes the message at the head of the queue.
+     *
+     * @return the message, or null if the queue is empty
+     */
+    @Override
+    public AZEROIotMessage poll() {
+        AZEROIotMessage message = messages.poll();
+        if (message != null) {
+            count.decrementAndGet();
+            bytes.addAndGet(-getPayloadLength(message));
+        }
+        return message;
+    }
+
+    /**
+     * Gets the number of queued messages.
+     *
+     * @return the queue size
+     */
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Gets the total payload size of the queued messages.
+     *
+     * @return the number of bytes
+     */
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Gets a snapshot of the queued messages, which is weakly consistent with
+     * concurrent offers and polls.
+     *
+     * @return the queued messages
+     */
+    @Override
+    public List<AZEROIotMessage> getMessages() {
+        return new ArrayList<>(messages);
+    }
+
+    /**
+     * Reserves room for a message in the given counters, if the queue bounds
+     * of the client allow for it.
+     *
+     * @param client
+     *            the client whose queue bounds apply
+     * @param count
+     *            the counter of queued messages
+     * @param bytes
+     *            the counter of queued payload bytes
+     * @param length
+     *            the payload size of the message
+     * @return true, if the room was reserved
+     */
+    static boolean reserve(AbstractAzeroIotClient client, AtomicInteger count, AtomicLong bytes, int length) {
+        int maxSize = client.getMaxOfflineQueueSize();
+        while (true) {
+            int current = count.get();
+            if (maxSize <= 0 || current >= maxSize) {
+                return false;
+            }
+            if (count.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+
+        long maxBytes = client.getMaxOfflineQueueBytes();
+        if (maxBytes <= 0) {
+            bytes.addAndGet(length);
+            return true;
+        }
+        while (true) {
+            long current = bytes.get();
+            if (current + length > maxBytes) {
+                count.decrementAndGet();
+                return false;
+            }
+            if (bytes.compareAndSet(current, current + length)) {
+                return true;
+            }
+        }
+    }
+
+    static int getPayloadLength(AZEROIotMessage message) {
+        byte[] payload = message.getPayloadArray();
+        return (payload == null) ? 0 : payload.length;
+    }
+
+}
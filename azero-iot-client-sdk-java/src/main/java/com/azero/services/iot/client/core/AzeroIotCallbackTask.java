@@ -0,0 +1,19 @@
+package com.azero.services.iot.client.core;
+
+/**
+ * This class is a user callback run on the client thread pool, such as the
+ * delivery of a message to a subscription, which is dropped instead when the
+ * callback queue is full. See also
+ * {@link AbstractAzeroIotClient#scheduleCallback(Runnable)}.
+ */
+public abstract class AzeroIotCallbackTask implements Runnable {
+
+    /**
+     * Invoked instead of {@link #run()} when the callback is dropped, to
+     * release what it holds. The default implementation does nothing.
+     */
+    public void onDropped() {
+        // Default implementation is no-op
+    }
+
+}
@@ -0,0 +1,273 @@
+package com.azero.services.iot.client.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.azero.services.iot.client.AZEROIotException;
+import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotQos;
+import com.azero.services.iot.client.AZEROIotTimeoutException;
+
+/**
+ * This class publishes a byte stream as a sequence of chunks, so that large
+ * payloads neither exceed the message size limit of the broker nor hold up
+ * other messages on the connection for long.
+ * <p>
+ * Each chunk starts with a fixed-size header carrying the transfer ID, the
+ * sequence number of the chunk, and whether it's the last chunk of the
+ * transfer. Chunks are published asynchronously, with at most a window of
+ * chunks in flight at a time, and are reassembled by
+ * {@link com.azero.services.iot.client.AZEROIotChunkedTopic} on the receiving
+ * side.
+ * </p>
+ */
+public class AzeroIotChunkedTransfer {
+
+    /** The length of the chunk header in bytes. */
+    public static final int HEADER_LENGTH = 15;
+
+    private static final byte MAGIC_0 = (byte) 0xC4;
+    private static final byte MAGIC_1 = (byte) 0x0C;
+    private static final int FLAG_LAST = 0x01;
+
+    private final AbstractAzeroIotClient client;
+    private final String topic;
+    private final AZEROIotQos qos;
+    private final int chunkSize;
+    private final int windowSize;
+    private final long transferId;
+    private final Semaphore window;
+    private volatile Exception failure;
+
+    /**
+     * Instantiates a new transfer.
+     *
+     * @param client
+     *            the client publishing the chunks
+     * @param topic
+     *            the topic the chunks are published to
+     * @param qos
+     *            the QoS level of the chunks
+     * @param chunkSize
+     *            the maximum number of payload bytes in a chunk
+     * @param windowSize
+     *            the maximum number of chunks in flight
+     */
+    public AzeroIotChunkedTransfer(AbstractAzeroIotClient client, String topic, AZEROIotQos qos, int chunkSize,
+            int windowSize) {
+        if (chunkSize <= 0 || windowSize <= 0) {
+            throw new IllegalArgumentException("Chunk size and window size must be positive");
+        }
+        this.client = client;
+        this.topic = topic;
+        this.qos = qos;
+        this.chunkSize = chunkSize;
+        this.windowSize = windowSize;
+        this.transferId = ThreadLocalRandom.current().nextLong();
+        this.window = new Semaphore(windowSize);
+    }
+
+    /**
+     * Publishes the stream, and blocks until all the chunks have been
+     * published or the transfer fails. The stream is not closed.
+     *
+     * @param stream
+     *            the stream to be published
+     * @param timeout
+     *            the timeout in milliseconds for the whole transfer, or 0 for
+     *            no timeout
+     * @throws AZEROIotException
+     *             exception thrown if the stream can't be read or any of the
+     *             chunks fails to be published
+     * @throws AZEROIotTimeoutException
+     *             exception thrown if the transfer doesn't complete in time
+     */
+    public void send(InputStream stream, long timeout) throws AZEROIotException, AZEROIotTimeoutException {
+        long deadline = (timeout > 0) ? System.currentTimeMillis() + timeout : 0;
+        int sequence = 0;
+        byte[] chunk = readChunk(stream);
+        while (true) {
+            byte[] next = null;
+            boolean last;
+            if (chunk.length - HEADER_LENGTH < chunkSize) {
+                last = true;
+            } else {
+                // read ahead, so the last chunk can be flagged
+                next = readChunk(stream);
+                last = (next.length == HEADER_LENGTH);
+            }
+            writeHeader(chunk, transferId, sequence++, last);
+
+            acquire(1, deadline);
+            checkFailure();
+            try {
+                client.publish(new ChunkMessage(topic, qos, chunk), getRemainingTime(deadline));
+            } catch (AZEROIotException e) {
+                window.release();
+                throw e;
+            }
+            if (last) {
+                break;
+            }
+            chunk = next;
+        }
+
+        // wait for the chunks still in flight
+        acquire(windowSize, deadline);
+        window.release(windowSize);
+        checkFailure();
+    }
+
+    /**
+     * Checks if the payload is a chunk of a transfer.
+     *
+     * @param payload
+     *            the message payload
+     * @return true, if the payload starts with a chunk header
+     */
+    public static boolean isChunk(byte[] payload) {
+        return payload != null && payload.length >= HEADER_LENGTH && payload[0] == MAGIC_0 && payload[1] == MAGIC_1;
+    }
+
+    /**
+     * Gets the transfer ID of a chunk.
+     *
+     * @param chunk
+     *            the chunk payload
+     * @return the transfer ID
+     */
+    public static long getTransferId(byte[] chunk) {
+        long id = 0;
+        for (int i = 3; i < 11; i++) {
+            id = (id << 8) | (chunk[i] & 0xFF);
+        }
+        return id;
+    }
+
+    /**
+     * Gets the sequence number of a chunk, starting from 0.
+     *
+     * @param chunk
+     *            the chunk payload
+     * @return the sequence number
+     */
+    public static int getSequence(byte[] chunk) {
+        return ((chunk[11] & 0xFF) << 24) | ((chunk[12] & 0xFF) << 16) | ((chunk[13] & 0xFF) << 8) | (chunk[14] & 0xFF);
+    }
+
+    /**
+     * Checks if a chunk is the last one of its transfer.
+     *
+     * @param chunk
+     *            the chunk payload
+     * @return true, if it's the last chunk
+     */
+    public static boolean isLast(byte[] chunk) {
+        return (chunk[2] & FLAG_LAST) != 0;
+    }
+
+    private static void writeHeader(byte[] chunk, long transferId, int sequence, boolean last) {
+        chunk[0] = MAGIC_0;
+        chunk[1] = MAGIC_1;
+        chunk[2] = (byte) (last ? FLAG_LAST : 0);
+        for (int i = 10; i >= 3; i--) {
+            chunk[i] = (byte) transferId;
+            transferId >>>= 8;
+        }
+        chunk[11] = (byte) (sequence >>> 24);
+        chunk[12] = (byte) (sequence >>> 16);
+        chunk[13] = (byte) (sequence >>> 8);
+        chunk[14] = (byte) sequence;
+    }
+
+    private byte[] readChunk(InputStream stream) throws AZEROIotException {
+        byte[] chunk = new byte[HEADER_LENGTH + chunkSize];
+        int length = HEADER_LENGTH;
+        try {
+            while (length < chunk.length) {
+                int n = stream.read(chunk, length, chunk.length - length);
+                if (n < 0) {
+                    break;
+                }
+                length += n;
+            }
+        } catch (IOException e) {
+            throw new AZEROIotException(e);
+        }
+        return (length == chunk.length) ? chunk : Arrays.copyOf(chunk, length);
+    }
+
+    private void acquire(int permits, long deadline) throws AZEROIotException, AZEROIotTimeoutException {
+        try {
+            if (deadline == 0) {
+                window.acquire(permits);
+            } else if (!window.tryAcquire(permits, getRemainingTime(deadline), TimeUnit.MILLISECONDS)) {
+                throw new AZEROIotTimeoutException("Chunked transfer timed out on topic " + topic);
+            }
+        } catch (InterruptedException e) {
+            throw new AZEROIotException(e);
+        }
+    }
+
+    private void checkFailure() throws AZEROIotException, AZEROIotTimeoutException {
+        Exception e = failure;
+        if (e instanceof AZEROIotTimeoutException) {
+            throw (AZEROIotTimeoutException) e;
+        } else if (e != null) {
+            throw (AZEROIotException) e;
+        }
+    }
+
+    private static long getRemainingTime(long deadline) throws AZEROIotTimeoutException {
+        if (deadline == 0) {
+            return 0;
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new AZEROIotTimeoutException("Chunked transfer timed out");
+        }
+        return remaining;
+    }
+
+    /**
+     * A chunk in flight, which releases its slot in the window once it
+     * completes.
+     */
+    private class ChunkMessage extends AZEROIotMessage {
+
+        private ChunkMessage(String topic, AZEROIotQos qos, byte[] chunk) {
+            super(topic, qos, chunk, false);
+        }
+
+        @Override
+        public void onSuccess() {
+            window.release();
+        }
+
+        @Override
+        public void onFailure() {
+            if (failure == null) {
+                failure = new AZEROIotException(errorCode, errorMessage);
+            }
+            window.release();
+        }
+
+        @Override
+        public void onTimeout() {
+            if (failure == null) {
+                failure = new AZEROIotTimeoutException("Chunk timed out on topic " + topic);
+            }
+            window.release();
+        }
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public long getTransferId() {
+        return this.transferId;
+    }
+
+}
@@ -1,6 +1,9 @@
 package com.azero.services.iot.client.core;
 
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 import com.azero.services.iot.client.AZEROIotException;
 import com.azero.services.iot.client.AZEROIotMessage;
@@ -12,9 +15,23 @@ import com.azero.services.iot.client.AZEROIotTimeoutException;
  * return either synchronously or asynchronously the result, e.g. success,
  * failure, or timeout. It's used by most of the APIs to implement blocking and
  * non-blocking calls with timeout support.
+ * <p>
+ * The result is kept in a single state field which moves from pending to
+ * exactly one of the completed states through compare-and-set, so callbacks
+ * never contend on a lock. Synchronous callers are parked until the request is
+ * completed or the timeout expires.
+ * </p>
  */
 public class AzeroIotCompletion extends AZEROIotMessage {
 
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_SUCCESS = 1;
+    private static final int STATE_FAILURE = 2;
+    private static final int STATE_TIMEOUT = 3;
+
+    private static final AtomicIntegerFieldUpdater<AzeroIotCompletion> STATE_UPDATER = AtomicIntegerFieldUpdater
+            .newUpdater(AzeroIotCompletion.class, "state");
+
     /** The request containing the callback functions. */
     protected final AZEROIotMessage request;
 
@@ -25,16 +42,13 @@ public class AzeroIotCompletion extends AZEROIotMessage {
     protected final boolean isAsync;
 
     /** The future object of the timeout task. */
-    protected Future<?> timeoutTask;
+    protected volatile Future<?> timeoutTask;
 
-    /** Indicates whether the request has completed successfully. */
-    protected boolean hasSuccess;
+    /** The state of the request, either pending or one of the completed states. */
+    private volatile int state = STATE_PENDING;
 
-    /** Indicates whether the request has completed with failure. */
-    protected boolean hasFailure;
-
-    /** Indicates whether the request has timed out. */
-    protected boolean hasTimeout;
+    /** The thread blocked in a synchronous call waiting for the result. */
+    private volatile Thread waiter;
 
     /**
      * Instantiates a new completion object with a synchronous request.
@@ -121,8 +135,8 @@ public class AzeroIotCompletion extends AZEROIotMessage {
      * are provided through the <code>req</code> argument.
      *
      * @param req
-     *            the request containing request topic, QoS, payload, and
-     *            callback functions for asynchronous requests.
+     *            the request containing request topic, QoS, payload, time to
+     *            live, and callback functions for asynchronous requests.
      * @param timeout
      *            the timeout in milliseconds for the request. If timeout is 0
      *            or less, the request will never be timed out.
@@ -130,7 +144,9 @@ public class AzeroIotCompletion extends AZEROIotMessage {
      *            whether or not the request is asynchronous
      */
     public AzeroIotCompletion(AZEROIotMessage req, long timeout, boolean isAsync) {
-        super(req.getTopic(), req.getQos(), req.getPayload());
+        super(req.getTopic(), req.getQos(), req.getPayloadArray(), false);
+        this.timeToLive = req.getTimeToLive();
+        this.expiryTime = req.getExpiryTime();
 
         this.request = req;
         this.timeout = timeout;
@@ -154,20 +170,23 @@ public class AzeroIotCompletion extends AZEROIotMessage {
      *             request has timed out.
      */
     public void get(AbstractAzeroIotClient client) throws AZEROIotException, AZEROIotTimeoutException {
-        synchronized (this) {
-            if (hasSuccess || hasFailure || hasTimeout) {
-                // operation has completed before get() is called
-                if (!isAsync) {
-                    if (hasFailure) {
-                        throw new AZEROIotException("Error happened when processing command " + topic);
-                    }
-                    if (hasTimeout) {
-                        throw new AZEROIotTimeoutException("Request timed out when processing command " + topic);
-                    }
+        int s = state;
+        if (s != STATE_PENDING) {
+            // operation has completed before get() is called
+            if (!isAsync) {
+                if (s == STATE_FAILURE) {
+                    throw new AZEROIotException("Error happened when processing command " + topic);
+                }
+                if (s == STATE_TIMEOUT) {
+                    throw new AZEROIotTimeoutException("Request timed out when processing command " + topic);
                 }
-                return;
             }
+            return;
+        }
 
+        // if it's an asynchronous request, we don't block the calling
+        // thread, but schedule a timeout handler instead
+        if (isAsync) {
             if (timeout > 0) {
                 timeoutTask = client.scheduleTimeoutTask(new Runnable() {
                     @Override
@@ -175,31 +194,56 @@ public class AzeroIotCompletion extends AZEROIotMessage {
                         onTimeout();
                     }
                 }, timeout);
-            }
-
-            // if it's an asynchronous request, we don't block the calling
-            // thread
-            if (isAsync) {
-                return;
-            }
-
-            while (!hasSuccess && !hasFailure && !hasTimeout) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
+                // the request may have completed before the timeout task was
+                // visible to the callbacks
+                if (state != STATE_PENDING) {
                     cancelTimeoutTask();
-                    throw new AZEROIotException(e);
                 }
             }
+            return;
+        }
 
-            cancelTimeoutTask();
+        s = await();
 
-            if (hasFailure) {
-                throw new AZEROIotException(errorCode, errorMessage);
-            }
-            if (hasTimeout) {
-                throw new AZEROIotTimeoutException("Request timed out when processing request " + topic);
+        if (s == STATE_FAILURE) {
+            throw new AZEROIotException(errorCode, errorMessage);
+        }
+        if (s == STATE_TIMEOUT) {
+            throw new AZEROIotTimeoutException("Request timed out when processing request " + topic);
+        }
+    }
+
+    /**
+     * Parks the calling thread until the request is completed. If the timeout
+     * expires first, {@link #onTimeout()} is invoked on the calling thread.
+     *
+     * @return the completed state
+     * @throws AZEROIotException
+     *             if the calling thread is interrupted
+     */
+    private int await() throws AZEROIotException {
+        long deadline = (timeout > 0) ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        waiter = Thread.currentThread();
+        try {
+            int s;
+            while ((s = state) == STATE_PENDING) {
+                if (timeout > 0) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        onTimeout();
+                        continue;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    throw new AZEROIotException(new InterruptedException());
+                }
             }
+            return s;
+        } finally {
+            waiter = null;
         }
     }
 
@@ -210,18 +254,8 @@ public class AzeroIotCompletion extends AZEROIotMessage {
      */
     @Override
     public void onSuccess() {
-        synchronized (this) {
-            if (hasSuccess || hasFailure || hasTimeout) {
-                return;
-            }
-
-            hasSuccess = true;
-            cancelTimeoutTask();
-
-            if (!isAsync) {
-                notify();
-                return;
-            }
+        if (!complete(STATE_SUCCESS)) {
+            return;
         }
 
         if (request != null) {
@@ -236,18 +270,8 @@ public class AzeroIotCompletion extends AZEROIotMessage {
      */
     @Override
     public void onFailure() {
-        synchronized (this) {
-            if (hasSuccess || hasFailure || hasTimeout) {
-                return;
-            }
-
-            hasFailure = true;
-            cancelTimeoutTask();
-
-            if (!isAsync) {
-                notify();
-                return;
-            }
+        if (!complete(STATE_FAILURE)) {
+            return;
         }
 
         if (request != null) {
@@ -264,31 +288,94 @@ public class AzeroIotCompletion extends AZEROIotMessage {
      */
     @Override
     public void onTimeout() {
-        synchronized (this) {
-            if (hasSuccess || hasFailure || hasTimeout) {
-                return;
-            }
+        if (!complete(STATE_TIMEOUT)) {
+            return;
+        }
 
-            hasTimeout = true;
-            cancelTimeoutTask();
+        if (request != null) {
+            request.onTimeout();
+        }
+    }
 
-            if (!isAsync) {
-                notify();
-                return;
+    /**
+     * Completes the request on the calling thread, e.g. the one receiving the
+     * acknowledgement, so that a synchronous caller is woken up right away
+     * even if the client threads are busy. Only the callback functions of an
+     * asynchronous request are scheduled on the client thread pool.
+     * Subclasses may override the callback functions, so they are completed
+     * on the client thread pool as a whole.
+     *
+     * @param success
+     *            true if the request succeeded, false if it failed
+     * @param client
+     *            the client object that provides the execution thread pool
+     *            for the callback functions
+     */
+    public void complete(final boolean success, AbstractAzeroIotClient client) {
+        if (getClass() != AzeroIotCompletion.class) {
+            client.scheduleTask(new Runnable() {
+                @Override
+                public void run() {
+                    if (success) {
+                        onSuccess();
+                    } else {
+                        onFailure();
+                    }
+                }
+            });
+            return;
+        }
+
+        if (!complete(success ? STATE_SUCCESS : STATE_FAILURE) || request == null) {
+            return;
+        }
+        client.scheduleTask(new Runnable() {
+            @Override
+            public void run() {
+                if (success) {
+                    request.onSuccess();
+                } else {
+                    request.setErrorCode(errorCode);
+                    request.setErrorMessage(errorMessage);
+                    request.onFailure();
+                }
             }
+        });
+    }
+
+    /**
+     * Moves the request from pending to the given completed state, and wakes
+     * up the synchronous caller if there is one.
+     *
+     * @param completedState
+     *            the completed state
+     * @return true, if the request callback is to be invoked, i.e. the state
+     *         has changed and the request is asynchronous
+     */
+    private boolean complete(int completedState) {
+        if (!STATE_UPDATER.compareAndSet(this, STATE_PENDING, completedState)) {
+            return false;
         }
 
-        if (request != null) {
-            request.onTimeout();
+        cancelTimeoutTask();
+
+        if (!isAsync) {
+            Thread thread = waiter;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+            return false;
         }
+        return true;
     }
 
     /**
      * Cancel timeout task.
      */
     private void cancelTimeoutTask() {
-        if (timeoutTask != null && !timeoutTask.isCancelled()) {
-            timeoutTask.cancel(false);
+        Future<?> task = timeoutTask;
+        if (task != null && !task.isCancelled()) {
+            task.cancel(false);
         }
     }
 
@@ -1,5 +1,7 @@
 package com.azero.services.iot.client.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
@@ -8,6 +10,7 @@ import java.util.logging.Logger;
 import com.azero.services.iot.client.AZEROIotConnectionStatus;
 import com.azero.services.iot.client.AZEROIotException;
 import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotQos;
 
 /**
  * This class provides an abstract layer for the library to communicate with the
@@ -45,19 +48,25 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
     private boolean userDisconnect;
     /**
      * The offline publish queue holding messages while the connection is being
-     * established.
+     * established. It's replaced by a persistent queue on connecting, if a
+     * persistent queue directory is configured on the client.
      */
-    private ConcurrentLinkedQueue<AZEROIotMessage> publishQueue = new ConcurrentLinkedQueue<>();
+    private volatile AzeroIotOfflineQueue publishQueue;
     /**
      * The offline subscribe request queue holding messages while the connection
      * is being established.
      */
-    private ConcurrentLinkedQueue<AZEROIotMessage> subscribeQueue = new ConcurrentLinkedQueue<>();
+    private final AzeroIotBoundedQueue subscribeQueue;
     /**
      * The offline unsubscribe request queue holding messages while the
      * connection is being established.
      */
-    private ConcurrentLinkedQueue<AZEROIotMessage> unsubscribeQueue = new ConcurrentLinkedQueue<>();
+    private final AzeroIotBoundedQueue unsubscribeQueue;
+    /**
+     * The pipeline replaying the offline queues once the connection is
+     * established.
+     */
+    private final AzeroIotReplayPipeline replayPipeline;
 
     /**
      * Instantiates a new connection object.
@@ -67,6 +76,10 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
      */
     public AzeroIotConnection(AbstractAzeroIotClient client) {
         this.client = client;
+        this.publishQueue = new AzeroIotOfflineQueue(client);
+        this.subscribeQueue = new AzeroIotBoundedQueue(client);
+        this.unsubscribeQueue = new AzeroIotBoundedQueue(client);
+        this.replayPipeline = new AzeroIotReplayPipeline(this);
     }
 
     /**
@@ -105,6 +118,27 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
      */
     protected abstract void publishMessage(AZEROIotMessage message) throws AZEROIotException, AzeroIotRetryableException;
 
+    /**
+     * Method which is called to publish a QoS 0 message without any
+     * completion callback. The default implementation goes through
+     * {@link #publishMessage(AZEROIotMessage)}; subclasses can skip the
+     * message object and its callbacks altogether.
+     *
+     * @param topic
+     *            the topic to be published to
+     * @param payload
+     *            the payload to be published, owned by the connection
+     * @throws AZEROIotException
+     *             this exception is thrown when there's an unrecoverable error
+     *             happened while processing the request
+     * @throws AzeroIotRetryableException
+     *             this exception is thrown when the request is failed to be
+     *             sent, which will be queued and retried
+     */
+    protected void publishMessageFireAndForget(String topic, byte[] payload) throws AZEROIotException, AzeroIotRetryableException {
+        publishMessage(new AZEROIotMessage(topic, AZEROIotQos.QOS0, payload, false));
+    }
+
     /**
      * Abstract method which is called to subscribe to a topic.
      *
@@ -145,16 +179,37 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
     public void publish(AZEROIotMessage message) throws AZEROIotException {
         try {
             publishMessage(message);
+            replayPipeline.onLiveRequest();
         } catch (AzeroIotRetryableException e) {
-            if (client.getMaxOfflineQueueSize() > 0 && publishQueue.size() < client.getMaxOfflineQueueSize()) {
-                publishQueue.add(message);
-            } else {
+            if (!publishQueue.offer(message)) {
                 LOGGER.info("Failed to publish message to " + message.getTopic());
                 throw new AZEROIotException(e);
             }
+            onRequestQueued();
         }
     }
 
+    /**
+     * Resumes the replay of the offline queues if a request was queued while
+     * connected, e.g. because too many publishes were in progress, as it
+     * would otherwise wait for the next reconnect.
+     */
+    protected void onRequestQueued() {
+        if (connectionStatus == AZEROIotConnectionStatus.CONNECTED) {
+            replayPipeline.resume();
+        }
+    }
+
+    /**
+     * Gets the current in-flight window, i.e. the maximum number of QoS 1 and
+     * QoS 2 publishes allowed to be waiting for acknowledgement.
+     *
+     * @return the in-flight window
+     */
+    public int getInflightWindow() {
+        return client.getMaxInflight();
+    }
+
     /**
      * Updates credentials for the connection, which will be used for new
      * connections.
@@ -171,6 +226,32 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
         // default implementation does nothing
     }
 
+    /**
+     * The fire-and-forget publish method exposed by this class. A message
+     * object is only created if the message has to be queued while the
+     * connection is being established.
+     *
+     * @param topic
+     *            the topic to be published to
+     * @param payload
+     *            the payload to be published, owned by the connection
+     * @throws AZEROIotException
+     *             this exception is thrown when the underneath failed to
+     *             process the request
+     */
+    public void publishFireAndForget(String topic, byte[] payload) throws AZEROIotException {
+        try {
+            publishMessageFireAndForget(topic, payload);
+            replayPipeline.onLiveRequest();
+        } catch (AzeroIotRetryableException e) {
+            if (!publishQueue.offer(new AZEROIotMessage(topic, AZEROIotQos.QOS0, payload, false))) {
+                LOGGER.info("Failed to publish message to " + topic);
+                throw new AZEROIotException(e);
+            }
+            onRequestQueued();
+        }
+    }
+
     /**
      * The actual subscribe method exposed by this class.
      *
@@ -183,13 +264,13 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
     public void subscribe(AZEROIotMessage message) throws AZEROIotException {
         try {
             subscribeTopic(message);
+            replayPipeline.onLiveRequest();
         } catch (AzeroIotRetryableException e) {
-            if (client.getMaxOfflineQueueSize() > 0 && subscribeQueue.size() < client.getMaxOfflineQueueSize()) {
-                subscribeQueue.add(message);
-            } else {
+            if (!subscribeQueue.offer(message)) {
                 LOGGER.info("Failed to subscribe to " + message.getTopic());
                 throw new AZEROIotException(e);
             }
+            onRequestQueued();
         }
     }
 
@@ -205,13 +286,13 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
     public void unsubscribe(AZEROIotMessage message) throws AZEROIotException {
         try {
             unsubscribeTopic(message);
+            replayPipeline.onLiveRequest();
         } catch (AzeroIotRetryableException e) {
-            if (client.getMaxOfflineQueueSize() > 0 && unsubscribeQueue.size() < client.getMaxOfflineQueueSize()) {
-                unsubscribeQueue.add(message);
-            } else {
+            if (!unsubscribeQueue.offer(message)) {
                 LOGGER.info("Failed to unsubscribe to " + message.getTopic());
                 throw new AZEROIotException(e);
             }
+            onRequestQueued();
         }
     }
 
@@ -229,6 +310,7 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
         retryTimes = 0;
         userDisconnect = false;
         connectCallback = callback;
+        openPersistentQueue();
         openConnection(null);
     }
 
@@ -261,30 +343,8 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
         connectionStatus = AZEROIotConnectionStatus.CONNECTED;
         retryTimes = 0;
         cancelRetry();
-        // process offline messages
-        try {
-            while (subscribeQueue.size() > 0) {
-                AZEROIotMessage message = subscribeQueue.poll();
-                subscribeTopic(message);
-            }
-            while (unsubscribeQueue.size() > 0) {
-                AZEROIotMessage message = unsubscribeQueue.poll();
-                unsubscribeTopic(message);
-            }
-            while (publishQueue.size() > 0) {
-                AZEROIotMessage message = publishQueue.poll();
-                publishMessage(message);
-            }
-        } catch (AZEROIotException | AzeroIotRetryableException e) {
-            // should close the connection if we can't send message when
-            // connection is good
-            LOGGER.log(Level.WARNING, "Failed to send queued messages, will disconnect", e);
-            try {
-                closeConnection(null);
-            } catch (AZEROIotException ie) {
-                LOGGER.log(Level.WARNING, "Failed to disconnect", ie);
-            }
-        }
+        // replay offline requests, paced so they don't flood the connection
+        replayPipeline.start();
         client.onConnectionSuccess();
         if (connectCallback != null) {
             connectCallback.onSuccess();
@@ -303,17 +363,14 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
         LOGGER.info("Connection temporarily lost");
         connectionStatus = AZEROIotConnectionStatus.DISCONNECTED;
         cancelRetry();
+        replayPipeline.stop();
         if (shouldRetry()) {
             retryConnection();
             client.onConnectionFailure();
         } else {
             // permanent failure, notify the client and no more retries
             LOGGER.info("Connection retry cancelled or exceeded maximum retries");
-            if (connectCallback != null) {
-                connectCallback.onFailure();
-                connectCallback = null;
-            }
-            client.onConnectionClosed();
+            onConnectionClosed();
         }
     }
 
@@ -328,6 +385,8 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
         LOGGER.info("Connection permanently closed");
         connectionStatus = AZEROIotConnectionStatus.DISCONNECTED;
         cancelRetry();
+        replayPipeline.stop();
+        closePersistentQueue();
         if (connectCallback != null) {
             connectCallback.onFailure();
             connectCallback = null;
@@ -354,6 +413,65 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
         }
     }
 
+    /**
+     * Replaces the in-memory offline publish queue with a persistent one, if a
+     * persistent queue directory is configured on the client. Messages already
+     * queued in memory are moved over.
+     *
+     * @throws AZEROIotException
+     *             exception thrown if the persistent queue can't be opened
+     */
+    private synchronized void openPersistentQueue() throws AZEROIotException {
+        String directory = client.getPersistentQueueDirectory();
+        if (directory == null || publishQueue instanceof AzeroIotPersistentOfflineQueue) {
+            return;
+        }
+        AzeroIotOfflineQueue queue;
+        try {
+            queue = new AzeroIotPersistentOfflineQueue(client, new File(directory));
+        } catch (IOException e) {
+            throw new AZEROIotException(e);
+        }
+        AzeroIotOfflineQueue memoryQueue = publishQueue;
+        publishQueue = queue;
+        AZEROIotMessage message;
+        while ((message = memoryQueue.poll()) != null) {
+            if (!queue.offer(message)) {
+                message.setErrorMessage("Offline queue is full");
+                onMessageFailure(message);
+            }
+        }
+    }
+
+    /**
+     * Closes the persistent offline publish queue, if there is one, unlocking
+     * its directory, and falls back to an in-memory queue until the next
+     * connect. Queued messages with callbacks are moved over, while the others
+     * stay in the persistent queue.
+     */
+    private synchronized void closePersistentQueue() {
+        if (!(publishQueue instanceof AzeroIotPersistentOfflineQueue)) {
+            return;
+        }
+        AzeroIotPersistentOfflineQueue queue = (AzeroIotPersistentOfflineQueue) publishQueue;
+        AzeroIotOfflineQueue memoryQueue = new AzeroIotOfflineQueue(client);
+        publishQueue = memoryQueue;
+        for (AZEROIotMessage message : queue.close()) {
+            if (!memoryQueue.offer(message)) {
+                message.setErrorMessage("Offline queue is full");
+                onMessageFailure(message);
+            }
+        }
+    }
+
+    private static void onMessageFailure(AZEROIotMessage message) {
+        try {
+            message.onFailure();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Unexpected error from message callback", e);
+        }
+    }
+
     /**
      * Gets the exponentially back-off retry delay based on the number of times
      * the connection has been retried.
@@ -468,10 +586,22 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
      * The offline publish queue holding messages while the connection is being
      * established.
      * 
-     * @return the current offline publish queue
+     * @return a snapshot of the messages in the current offline publish queue.
+     *         Changes to the returned queue don't affect the offline queue.
+     * @deprecated use {@link #getOfflinePublishQueue()} instead
      */
-    @java.lang.SuppressWarnings("all")
+    @Deprecated
     public ConcurrentLinkedQueue<AZEROIotMessage> getPublishQueue() {
+        return new ConcurrentLinkedQueue<>(publishQueue.getMessages());
+    }
+
+    /**
+     * The offline publish queue holding messages while the connection is being
+     * established, which may be replaced by a persistent queue on connect.
+     * 
+     * @return the current offline publish queue
+     */
+    public AzeroIotOfflineQueue getOfflinePublishQueue() {
         return this.publishQueue;
     }
 
@@ -479,10 +609,23 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
      * The offline subscribe request queue holding messages while the connection
      * is being established.
      * 
-     * @return the current offline subscribe request queue
+     * @return a snapshot of the messages in the current offline subscribe
+     *         request queue. Changes to the returned queue don't affect the
+     *         offline queue.
+     * @deprecated use {@link #getOfflineSubscribeQueue()} instead
      */
-    @java.lang.SuppressWarnings("all")
+    @Deprecated
     public ConcurrentLinkedQueue<AZEROIotMessage> getSubscribeQueue() {
+        return new ConcurrentLinkedQueue<>(subscribeQueue.getMessages());
+    }
+
+    /**
+     * The offline subscribe request queue holding messages while the connection
+     * is being established.
+     * 
+     * @return the current offline subscribe request queue
+     */
+    public AzeroIotBoundedQueue getOfflineSubscribeQueue() {
         return this.subscribeQueue;
     }
 
@@ -490,10 +633,34 @@ public abstract class AzeroIotConnection implements AzeroIotConnectionCallback {
      * The offline unsubscribe request queue holding messages while the
      * connection is being established.
      * 
-     * @return the current offline unsubscribe request queue
+     * @return a snapshot of the messages in the current offline unsubscribe
+     *         request queue. Changes to the returned queue don't affect the
+     *         offline queue.
+     * @deprecated use {@link #getOfflineUnsubscribeQueue()} instead
      */
-    @java.lang.SuppressWarnings("all")
+    @Deprecated
     public ConcurrentLinkedQueue<AZEROIotMessage> getUnsubscribeQueue() {
+        return new ConcurrentLinkedQueue<>(unsubscribeQueue.getMessages());
+    }
+
+    /**
+     * The offline unsubscribe request queue holding messages while the
+     * connection is being established.
+     * 
+     * @return the current offline unsubscribe request queue
+     */
+    public AzeroIotBoundedQueue getOfflineUnsubscribeQueue() {
         return this.unsubscribeQueue;
     }
+
+    /**
+     * The pipeline replaying the offline queues once the connection is
+     * established.
+     *
+     * @return the replay pipeline
+     */
+    @java.lang.SuppressWarnings("all")
+    public AzeroIotReplayPipeline getReplayPipeline() {
+        return this.replayPipeline;
+    }
 }
@@ -0,0 +1,183 @@
+package com.azero.services.iot.client.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class provides ordered message delivery on top of the client thread
+ * pool. Each dispatch key, e.g. a topic filter or a thing name, has its own
+ * serial mailbox, so tasks submitted with the same key run one at a time in
+ * the order they were submitted, while tasks with different keys can run in
+ * parallel on different client threads. A lane is removed as soon as it is
+ * idle and has no pending tasks, so keys that are no longer used, e.g. from
+ * topics with varying wildcard levels, don't accumulate.
+ */
+public class AzeroIotDispatchLanes {
+
+    private static final Logger LOGGER = Logger.getLogger(AzeroIotDispatchLanes.class.getName());
+
+    /**
+     * The maximum number of tasks a lane runs before yielding its thread to
+     * other lanes.
+     */
+    private static final int MAX_TASKS_PER_RUN = 16;
+
+    /** The client providing the execution thread pool. */
+    private final AbstractAzeroIotClient client;
+
+    /** The lanes indexed by their dispatch keys. */
+    private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new set of dispatch lanes.
+     *
+     * @param client
+     *            the client whose thread pool runs the lanes
+     */
+    public AzeroIotDispatchLanes(AbstractAzeroIotClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Submits a task to the lane of the given key. Lanes are scheduled as user
+     * callbacks, so if the client can't take another one, see
+     * {@link AbstractAzeroIotClient#scheduleCallback(Runnable)}, the tasks
+     * waiting in the lane are dropped through
+     * {@link AbstractAzeroIotClient#onCallbackDropped(Runnable)}.
+     *
+     * @param key
+     *            the dispatch key
+     * @param task
+     *            the task to be executed after all the tasks previously
+     *            submitted with the same key
+     */
+    public void submit(String key, Runnable task) {
+        while (true) {
+            Lane lane = lanes.get(key);
+            if (lane == null) {
+                Lane newLane = new Lane(key);
+                lane = lanes.putIfAbsent(key, newLane);
+                if (lane == null) {
+                    lane = newLane;
+                }
+            }
+            if (lane.submit(task)) {
+                return;
+            }
+            // the lane has been retired after running all its tasks
+            lanes.remove(key, lane);
+        }
+    }
+
+    /**
+     * Gets the number of lanes which are running or have pending tasks.
+     *
+     * @return the number of lanes
+     */
+    public int getLaneCount() {
+        return lanes.size();
+    }
+
+    /**
+     * Removes all the lanes. Tasks already scheduled will still be executed.
+     */
+    public void clear() {
+        lanes.clear();
+    }
+
+    /**
+     * A serial mailbox which is scheduled on the client thread pool whenever it
+     * has pending tasks and is not already running.
+     */
+    private class Lane implements Runnable {
+        private final String key;
+        private final ConcurrentLinkedQueue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        /** The number of tasks submitted but not yet run, or -1 once retired. */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private Lane(String key) {
+            this.key = key;
+        }
+
+        private boolean submit(Runnable task) {
+            while (true) {
+                int count = pending.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (pending.compareAndSet(count, count + 1)) {
+                    break;
+                }
+            }
+            mailbox.offer(task);
+            schedule();
+            return true;
+        }
+
+        private void schedule() {
+            while (scheduled.compareAndSet(false, true)) {
+                if (trySchedule()) {
+                    return;
+                }
+                // rejected, so drop the waiting tasks and release the lane
+                Runnable task;
+                while ((task = mailbox.poll()) != null) {
+                    pending.decrementAndGet();
+                    client.onCallbackDropped(task);
+                }
+                scheduled.set(false);
+                if (pending.compareAndSet(0, -1)) {
+                    lanes.remove(key, this);
+                    return;
+                }
+                // retry for tasks submitted while the lane was being released
+                if (mailbox.isEmpty()) {
+                    return;
+                }
+            }
+        }
+
+        private boolean trySchedule() {
+            try {
+                return client.scheduleCallback(this);
+            } catch (AzeroIotRuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to schedule dispatch lane " + key, e);
+                return false;
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+                Runnable task = mailbox.poll();
+                if (task == null) {
+                    break;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Unexpected error from message handler", e);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+            scheduled.set(false);
+            if (pending.compareAndSet(0, -1)) {
+                // idle and empty, so later tasks for this key get a new lane
+                lanes.remove(key, this);
+                return;
+            }
+            // pick up tasks submitted while the lane was being released
+            if (!mailbox.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,247 @@
+package com.azero.services.iot.client.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.azero.services.iot.client.AZEROIotException;
+import com.azero.services.iot.client.AZEROIotFuture;
+import com.azero.services.iot.client.AZEROIotFutureListener;
+import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotQos;
+import com.azero.services.iot.client.AZEROIotTimeoutException;
+
+/**
+ * This class bridges the callback functions of {@link AZEROIotMessage} to an
+ * {@link AZEROIotFuture}. It's used as the request of an asynchronous
+ * {@link AzeroIotCompletion}, so the future is completed by whichever of
+ * {@link #onSuccess()}, {@link #onFailure()}, and {@link #onTimeout()} is
+ * invoked for the request.
+ * <p>
+ * If a delegate message is given, its callback functions are invoked before the
+ * future is completed, e.g. to notify an {@link com.azero.services.iot.client.AZEROIotTopic}
+ * of the outcome of a subscription.
+ * </p>
+ *
+ * @param <V>
+ *            the type of the result
+ */
+public class AzeroIotFutureMessage<V> extends AZEROIotMessage implements AZEROIotFuture<V> {
+
+    private static final Logger LOGGER = Logger.getLogger(AzeroIotFutureMessage.class.getName());
+
+    /** The message whose callback functions are invoked first, if any. */
+    private final AZEROIotMessage delegate;
+
+    /** Released once the future is completed. */
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /** The listeners to be notified, or null once the future is completed. */
+    private List<AZEROIotFutureListener<V>> listeners = new ArrayList<>(1);
+
+    private volatile V result;
+    private volatile Throwable cause;
+    private volatile boolean cancelled;
+
+    /**
+     * Instantiates a new future message.
+     *
+     * @param topic
+     *            the topic of the request
+     * @param qos
+     *            the QoS of the request
+     */
+    public AzeroIotFutureMessage(String topic, AZEROIotQos qos) {
+        super(topic, qos);
+        this.delegate = null;
+    }
+
+    /**
+     * Instantiates a new future message.
+     *
+     * @param topic
+     *            the topic of the request
+     * @param qos
+     *            the QoS of the request
+     * @param payload
+     *            the payload of the request
+     */
+    public AzeroIotFutureMessage(String topic, AZEROIotQos qos, byte[] payload) {
+        super(topic, qos, payload);
+        this.delegate = null;
+    }
+
+    /**
+     * Instantiates a new future message.
+     *
+     * @param topic
+     *            the topic of the request
+     * @param qos
+     *            the QoS of the request
+     * @param payload
+     *            the string payload of the request
+     */
+    public AzeroIotFutureMessage(String topic, AZEROIotQos qos, String payload) {
+        super(topic, qos, payload);
+        this.delegate = null;
+    }
+
+    /**
+     * Instantiates a new future message with the topic, QoS, payload, time to
+     * live, and callback functions of the given message.
+     *
+     * @param delegate
+     *            the message whose callback functions are invoked before the
+     *            future is completed
+     */
+    public AzeroIotFutureMessage(AZEROIotMessage delegate) {
+        super(delegate.getTopic(), delegate.getQos(), delegate.getPayloadArray(), false);
+        this.timeToLive = delegate.getTimeToLive();
+        this.expiryTime = delegate.getExpiryTime();
+        this.delegate = delegate;
+    }
+
+    /**
+     * Gets the result of a successful request. The default implementation
+     * returns null; subclasses could override it, e.g. to return the response
+     * payload stored in the message.
+     *
+     * @return the result of the request
+     */
+    protected V getSuccessValue() {
+        return null;
+    }
+
+    @Override
+    public void onSuccess() {
+        if (delegate != null) {
+            delegate.onSuccess();
+        }
+        complete(getSuccessValue(), null, false);
+    }
+
+    @Override
+    public void onFailure() {
+        if (delegate != null) {
+            delegate.setErrorCode(errorCode);
+            delegate.setErrorMessage(errorMessage);
+            delegate.onFailure();
+        }
+        complete(null, new AZEROIotException(errorCode, errorMessage), false);
+    }
+
+    @Override
+    public void onTimeout() {
+        if (delegate != null) {
+            delegate.onTimeout();
+        }
+        complete(null, new AZEROIotTimeoutException("Request timed out when processing request " + topic), false);
+    }
+
+    /**
+     * Completes the future successfully with the given result. It has no
+     * effect if the future has already completed.
+     *
+     * @param value
+     *            the result of the request
+     * @return true, if the future is completed by this call
+     */
+    public boolean complete(V value) {
+        return complete(value, null, false);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return complete(null, null, true);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return isDone() && !cancelled && cause == null;
+    }
+
+    @Override
+    public Throwable getCause() {
+        return cause;
+    }
+
+    @Override
+    public V get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report();
+    }
+
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    @Override
+    public void addListener(AZEROIotFutureListener<V> listener) {
+        synchronized (this) {
+            if (listeners != null) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    private V report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (cause != null) {
+            throw new ExecutionException(cause);
+        }
+        return result;
+    }
+
+    private boolean complete(V value, Throwable failure, boolean cancel) {
+        List<AZEROIotFutureListener<V>> toNotify;
+        synchronized (this) {
+            if (listeners == null) {
+                return false;
+            }
+            result = value;
+            cause = failure;
+            cancelled = cancel;
+            toNotify = listeners;
+            listeners = null;
+        }
+
+        done.countDown();
+        for (AZEROIotFutureListener<V> listener : toNotify) {
+            notifyListener(listener);
+        }
+        return true;
+    }
+
+    private void notifyListener(AZEROIotFutureListener<V> listener) {
+        try {
+            listener.onComplete(this);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unexpected error from future listener", e);
+        }
+    }
+
+}
@@ -0,0 +1,466 @@
+package com.azero.services.iot.client.core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class is a hashed wheel timer used for request timeouts. Timeouts are
+ * hashed into the buckets of a wheel by their deadline, and a periodic task
+ * advances the wheel one bucket per tick, expiring the timeouts that are due.
+ * Scheduling and cancelling a timeout are both O(1), at the cost of timeouts
+ * being accurate only to the tick duration.
+ * <p>
+ * The wheel has no thread of its own; it ticks on the given scheduler, so it
+ * shares the timer thread of the client with its routine tasks. The tasks of
+ * expired timeouts aren't run on that thread, they are handed off to the given
+ * executor, unless it rejects them.
+ * </p>
+ */
+public class AzeroIotHashedWheelTimer {
+
+    private static final Logger LOGGER = Logger.getLogger(AzeroIotHashedWheelTimer.class.getName());
+
+    /** The default tick duration in milliseconds. */
+    public static final long DEFAULT_TICK_DURATION = 10;
+
+    /** The default number of buckets in the wheel. */
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    /** The maximum number of new timeouts moved into the wheel per tick. */
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    private static final int WORKER_INIT = 0;
+    private static final int WORKER_STARTED = 1;
+    private static final int WORKER_SHUTDOWN = 2;
+
+    /** The scheduler the wheel ticks on. */
+    private final ScheduledExecutorService scheduler;
+
+    /** The executor running the tasks of expired timeouts. */
+    private final Executor executor;
+
+    /** The tick duration in nanoseconds. */
+    private final long tickDuration;
+
+    /** The buckets of the wheel. */
+    private final Bucket[] wheel;
+
+    /** The mask for mapping a tick to its bucket. */
+    private final int mask;
+
+    /** New timeouts yet to be moved into the wheel by the worker. */
+    private final ConcurrentLinkedQueue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+
+    /** Cancelled timeouts yet to be removed from the wheel. */
+    private final ConcurrentLinkedQueue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+    /** The number of timeouts neither expired nor removed after cancellation. */
+    private final AtomicInteger pendingTimeouts = new AtomicInteger();
+
+    /** The state of the timer. */
+    private final AtomicInteger workerState = new AtomicInteger(WORKER_INIT);
+
+    /** The task advancing the wheel. */
+    private final Worker worker = new Worker();
+
+    /** The periodic task of the worker on the scheduler. */
+    private volatile Future<?> tickTask;
+
+    /** The time the timer started, in nanoseconds. */
+    private volatile long startTime;
+
+    /** The updater for the state of timeouts. */
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER = AtomicIntegerFieldUpdater
+            .newUpdater(Timeout.class, "state");
+
+    /**
+     * Instantiates a new timer with the default tick duration and wheel size.
+     *
+     * @param scheduler
+     *            the scheduler the wheel ticks on
+     * @param executor
+     *            the executor running the tasks of expired timeouts
+     */
+    public AzeroIotHashedWheelTimer(ScheduledExecutorService scheduler, Executor executor) {
+        this(scheduler, executor, DEFAULT_TICK_DURATION, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    /**
+     * Instantiates a new timer.
+     *
+     * @param scheduler
+     *            the scheduler the wheel ticks on
+     * @param executor
+     *            the executor running the tasks of expired timeouts
+     * @param tickDuration
+     *            the tick duration in milliseconds
+     * @param ticksPerWheel
+     *            the number of buckets in the wheel, which is rounded up to
+     *            the next power of two
+     */
+    public AzeroIotHashedWheelTimer(ScheduledExecutorService scheduler, Executor executor, long tickDuration,
+            int ticksPerWheel) {
+        if (tickDuration <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("Tick duration and ticks per wheel must be positive");
+        }
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedules a task to be executed after the given delay.
+     *
+     * @param task
+     *            the task to be executed
+     * @param delay
+     *            the delay in milliseconds
+     * @return the future object which can be used to cancel the timeout
+     */
+    public Future<?> newTimeout(Runnable task, long delay) {
+        start();
+        pendingTimeouts.incrementAndGet();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) - startTime;
+        Timeout timeout = new Timeout(task, deadline);
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stops the timer. Timeouts already scheduled will still be expired: the
+     * periodic tick is replaced by a last task on the scheduler, which keeps
+     * the wheel ticking until there are no pending timeouts left. It's queued
+     * before the scheduler is shut down, so it isn't cancelled like periodic
+     * tasks are, and the scheduler terminates once it's done.
+     */
+    public void stop() {
+        if (workerState.getAndSet(WORKER_SHUTDOWN) != WORKER_STARTED) {
+            return;
+        }
+        Runnable drain = new Runnable() {
+            @Override
+            public void run() {
+                tickTask.cancel(false);
+                worker.drain();
+            }
+        };
+        try {
+            scheduler.execute(drain);
+        } catch (RejectedExecutionException e) {
+            // the scheduler has been shut down already, e.g. by the
+            // application, so the pending timeouts get a thread of their own
+            Thread thread = new Thread(drain, "azero-iot-timer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Checks if the timer is stopped.
+     *
+     * @return true, if the timer is stopped
+     */
+    public boolean isStopped() {
+        return workerState.get() == WORKER_SHUTDOWN;
+    }
+
+    /**
+     * Gets the number of timeouts waiting to expire.
+     *
+     * @return the number of pending timeouts
+     */
+    public int getPendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    private void start() {
+        if (workerState.get() == WORKER_STARTED) {
+            return;
+        }
+        synchronized (this) {
+            switch (workerState.get()) {
+            case WORKER_INIT:
+                startTime = System.nanoTime();
+                tickTask = scheduler.scheduleAtFixedRate(worker, tickDuration, tickDuration, TimeUnit.NANOSECONDS);
+                // published after the start time and the task
+                workerState.set(WORKER_STARTED);
+                break;
+            case WORKER_STARTED:
+                break;
+            default:
+                throw new RejectedExecutionException("Timer has been stopped");
+            }
+        }
+    }
+
+    /**
+     * The periodic task advancing the wheel one bucket per tick. A run late
+     * because the scheduler was busy catches up on the ticks it missed.
+     */
+    private class Worker implements Runnable {
+        private long tick;
+
+        @Override
+        public void run() {
+            try {
+                advance();
+            } catch (RuntimeException e) {
+                // the scheduler would stop running the task otherwise
+                LOGGER.log(Level.WARNING, "Unexpected error while advancing the timer", e);
+            }
+        }
+
+        private synchronized void advance() {
+            long currentTime = System.nanoTime() - startTime;
+            while (tickDuration * (tick + 1) <= currentTime) {
+                removeCancelledTimeouts();
+                transferNewTimeouts();
+                wheel[(int) (tick & mask)].expireTimeouts(currentTime);
+                tick++;
+            }
+        }
+
+        private void drain() {
+            while (pendingTimeouts.get() > 0) {
+                long sleepTime = TimeUnit.NANOSECONDS
+                        .toMillis(tickDuration * (tick + 1) - (System.nanoTime() - startTime) + 999999);
+                if (sleepTime > 0) {
+                    try {
+                        Thread.sleep(sleepTime);
+                    } catch (InterruptedException e) {
+                        // the scheduler is shut down now
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                run();
+            }
+        }
+
+        private void transferNewTimeouts() {
+            for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+                Timeout timeout = newTimeouts.poll();
+                if (timeout == null) {
+                    break;
+                }
+                if (timeout.state != Timeout.ST_INIT) {
+                    // cancelled before being moved into the wheel
+                    continue;
+                }
+                long calculated = timeout.deadline / tickDuration;
+                timeout.remainingRounds = (calculated - tick) / wheel.length;
+                // a timeout already due is put into the current bucket
+                long ticks = Math.max(calculated, tick);
+                wheel[(int) (ticks & mask)].add(timeout);
+            }
+        }
+
+        private void removeCancelledTimeouts() {
+            while (true) {
+                Timeout timeout = cancelledTimeouts.poll();
+                if (timeout == null) {
+                    break;
+                }
+                if (timeout.bucket != null) {
+                    timeout.bucket.remove(timeout);
+                }
+                pendingTimeouts.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * A bucket of the wheel, holding the timeouts in a doubly linked list so
+     * that cancelled timeouts can be removed in O(1). It's only accessed by the
+     * worker.
+     */
+    private class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void expireTimeouts(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    if (timeout.deadline <= deadline) {
+                        remove(timeout);
+                        if (timeout.expire()) {
+                            pendingTimeouts.decrementAndGet();
+                        }
+                    }
+                } else if (timeout.state == Timeout.ST_INIT) {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    /**
+     * A timeout scheduled on the wheel.
+     */
+    private class Timeout implements Future<Object> {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        // not private, so that it's accessible to the field updater
+        volatile int state = ST_INIT;
+        // the number of threads blocked in get(), only changed while holding
+        // the monitor, so that completing a timeout nobody waits for doesn't
+        // have to take it
+        private volatile int waiters;
+
+        // the following fields are only accessed by the worker
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        private boolean expire() {
+            if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                // cancelled, and will be accounted for when it's removed
+                return false;
+            }
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // the timeout must not be lost, so it's run on the timer
+                // thread instead
+                try {
+                    task.run();
+                } catch (RuntimeException taskException) {
+                    LOGGER.log(Level.WARNING, "Unexpected error from the expired timeout task", taskException);
+                }
+            } finally {
+                signalDone();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            cancelledTimeouts.add(this);
+            signalDone();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isDone() {
+            return state != ST_INIT;
+        }
+
+        @Override
+        public synchronized Object get() throws InterruptedException, ExecutionException {
+            waiters++;
+            try {
+                while (state == ST_INIT) {
+                    wait();
+                }
+            } finally {
+                waiters--;
+            }
+            return null;
+        }
+
+        @Override
+        public synchronized Object get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long remaining = unit.toNanos(timeout);
+            long end = System.nanoTime() + remaining;
+            waiters++;
+            try {
+                while (state == ST_INIT) {
+                    if (remaining <= 0) {
+                        throw new TimeoutException();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    remaining = end - System.nanoTime();
+                }
+            } finally {
+                waiters--;
+            }
+            return null;
+        }
+
+        private void signalDone() {
+            // the state is written before the waiters are read, and a waiter
+            // is counted before the state is read, so either a waiter sees
+            // the new state or it is seen here and notified
+            if (waiters > 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.azero.services.iot.client.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import com.azero.services.iot.client.AZEROIotMessage;
+
+/**
+ * This class is an adaptive window limiting the number of QoS 1 and QoS 2
+ * publishes in flight, i.e. sent but not yet acknowledged, below the maximum
+ * allowed by the MQTT connection.
+ * <p>
+ * The window is adjusted by additive increase, multiplicative decrease (AIMD)
+ * on the acknowledgement latency: each acknowledgement within twice the base
+ * latency grows the window by roughly one message per round trip, so that
+ * high-latency links can keep more messages in flight, and an acknowledgement
+ * slower than that halves the window, at most once per round trip. The base
+ * latency is the lowest latency observed, drifting slowly towards the recent
+ * latencies so that a lasting change of the link is eventually accepted.
+ * </p>
+ * <p>
+ * Messages that don't fit in the window wait in a bounded queue, and are
+ * handed back for sending as acknowledgements free up the window.
+ * </p>
+ */
+public class AzeroIotInflightWindow {
+
+    /** The message can be sent. */
+    public static final int ACQUIRED = 0;
+
+    /** The message was queued until the window frees up. */
+    public static final int QUEUED = 1;
+
+    /** The message was rejected because the queue is full. */
+    public static final int REJECTED = 2;
+
+    /** The factor the window is multiplied with when acknowledgements slow down. */
+    private static final double DECREASE_FACTOR = 0.5;
+
+    /** The latency, relative to the base latency, considered as slowing down. */
+    private static final double LATENCY_THRESHOLD = 2.0;
+
+    /** The shift for the drift of the base latency towards recent latencies. */
+    private static final int BASE_LATENCY_DRIFT_SHIFT = 6;
+
+    private final int maxWindow;
+    private final int maxPending;
+    private final Deque<AZEROIotMessage> pending = new ArrayDeque<>();
+    private double window;
+    private int inflight;
+    private long baseLatency = Long.MAX_VALUE;
+    private long lastDecrease;
+
+    /**
+     * Instantiates a new window for the connection of the client. The window
+     * starts at {@link AbstractAzeroIotClient#getMaxInflight()}, and may grow
+     * up to {@link #getMaxWindow(AbstractAzeroIotClient)}.
+     *
+     * @param client
+     *            the client providing the in-flight limits
+     */
+    public AzeroIotInflightWindow(AbstractAzeroIotClient client) {
+        this(client.getMaxInflight(), getMaxWindow(client), client.getMaxOfflineQueueSize());
+    }
+
+    /**
+     * Instantiates a new window.
+     *
+     * @param initialWindow
+     *            the initial window
+     * @param maxWindow
+     *            the maximum window, i.e. the in-flight limit of the connection
+     * @param maxPending
+     *            the maximum number of messages waiting for the window
+     */
+    public AzeroIotInflightWindow(int initialWindow, int maxWindow, int maxPending) {
+        this.maxWindow = Math.max(1, maxWindow);
+        this.maxPending = maxPending;
+        this.window = Math.max(1, Math.min(initialWindow, this.maxWindow));
+    }
+
+    /**
+     * Gets the in-flight limit of the connection of the client. With the
+     * adaptive window, it's {@link AbstractAzeroIotClient#getMaxAdaptiveInflight()},
+     * so that the window has room to grow from its initial size, unless
+     * {@link AbstractAzeroIotClient#getMaxInflight()} is larger.
+     *
+     * @param client
+     *            the client providing the in-flight limits
+     * @return the maximum number of publishes in flight
+     */
+    public static int getMaxWindow(AbstractAzeroIotClient client) {
+        if (!client.isAdaptiveInflight()) {
+            return client.getMaxInflight();
+        }
+        return Math.max(client.getMaxInflight(), client.getMaxAdaptiveInflight());
+    }
+
+    /**
+     * Takes a slot in the window for the message, or queues it if the window
+     * is full.
+     *
+     * @param message
+     *            the message to be sent
+     * @return {@link #ACQUIRED}, {@link #QUEUED}, or {@link #REJECTED}
+     */
+    public synchronized int acquire(AZEROIotMessage message) {
+        if (pending.isEmpty() && inflight < (int) window) {
+            inflight++;
+            return ACQUIRED;
+        }
+        if (pending.size() >= maxPending) {
+            return REJECTED;
+        }
+        pending.add(message);
+        return QUEUED;
+    }
+
+    /**
+     * Releases the slot of a message that has completed, adjusts the window,
+     * and takes slots for the queued messages that fit in the window now.
+     *
+     * @param latency
+     *            the acknowledgement latency in nanoseconds
+     * @param acknowledged
+     *            true if the message was acknowledged, false if it failed or
+     *            was never sent, in which case the window is not adjusted
+     * @return the queued messages to be sent
+     */
+    public synchronized List<AZEROIotMessage> release(long latency, boolean acknowledged) {
+        if (inflight > 0) {
+            inflight--;
+        }
+        if (acknowledged) {
+            adjust(latency);
+        }
+        if (pending.isEmpty() || inflight >= (int) window) {
+            return Collections.emptyList();
+        }
+        List<AZEROIotMessage> ready = new ArrayList<>();
+        while (!pending.isEmpty() && inflight < (int) window) {
+            ready.add(pending.poll());
+            inflight++;
+        }
+        return ready;
+    }
+
+    /**
+     * Gets the current window.
+     *
+     * @return the maximum number of messages currently allowed in flight
+     */
+    public synchronized int getWindow() {
+        return (int) window;
+    }
+
+    /**
+     * Gets the number of messages in flight.
+     *
+     * @return the number of messages in flight
+     */
+    public synchronized int getInflight() {
+        return inflight;
+    }
+
+    /**
+     * Gets the number of messages waiting for the window.
+     *
+     * @return the number of queued messages
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private void adjust(long latency) {
+        long now = System.nanoTime();
+        if (baseLatency == Long.MAX_VALUE || latency < baseLatency) {
+            baseLatency = latency;
+        } else if (latency > baseLatency * LATENCY_THRESHOLD) {
+            // decrease at most once per round trip, as the acks of a round
+            // trip all reflect the same congestion
+            if (now - lastDecrease > latency) {
+                window = Math.max(1, window * DECREASE_FACTOR);
+                lastDecrease = now;
+            }
+            baseLatency += (latency - baseLatency) >> BASE_LATENCY_DRIFT_SHIFT;
+            return;
+        } else {
+            baseLatency += (latency - baseLatency) >> BASE_LATENCY_DRIFT_SHIFT;
+        }
+        window = Math.min(maxWindow, window + 1 / window);
+    }
+
+}
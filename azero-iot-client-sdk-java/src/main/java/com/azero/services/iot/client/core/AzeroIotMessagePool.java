@@ -0,0 +1,126 @@
+package com.azero.services.iot.client.core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotQos;
+
+/**
+ * This class is a bounded pool of reference counted messages used on the
+ * receive path when message recycling is enabled, so that inbound messages
+ * don't have to be allocated for every frame.
+ * <p>
+ * A message obtained from the pool starts with a reference count of one, held
+ * by the thread receiving it. Each party keeping the message beyond the call
+ * it was passed to, e.g. a task delivering it on another thread, must call
+ * {@link AZEROIotMessage#retain()} and later {@link AZEROIotMessage#release()}.
+ * Once the count drops to zero, the message is cleared and put back into the
+ * pool, or left to the garbage collector if the pool is full.
+ * </p>
+ */
+public class AzeroIotMessagePool {
+
+    /** The idle messages ready to be reused. */
+    private final BlockingQueue<PooledMessage> idleMessages;
+
+    /**
+     * Instantiates a new message pool.
+     *
+     * @param capacity
+     *            the maximum number of idle messages kept in the pool
+     */
+    public AzeroIotMessagePool(int capacity) {
+        this.idleMessages = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Obtains a message from the pool, or allocates a new one if the pool is
+     * empty. The message takes ownership of the payload array.
+     *
+     * @param topic
+     *            the topic of the message
+     * @param qos
+     *            the QoS level of the message
+     * @param payload
+     *            the payload of the message
+     * @return the message with a reference count of one
+     */
+    public AZEROIotMessage obtain(String topic, AZEROIotQos qos, byte[] payload) {
+        PooledMessage message = idleMessages.poll();
+        if (message == null) {
+            message = new PooledMessage(this);
+        }
+        message.init(topic, qos, payload);
+        return message;
+    }
+
+    /**
+     * Gets the number of idle messages in the pool.
+     *
+     * @return the number of idle messages
+     */
+    public int getIdleCount() {
+        return idleMessages.size();
+    }
+
+    private void recycle(PooledMessage message) {
+        // messages beyond the capacity are left to the garbage collector
+        idleMessages.offer(message);
+    }
+
+    /**
+     * A reference counted message which returns to its pool once released.
+     */
+    private static class PooledMessage extends AZEROIotMessage {
+        private final AzeroIotMessagePool pool;
+        private final AtomicInteger refCount = new AtomicInteger();
+
+        private PooledMessage(AzeroIotMessagePool pool) {
+            super(null, null);
+            this.pool = pool;
+        }
+
+        private void init(String topic, AZEROIotQos qos, byte[] payload) {
+            this.topic = topic;
+            this.qos = qos;
+            this.payload = payload;
+            refCount.set(1);
+        }
+
+        @Override
+        public AZEROIotMessage retain() {
+            while (true) {
+                int count = refCount.get();
+                if (count <= 0) {
+                    throw new IllegalStateException("Message has already been released");
+                }
+                if (refCount.compareAndSet(count, count + 1)) {
+                    return this;
+                }
+            }
+        }
+
+        @Override
+        public boolean release() {
+            int count = refCount.decrementAndGet();
+            if (count > 0) {
+                return false;
+            }
+            if (count < 0) {
+                refCount.incrementAndGet();
+                throw new IllegalStateException("Message has already been released");
+            }
+            setTopic(null);
+            setQos(null);
+            setPayload(null);
+            setErrorCode(null);
+            setErrorMessage(null);
+            setTimeToLive(0);
+            pool.recycle(this);
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.azero.services.iot.client.core;
+
+import java.util.List;
+
+import com.azero.services.iot.client.AZEROIotMessage;
+
+/**
+ * This interface defines the queues holding requests while the connection is
+ * being established.
+ */
+public interface AzeroIotMessageQueue {
+
+    /**
+     * Adds a message to the queue.
+     *
+     * @param message
+     *            the message to be queued
+     * @return true, if the message was queued, or false if the queue is full
+     */
+    boolean offer(AZEROIotMessage message);
+
+    /**
+     * Adds a message back to the head of the queue, e.g. a message that was
+     * polled but couldn't be sent.
+     *
+     * @param message
+     *            the message to be queued
+     * @return true, if the message was queued or dropped in favor of a newer
+     *         one, or false if the queue is full
+     */
+    boolean offerFirst(AZEROIotMessage message);
+
+    /**
+     * Removes the message at the head of the queue.
+     *
+     * @return the message, or null if the queue is empty
+     */
+    AZEROIotMessage poll();
+
+    /**
+     * Gets the number of queued messages.
+     *
+     * @return the queue size
+     */
+    int size();
+
+    /**
+     * Gets the total payload size of the queued messages.
+     *
+     * @return the number of bytes
+     */
+    long getBytes();
+
+    /**
+     * Gets a snapshot of the queued messages, in the order they are to be
+     * sent. Later changes to the queue aren't reflected in the snapshot.
+     *
+     * @return the queued messages
+     */
+    List<AZEROIotMessage> getMessages();
+
+}
@@ -0,0 +1,268 @@
+package com.azero.services.iot.client.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.azero.services.iot.client.AZEROIotMessage;
+
+/**
+ * This class is the offline publish queue, holding messages while the
+ * connection is being established, up to the maximum offline queue size and
+ * the maximum offline queue bytes of the client. The number of queued messages
+ * and their total payload size are kept in atomic counters, so they can be
+ * checked in O(1) and read without locking the queue.
+ * <p>
+ * For topics configured as conflated on the client, only the latest value
+ * matters: a newer message replaces the message for the same topic that is
+ * still waiting in the queue, taking over its position. The replaced message
+ * fails with its {@link AZEROIotMessage#onFailure()} callback. This bounds the
+ * queue to one message per conflated topic, and keeps stale updates from being
+ * replayed after reconnecting.
+ * </p>
+ * <p>
+ * Messages whose time to live has elapsed are dropped when they reach the head
+ * of the queue, and fail with their {@link AZEROIotMessage#onFailure()}
+ * callback.
+ * </p>
+ */
+public class AzeroIotOfflineQueue implements AzeroIotMessageQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(AzeroIotOfflineQueue.class.getName());
+
+    /** The client the queue belongs to. */
+    protected final AbstractAzeroIotClient client;
+
+    /** The queued messages in the order they are to be published. */
+    private final Deque<Slot> slots = new ArrayDeque<>();
+
+    /** The queued slots of conflated topics, keyed by topic. */
+    private final Map<String, Slot> conflatedSlots = new HashMap<>();
+
+    /** The number of queued messages. */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /** The total payload size of the queued messages. */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /** The number of queued messages replaced by newer ones. */
+    private final AtomicLong supersededCount = new AtomicLong();
+
+    public AzeroIotOfflineQueue(AbstractAzeroIotClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Adds a message to the queue, replacing the queued message for the same
+     * topic if the topic is conflated.
+     *
+     * @param message
+     *            the message to be queued
+     * @return true, if the message was queued, or false if the queue is full
+     */
+    @Override
+    public boolean offer(AZEROIotMessage message) {
+        String topic = message.getTopic();
+        boolean conflated = client.isConflatedTopic(topic);
+        AZEROIotMessage superseded = null;
+        int length = AzeroIotBoundedQueue.getPayloadLength(message);
+        synchronized (this) {
+            Slot slot = conflated ? conflatedSlots.get(topic) : null;
+            if (slot != null) {
+                long maxBytes = client.getMaxOfflineQueueBytes();
+                if (maxBytes > 0 && bytes.get() - slot.length + length > maxBytes) {
+                    return false;
+                }
+                bytes.addAndGet(length - slot.length);
+                superseded = slot.message;
+                slot.message = message;
+                slot.length = length;
+            } else {
+                if (!AzeroIotBoundedQueue.reserve(client, count, bytes, length)) {
+                    return false;
+                }
+                slot = new Slot(message, length);
+                slots.add(slot);
+                if (conflated) {
+                    conflatedSlots.put(topic, slot);
+                }
+            }
+        }
+        if (superseded != null) {
+            onSuperseded(superseded);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a message back to the head of the queue. If the topic is conflated
+     * and a newer message for it is already queued, the message is dropped
+     * instead, as superseded by the newer one.
+     *
+     * @param message
+     *            the message to be queued
+     * @return true, if the message was queued or dropped, or false if the
+     *         queue is full
+     */
+    @Override
+    public boolean offerFirst(AZEROIotMessage message) {
+        String topic = message.getTopic();
+        boolean conflated = client.isConflatedTopic(topic);
+        int length = AzeroIotBoundedQueue.getPayloadLength(message);
+        synchronized (this) {
+            if (!conflated || !conflatedSlots.containsKey(topic)) {
+                if (!AzeroIotBoundedQueue.reserve(client, count, bytes, length)) {
+                    return false;
+                }
+                Slot slot = new Slot(message, length);
+                slots.addFirst(slot);
+                if (conflated) {
+                    conflatedSlots.put(topic, slot);
+                }
+                return true;
+            }
+        }
+        onSuperseded(message);
+        return true;
+    }
+
+    /**
+     * Removes the message at the head of the queue, dropping expired messages.
+     *
+     * @return the message, or null if the queue is empty
+     */
+    @Override
+    public AZEROIotMessage poll() {
+        while (true) {
+            AZEROIotMessage message = pollSlot();
+            if (message == null || !message.isExpired()) {
+                return message;
+            }
+            onExpired(message);
+        }
+    }
+
+    private synchronized AZEROIotMessage pollSlot() {
+        Slot slot = slots.poll();
+        if (slot == null) {
+            return null;
+        }
+        count.decrementAndGet();
+        bytes.addAndGet(-slot.length);
+        AZEROIotMessage message = slot.message;
+        if (conflatedSlots.get(message.getTopic()) == slot) {
+            conflatedSlots.remove(message.getTopic());
+        }
+        return message;
+    }
+
+    /**
+     * Gets the number of queued messages.
+     *
+     * @return the queue size
+     */
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Gets the total payload size of the queued messages.
+     *
+     * @return the number of bytes
+     */
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Gets a snapshot of the queued messages, in the order they are to be
+     * published.
+     *
+     * @return the queued messages
+     */
+    @Override
+    public synchronized List<AZEROIotMessage> getMessages() {
+        List<AZEROIotMessage> result = new ArrayList<>(slots.size());
+        for (Slot slot : slots) {
+            result.add(slot.message);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of queued messages that were replaced by newer messages
+     * for the same conflated topic.
+     *
+     * @return the number of superseded messages
+     */
+    public long getSupersededCount() {
+        return supersededCount.get();
+    }
+
+    /**
+     * Accounts for a queued message replaced by a newer one, and fails it.
+     *
+     * @param message
+     *            the superseded message, or null if it's no longer available
+     */
+    protected void onSuperseded(AZEROIotMessage message) {
+        supersededCount.incrementAndGet();
+        if (message != null) {
+            fail(message, "Superseded by a newer message for the conflated topic");
+        }
+    }
+
+    /**
+     * Accounts for a queued message dropped because its time to live has
+     * elapsed, and fails it.
+     *
+     * @param message
+     *            the expired message
+     */
+    protected void onExpired(AZEROIotMessage message) {
+        client.onMessageExpired(message.getTopic());
+        fail(message, "Message expired in the offline queue");
+    }
+
+    private void fail(final AZEROIotMessage message, String errorMessage) {
+        message.setErrorMessage(errorMessage);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    message.onFailure();
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Unexpected error from message callback", e);
+                }
+            }
+        };
+        try {
+            client.scheduleTask(task);
+        } catch (AzeroIotRuntimeException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * A position in the queue, whose message can be replaced.
+     */
+    private static class Slot {
+        private AZEROIotMessage message;
+        private int length;
+
+        private Slot(AZEROIotMessage message, int length) {
+            this.message = message;
+            this.length = length;
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.azero.services.iot.client.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import com.azero.services.iot.client.AZEROIotDeflateCodec;
+import com.azero.services.iot.client.AZEROIotGzipCodec;
+import com.azero.services.iot.client.AZEROIotPayloadCodec;
+
+/**
+ * This class keeps the payload codecs configured per topic filter, and
+ * applies them to outbound and inbound payloads.
+ * <p>
+ * An encoded payload starts with a three-byte header: the magic bytes
+ * {@code 0xC0 0xDE}, followed by the codec ID. {@code 0xC0} never appears in
+ * valid UTF-8 text, so the header can't be confused with a JSON or text
+ * payload. Inbound payloads are only checked for the header once a codec has
+ * been added, so binary payloads of applications not using codecs are never
+ * touched, and only those from topics matching a topic filter with a codec
+ * are decoded. Decoding stops as soon as the decoded payload exceeds
+ * {@link AbstractAzeroIotClient#getMaxDecodedPayloadSize()}.
+ * </p>
+ */
+public class AzeroIotPayloadCodecs {
+
+    private static final Logger LOGGER = Logger.getLogger(AzeroIotPayloadCodecs.class.getName());
+
+    private static final byte MAGIC_0 = (byte) 0xC0;
+    private static final byte MAGIC_1 = (byte) 0xDE;
+    private static final int HEADER_LENGTH = 3;
+
+    /** The client providing topic filter matching. */
+    private final AbstractAzeroIotClient client;
+
+    /** The codecs used for publishing and receiving, indexed by topic filter. */
+    private final ConcurrentMap<String, AZEROIotPayloadCodec> encoders = new ConcurrentHashMap<>();
+
+    /** The codecs used for receiving, indexed by codec ID. */
+    private final ConcurrentMap<Integer, AZEROIotPayloadCodec> decoders = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new set of payload codecs.
+     *
+     * @param client
+     *            the client providing topic filter matching
+     */
+    public AzeroIotPayloadCodecs(AbstractAzeroIotClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Adds the codec for the given topic filter. Payloads from topics matching
+     * any topic filter with a codec are decoded with the codec carried in
+     * their header.
+     *
+     * @param topicFilter
+     *            the topic filter of the messages to be encoded
+     * @param codec
+     *            the codec
+     */
+    public void add(String topicFilter, AZEROIotPayloadCodec codec) {
+        if (decoders.isEmpty()) {
+            // the built-in codecs without dictionary can always be decoded
+            decoders.put(AZEROIotDeflateCodec.DEFAULT_ID, new AZEROIotDeflateCodec());
+            decoders.put(AZEROIotGzipCodec.ID, new AZEROIotGzipCodec());
+        }
+        decoders.put(codec.getId(), codec);
+        encoders.put(topicFilter, codec);
+    }
+
+    /**
+     * Removes the codec for the given topic filter. Payloads from matching
+     * topics are no longer decoded unless another topic filter matches them.
+     *
+     * @param topicFilter
+     *            the topic filter
+     */
+    public void remove(String topicFilter) {
+        encoders.remove(topicFilter);
+    }
+
+    /**
+     * Encodes the payload with the codec configured for the topic, if any. The
+     * original payload is returned if encoding doesn't make it smaller.
+     *
+     * @param topic
+     *            the topic to be published to
+     * @param payload
+     *            the payload
+     * @return the encoded payload, or the original payload if there's no codec
+     *         for the topic
+     * @throws IOException
+     *             exception thrown if the payload can't be encoded
+     */
+    public byte[] encode(String topic, byte[] payload) throws IOException {
+        if (encoders.isEmpty() || payload == null || payload.length == 0) {
+            return payload;
+        }
+        AZEROIotPayloadCodec codec = findCodec(topic);
+        if (codec == null) {
+            return payload;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2 + HEADER_LENGTH);
+        out.write(MAGIC_0);
+        out.write(MAGIC_1);
+        out.write(codec.getId());
+        codec.encode(payload, out);
+        if (out.size() >= payload.length) {
+            return payload;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the payload if it carries the header of a known codec and the
+     * topic matches a topic filter with a codec.
+     *
+     * @param topic
+     *            the topic the payload was received from
+     * @param payload
+     *            the payload received
+     * @return the decoded payload, or the original payload if it's not encoded
+     * @throws IOException
+     *             exception thrown if the payload can't be decoded, or if the
+     *             decoded payload exceeds the maximum decoded payload size
+     */
+    public byte[] decode(String topic, byte[] payload) throws IOException {
+        if (encoders.isEmpty() || payload == null || payload.length < HEADER_LENGTH || payload[0] != MAGIC_0
+                || payload[1] != MAGIC_1 || findCodec(topic) == null) {
+            return payload;
+        }
+        int id = payload[2] & 0xFF;
+        AZEROIotPayloadCodec codec = decoders.get(id);
+        if (codec == null) {
+            LOGGER.warning("Unknown payload codec " + id + ", passing the payload through");
+            return payload;
+        }
+
+        int maxSize = client.getMaxDecodedPayloadSize();
+        BoundedOutputStream out = new BoundedOutputStream(Math.min(payload.length * 4, maxSize), maxSize);
+        codec.decode(payload, HEADER_LENGTH, payload.length - HEADER_LENGTH, out);
+        return out.toByteArray();
+    }
+
+    private AZEROIotPayloadCodec findCodec(String topic) {
+        AZEROIotPayloadCodec codec = encoders.get(topic);
+        if (codec != null) {
+            return codec;
+        }
+        for (ConcurrentMap.Entry<String, AZEROIotPayloadCodec> entry : encoders.entrySet()) {
+            if (client.topicFilterMatch(entry.getKey(), topic)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * An in-memory output stream that fails once more than the given number of
+     * bytes are written, so that decoding is aborted early.
+     */
+    private static class BoundedOutputStream extends OutputStream {
+        private final ByteArrayOutputStream buffer;
+        private final int maxSize;
+
+        private BoundedOutputStream(int initialSize, int maxSize) {
+            this.buffer = new ByteArrayOutputStream(Math.max(0, initialSize));
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkSize(1);
+            buffer.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkSize(len);
+            buffer.write(b, off, len);
+        }
+
+        private void checkSize(int length) throws IOException {
+            if (length > maxSize - buffer.size()) {
+                throw new IOException("Decoded payload exceeds " + maxSize + " bytes");
+            }
+        }
+
+        private byte[] toByteArray() {
+            return buffer.toByteArray();
+        }
+    }
+
+}
@@ -0,0 +1,345 @@
+package com.azero.services.iot.client.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotQos;
+
+/**
+ * This class is an offline publish queue kept on disk in an
+ * {@link AzeroIotSegmentLog}, so that queued messages survive a restart of the
+ * application and the queue can be sized in bytes well beyond what fits in
+ * memory.
+ * <p>
+ * Only the topic, QoS, payload and expiry time of a message are persisted.
+ * Expired records are dropped by reading their expiry time and topic only,
+ * without rebuilding the message. Messages
+ * without callbacks, such as fire-and-forget publishes and messages recovered
+ * from a previous run, are read back from the log when they are polled and
+ * hold no memory while queued. Messages overriding the callbacks are also kept
+ * in memory, as they are, until they are polled, so that their callbacks are
+ * still invoked within the same run.
+ * </p>
+ * <p>
+ * The directory is locked until the queue is closed. Closing the queue keeps
+ * the records of messages without callbacks in the log for the next time it's
+ * opened, and hands back the messages with callbacks, see {@link #close()}.
+ * </p>
+ * <p>
+ * Conflated topics are supported as in the in-memory queue, except that the
+ * newer message is appended at the tail of the queue, as records in the log
+ * can't be replaced in place. When the queue is opened, the latest record of
+ * each conflated topic is found again, and older records for the same topic,
+ * e.g. left by a crash before they were removed, are dropped.
+ * </p>
+ * <p>
+ * Messages put back at the head of the queue, see
+ * {@link #offerFirst(AZEROIotMessage)}, are held in memory until they are
+ * polled again, as records can't be inserted at the head of the log.
+ * </p>
+ */
+public class AzeroIotPersistentOfflineQueue extends AzeroIotOfflineQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(AzeroIotPersistentOfflineQueue.class.getName());
+
+    private final AzeroIotSegmentLog log;
+
+    /** The queued messages with callbacks, keyed by their log position. */
+    private final Map<Long, AZEROIotMessage> messages = new HashMap<>();
+
+    /** The messages put back at the head of the queue. */
+    private final Deque<AZEROIotMessage> requeued = new ArrayDeque<>();
+
+    /** The log positions of the queued messages of conflated topics. */
+    private final Map<String, Long> conflatedPositions = new HashMap<>();
+
+    /**
+     * Opens the queue in the given directory, recovering the messages left
+     * from a previous run.
+     *
+     * @param client
+     *            the client the queue belongs to
+     * @param directory
+     *            the directory of the segment files
+     * @throws IOException
+     *             exception thrown if the segment files can't be opened, or
+     *             the directory is in use by another queue
+     */
+    public AzeroIotPersistentOfflineQueue(AbstractAzeroIotClient client, File directory) throws IOException {
+        super(client);
+        this.log = new AzeroIotSegmentLog(directory, client.getPersistentQueueSegmentSize(),
+                client.getPersistentQueueCapacity(), client.isPersistentQueueSync());
+        if (log.getRecordCount() > 0) {
+            recoverConflatedPositions();
+            LOGGER.info("Recovered " + log.getRecordCount() + " queued messages from " + directory);
+        }
+    }
+
+    private void recoverConflatedPositions() {
+        for (long position : log.getPositions()) {
+            String topic = decodeTopic(log.read(position));
+            if (!client.isConflatedTopic(topic)) {
+                continue;
+            }
+            Long previous = conflatedPositions.put(topic, position);
+            if (previous != null) {
+                // superseded before the previous run ended
+                log.remove(previous);
+            }
+        }
+    }
+
+    @Override
+    public boolean offer(AZEROIotMessage message) {
+        String topic = message.getTopic();
+        boolean conflated = client.isConflatedTopic(topic);
+        byte[] record = encode(message);
+        boolean superseded = false;
+        AZEROIotMessage supersededMessage = null;
+        synchronized (this) {
+            if (!log.isOpen()) {
+                return false;
+            }
+            long position;
+            try {
+                position = log.append(record);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to append message to the offline queue", e);
+                return false;
+            }
+            if (position < 0) {
+                return false;
+            }
+            if (message.getClass() != AZEROIotMessage.class) {
+                // kept for its callbacks
+                messages.put(position, message);
+            }
+            if (conflated) {
+                Long previous = conflatedPositions.put(topic, position);
+                if (previous != null) {
+                    supersededMessage = messages.remove(previous);
+                    log.remove(previous);
+                    superseded = true;
+                } else {
+                    supersededMessage = removeRequeued(topic);
+                    superseded = (supersededMessage != null);
+                }
+            }
+        }
+        if (superseded) {
+            onSuperseded(supersededMessage);
+        }
+        return true;
+    }
+
+    /**
+     * Puts a message back at the head of the queue. It's held in memory until
+     * it's polled again, and doesn't count against the capacity of the queue.
+     * If the topic is conflated and a newer message for it is already queued,
+     * the message is dropped instead, as superseded by the newer one.
+     *
+     * @param message
+     *            the message to be queued
+     * @return true, if the message was queued or dropped, or false if the
+     *         queue is closed
+     */
+    @Override
+    public boolean offerFirst(AZEROIotMessage message) {
+        String topic = message.getTopic();
+        synchronized (this) {
+            if (!log.isOpen()) {
+                return false;
+            }
+            if (!client.isConflatedTopic(topic)
+                    || (!conflatedPositions.containsKey(topic) && !isRequeued(topic))) {
+                requeued.addFirst(message);
+                return true;
+            }
+        }
+        onSuperseded(message);
+        return true;
+    }
+
+    @Override
+    public AZEROIotMessage poll() {
+        while (true) {
+            AZEROIotMessage expired;
+            synchronized (this) {
+                if (!log.isOpen()) {
+                    return null;
+                }
+                AZEROIotMessage message = requeued.poll();
+                if (message == null) {
+                    long position = log.head();
+                    if (position < 0) {
+                        return null;
+                    }
+                    byte[] record = log.read(position);
+                    log.remove(position);
+                    message = messages.remove(position);
+                    String topic = (message != null) ? message.getTopic() : decodeTopic(record);
+                    Long conflatedPosition = conflatedPositions.get(topic);
+                    if (conflatedPosition != null && conflatedPosition == position) {
+                        conflatedPositions.remove(topic);
+                    }
+                    long expiryTime = ByteBuffer.wrap(record).getLong();
+                    if (expiryTime == 0 || System.currentTimeMillis() < expiryTime) {
+                        return (message != null) ? message : decode(record, topic);
+                    }
+                    if (message == null) {
+                        client.onMessageExpired(topic);
+                        continue;
+                    }
+                } else if (!message.isExpired()) {
+                    return message;
+                }
+                expired = message;
+            }
+            onExpired(expired);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return log.isOpen() ? log.getRecordCount() + requeued.size() : 0;
+    }
+
+    /**
+     * Gets the total size of the queued records, including topics.
+     *
+     * @return the number of bytes
+     */
+    @Override
+    public synchronized long getBytes() {
+        if (!log.isOpen()) {
+            return 0;
+        }
+        long bytes = log.getRecordBytes();
+        for (AZEROIotMessage message : requeued) {
+            bytes += AzeroIotBoundedQueue.getPayloadLength(message);
+        }
+        return bytes;
+    }
+
+    /**
+     * Closes the queue, unlocking its directory. Records of messages without
+     * callbacks are kept in the log for the next time the queue is opened.
+     * Messages with callbacks are removed from the log and handed back
+     * instead, as their callbacks would be lost otherwise, and so are the
+     * messages put back at the head of the queue. Later offers fail, and the
+     * queue appears empty.
+     *
+     * @return the queued messages with callbacks, in the order they were to
+     *         be published
+     */
+    public synchronized List<AZEROIotMessage> close() {
+        if (!log.isOpen()) {
+            return new ArrayList<>();
+        }
+        List<AZEROIotMessage> result = new ArrayList<>(requeued);
+        requeued.clear();
+        for (long position : log.getPositions()) {
+            AZEROIotMessage message = messages.remove(position);
+            if (message != null) {
+                log.remove(position);
+                result.add(message);
+            }
+        }
+        conflatedPositions.clear();
+        log.close();
+        return result;
+    }
+
+    /**
+     * Gets a snapshot of the queued messages, in the order they are to be
+     * published. Messages without callbacks are read back from the log as new
+     * message objects.
+     *
+     * @return the queued messages
+     */
+    @Override
+    public synchronized List<AZEROIotMessage> getMessages() {
+        if (!log.isOpen()) {
+            return new ArrayList<>();
+        }
+        List<Long> positions = log.getPositions();
+        List<AZEROIotMessage> result = new ArrayList<>(requeued.size() + positions.size());
+        result.addAll(requeued);
+        for (long position : positions) {
+            AZEROIotMessage message = messages.get(position);
+            if (message == null) {
+                byte[] record = log.read(position);
+                message = decode(record, decodeTopic(record));
+            }
+            result.add(message);
+        }
+        return result;
+    }
+
+    private boolean isRequeued(String topic) {
+        for (AZEROIotMessage message : requeued) {
+            if (message.getTopic().equals(topic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private AZEROIotMessage removeRequeued(String topic) {
+        Iterator<AZEROIotMessage> iterator = requeued.iterator();
+        while (iterator.hasNext()) {
+            AZEROIotMessage message = iterator.next();
+            if (message.getTopic().equals(topic)) {
+                iterator.remove();
+                return message;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] encode(AZEROIotMessage message) {
+        byte[] topic = message.getTopic().getBytes(StandardCharsets.UTF_8);
+        byte[] payload = message.getPayloadArray();
+        int payloadLength = (payload == null) ? 0 : payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 2 + topic.length + 1 + payloadLength);
+        buffer.putLong(message.getExpiryTime());
+        buffer.putShort((short) topic.length);
+        buffer.put(topic);
+        buffer.put((byte) message.getQos().getValue());
+        if (payload != null) {
+            buffer.put(payload);
+        }
+        return buffer.array();
+    }
+
+    private static String decodeTopic(byte[] record) {
+        int topicLength = ByteBuffer.wrap(record, 8, 2).getShort() & 0xFFFF;
+        return new String(record, 10, topicLength, StandardCharsets.UTF_8);
+    }
+
+    private static AZEROIotMessage decode(byte[] record, String topic) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        long expiryTime = buffer.getLong();
+        int topicLength = buffer.getShort() & 0xFFFF;
+        buffer.position(10 + topicLength);
+        AZEROIotQos qos = AZEROIotQos.valueOf(buffer.get());
+        byte[] payload = new byte[buffer.remaining()];
+        buffer.get(payload);
+        AZEROIotMessage message = new AZEROIotMessage(topic, qos, payload, false);
+        message.setExpiryTime(expiryTime);
+        return message;
+    }
+
+}
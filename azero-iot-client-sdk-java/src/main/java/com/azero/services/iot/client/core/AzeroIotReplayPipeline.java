@@ -0,0 +1,324 @@
+package com.azero.services.iot.client.core;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.azero.services.iot.client.AZEROIotConnectionStatus;
+import com.azero.services.iot.client.AZEROIotException;
+import com.azero.services.iot.client.AZEROIotMessage;
+
+/**
+ * This class replays the offline queues of a connection once it's
+ * established. Queued subscribe requests are sent first, then unsubscribe
+ * requests, then publish requests, so that replayed publishes to topics the
+ * client subscribes to are received.
+ * <p>
+ * The replay is paced by a token bucket refilled at the offline replay rate of
+ * the client, and the number of replayed requests waiting for completion is
+ * capped at the offline replay in-flight limit. Requests sent by the
+ * application while the replay is in progress are not held back; they take
+ * their share of the replay rate instead, up to half of it, so that neither
+ * the backlog nor the live traffic starves the other.
+ * </p>
+ */
+public class AzeroIotReplayPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger(AzeroIotReplayPipeline.class.getName());
+
+    /** The interval in milliseconds between two rounds of the replay. */
+    private static final long REPLAY_INTERVAL = 100;
+
+    private final AzeroIotConnection connection;
+
+    /** The task running the rounds of the current replay. */
+    private Future<?> replayTask;
+
+    /** Whether a replay is in progress. */
+    private volatile boolean replaying;
+
+    /** The number of tokens available to the current round. */
+    private double tokens;
+
+    /** The time the tokens were last refilled, in nanoseconds. */
+    private long refillTime;
+
+    /**
+     * The number of requests replayed by the current replay waiting for
+     * completion. Each replay starts a new counter, so requests never
+     * completed by a lost connection don't hold up the next replay.
+     */
+    private volatile AtomicInteger inflight = new AtomicInteger();
+
+    /** The number of live requests sent since the last round. */
+    private final AtomicInteger liveRequests = new AtomicInteger();
+
+    /** The number of requests replayed by the current replay. */
+    private final AtomicLong replayedCount = new AtomicLong();
+
+    public AzeroIotReplayPipeline(AzeroIotConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Starts replaying the offline queues, unless they are empty.
+     */
+    public synchronized void start() {
+        stop();
+        if (getBacklog() == 0) {
+            return;
+        }
+        replaying = true;
+        inflight = new AtomicInteger();
+        replayedCount.set(0);
+        liveRequests.set(0);
+        tokens = getBurst(connection.getClient().getOfflineReplayRate());
+        refillTime = System.nanoTime();
+        replayTask = connection.getClient().scheduleRoutineTask(new Runnable() {
+            @Override
+            public void run() {
+                replay();
+            }
+        }, 0, REPLAY_INTERVAL);
+    }
+
+    /**
+     * Starts replaying the offline queues, unless a replay is already in
+     * progress or they are empty, e.g. when requests were queued while
+     * connected because too many of them were in flight.
+     */
+    public synchronized void resume() {
+        if (!replaying) {
+            start();
+        }
+    }
+
+    /**
+     * Stops the replay. Requests not yet replayed stay in the offline queues.
+     */
+    public synchronized void stop() {
+        replaying = false;
+        if (replayTask != null) {
+            replayTask.cancel(false);
+            replayTask = null;
+        }
+    }
+
+    /**
+     * Accounts for a request sent by the application while the replay is in
+     * progress.
+     */
+    public void onLiveRequest() {
+        if (replaying) {
+            liveRequests.incrementAndGet();
+        }
+    }
+
+    /**
+     * Checks if a replay is in progress.
+     *
+     * @return true, if the offline queues are being replayed
+     */
+    public boolean isReplaying() {
+        return replaying;
+    }
+
+    /**
+     * Gets the number of requests still waiting in the offline queues.
+     *
+     * @return the number of queued requests
+     */
+    public long getBacklog() {
+        return (long) connection.getOfflineSubscribeQueue().size() + connection.getOfflineUnsubscribeQueue().size()
+                + connection.getOfflinePublishQueue().size();
+    }
+
+    /**
+     * Gets the number of requests sent by the current or last replay.
+     *
+     * @return the number of replayed requests
+     */
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    /**
+     * Gets the number of replayed requests waiting for completion.
+     *
+     * @return the number of requests in flight
+     */
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    private synchronized void replay() {
+        if (!replaying) {
+            return;
+        }
+        AbstractAzeroIotClient client = connection.getClient();
+        int rate = client.getOfflineReplayRate();
+        int maxInflight = client.getOfflineReplayMaxInflight();
+
+        long now = System.nanoTime();
+        if (rate > 0) {
+            double refill = rate * (double) (now - refillTime) / TimeUnit.SECONDS.toNanos(1);
+            int live = liveRequests.getAndSet(0);
+            tokens = Math.min(tokens + refill - Math.min(live, refill / 2), getBurst(rate));
+        }
+        refillTime = now;
+
+        while (rate <= 0 || tokens >= 1) {
+            if (connection.getConnectionStatus() != AZEROIotConnectionStatus.CONNECTED) {
+                stop();
+                return;
+            }
+            if (maxInflight > 0 && inflight.get() >= maxInflight) {
+                return;
+            }
+            if (!replayNext()) {
+                return;
+            }
+            tokens--;
+        }
+    }
+
+    /**
+     * Replays the request at the head of the first non-empty offline queue.
+     *
+     * @return true, if the replay can go on
+     */
+    private boolean replayNext() {
+        AZEROIotMessage message;
+        int type;
+        if ((message = connection.getOfflineSubscribeQueue().poll()) != null) {
+            type = ReplayMessage.SUBSCRIBE;
+        } else if ((message = connection.getOfflineUnsubscribeQueue().poll()) != null) {
+            type = ReplayMessage.UNSUBSCRIBE;
+        } else if ((message = connection.getOfflinePublishQueue().poll()) != null) {
+            type = ReplayMessage.PUBLISH;
+        } else {
+            LOGGER.info("Offline queues replayed: " + replayedCount.get() + " requests");
+            stop();
+            return false;
+        }
+
+        ReplayMessage replayMessage = new ReplayMessage(message, inflight);
+        replayMessage.inflight.incrementAndGet();
+        try {
+            switch (type) {
+            case ReplayMessage.SUBSCRIBE:
+                connection.subscribeTopic(replayMessage);
+                break;
+            case ReplayMessage.UNSUBSCRIBE:
+                connection.unsubscribeTopic(replayMessage);
+                break;
+            default:
+                connection.publishMessage(replayMessage);
+            }
+            replayedCount.incrementAndGet();
+            return true;
+        } catch (AzeroIotRetryableException e) {
+            replayMessage.releaseSlot();
+            if (!requeue(type, message)) {
+                message.setErrorMessage("Offline queue is full");
+                onFailure(message);
+            }
+            if (connection.getConnectionStatus() == AZEROIotConnectionStatus.CONNECTED) {
+                // too many requests in flight, retried in the next round
+                return false;
+            }
+            // connection is lost, the rest is replayed on reconnect
+            stop();
+            return false;
+        } catch (AZEROIotException e) {
+            LOGGER.log(Level.WARNING, "Failed to replay queued request for " + message.getTopic(), e);
+            replayMessage.releaseSlot();
+            onFailure(message);
+            return true;
+        }
+    }
+
+    /**
+     * Puts a request that couldn't be replayed back at the head of its queue,
+     * so that the replay resumes in order.
+     */
+    private boolean requeue(int type, AZEROIotMessage message) {
+        switch (type) {
+        case ReplayMessage.SUBSCRIBE:
+            return connection.getOfflineSubscribeQueue().offerFirst(message);
+        case ReplayMessage.UNSUBSCRIBE:
+            return connection.getOfflineUnsubscribeQueue().offerFirst(message);
+        default:
+            return connection.getOfflinePublishQueue().offerFirst(message);
+        }
+    }
+
+    private static double getBurst(int rate) {
+        return Math.max(1, rate * REPLAY_INTERVAL / 1000.0);
+    }
+
+    private static void onFailure(AZEROIotMessage message) {
+        try {
+            message.onFailure();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Unexpected error from message callback", e);
+        }
+    }
+
+    /**
+     * A replayed request, which frees its in-flight slot on completion before
+     * passing the completion on to the queued request.
+     */
+    private static class ReplayMessage extends AZEROIotMessage {
+        private static final int SUBSCRIBE = 0;
+        private static final int UNSUBSCRIBE = 1;
+        private static final int PUBLISH = 2;
+
+        private final AZEROIotMessage message;
+        private final AtomicInteger inflight;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private ReplayMessage(AZEROIotMessage message, AtomicInteger inflight) {
+            super(message.getTopic(), message.getQos(), message.getPayloadArray(), false);
+            this.timeToLive = message.getTimeToLive();
+            this.expiryTime = message.getExpiryTime();
+            this.message = message;
+            this.inflight = inflight;
+        }
+
+        private void releaseSlot() {
+            if (released.compareAndSet(false, true)) {
+                inflight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void onSuccess() {
+            releaseSlot();
+            message.onSuccess();
+        }
+
+        @Override
+        public void onFailure() {
+            releaseSlot();
+            if (errorCode != null) {
+                message.setErrorCode(errorCode);
+            }
+            if (errorMessage != null) {
+                message.setErrorMessage(errorMessage);
+            }
+            message.onFailure();
+        }
+
+        @Override
+        public void onTimeout() {
+            releaseSlot();
+            message.onTimeout();
+        }
+    }
+
+}
@@ -0,0 +1,544 @@
+package com.azero.services.iot.client.core;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * This class is an append-only log of records, stored in a directory as a
+ * sequence of fixed-size, memory-mapped segment files.
+ * <p>
+ * Each record has a state byte, its length, and the CRC32 of its data. The
+ * state byte is written last, as the commit marker of the record, so a record
+ * is never read back unless it was completely written. Removing a record only
+ * marks it as consumed. A segment is deleted once all its records have been
+ * consumed, which compacts the log without copying records around.
+ * </p>
+ * <p>
+ * Records are read back in the order they were appended, starting with the
+ * records left over from a previous process when the log is opened. Writes to
+ * the mapped segments survive a crash of the process; surviving a crash of the
+ * operating system is subject to it flushing the pages, unless the log is
+ * opened with sync enabled, in which case each append is forced to the storage
+ * device before it returns. Removals are never forced, so after a crash of the
+ * operating system a removed record may be read back again.
+ * </p>
+ * <p>
+ * The directory is locked while the log is open, so it can't be shared by
+ * two logs, whether in the same process or not.
+ * </p>
+ */
+public class AzeroIotSegmentLog {
+
+    private static final Logger LOGGER = Logger.getLogger(AzeroIotSegmentLog.class.getName());
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final String LOCK_FILE = "lock";
+
+    /** The record header: state byte, data length, and CRC32 of the data. */
+    private static final int RECORD_HEADER_LENGTH = 9;
+
+    private static final byte STATE_EMPTY = 0;
+    private static final byte STATE_COMMITTED = 1;
+    private static final byte STATE_CONSUMED = 2;
+
+    private final File directory;
+    private final int segmentSize;
+    private final long capacity;
+    private final boolean sync;
+    private final RandomAccessFile lockFile;
+    private final FileLock lock;
+    private boolean closed;
+
+    /** The segments keyed by their sequence number. */
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    /** The segment records are appended to. */
+    private Segment writeSegment;
+
+    /** The position before which all records have been consumed. */
+    private long readSequence;
+    private int readOffset;
+
+    private int recordCount;
+    private long recordBytes;
+
+    /**
+     * Opens a log, recovering the records left in the directory.
+     *
+     * @param directory
+     *            the directory of the segment files
+     * @param segmentSize
+     *            the size of a segment file in bytes
+     * @param capacity
+     *            the maximum total size of the segment files in bytes
+     * @throws IOException
+     *             exception thrown if the segment files can't be opened, or
+     *             the directory is locked by another log
+     */
+    public AzeroIotSegmentLog(File directory, int segmentSize, long capacity) throws IOException {
+        this(directory, segmentSize, capacity, false);
+    }
+
+    /**
+     * Opens a log, recovering the records left in the directory.
+     *
+     * @param directory
+     *            the directory of the segment files
+     * @param segmentSize
+     *            the size of a segment file in bytes
+     * @param capacity
+     *            the maximum total size of the segment files in bytes
+     * @param sync
+     *            true to force each append to the storage device
+     * @throws IOException
+     *             exception thrown if the segment files can't be opened, or
+     *             the directory is locked by another log
+     */
+    public AzeroIotSegmentLog(File directory, int segmentSize, long capacity, boolean sync) throws IOException {
+        if (segmentSize <= RECORD_HEADER_LENGTH || capacity < segmentSize) {
+            throw new IllegalArgumentException("Invalid segment size or capacity");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.capacity = capacity;
+        this.sync = sync;
+
+        lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+        FileLock directoryLock;
+        try {
+            directoryLock = lockFile.getChannel().tryLock();
+        } catch (IOException | OverlappingFileLockException e) {
+            directoryLock = null;
+        }
+        if (directoryLock == null) {
+            lockFile.close();
+            throw new IOException("Segment log directory is in use: " + directory);
+        }
+        lock = directoryLock;
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                long sequence;
+                try {
+                    sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (file.length() != segmentSize) {
+                    LOGGER.warning("Ignoring segment file of a different size: " + file);
+                    continue;
+                }
+                Segment segment = openSegment(sequence);
+                segment.recover();
+                segments.put(sequence, segment);
+            }
+        }
+
+        // fully consumed segments are left over from compaction that didn't
+        // complete, except for the last one, which is still being appended to
+        while (segments.size() > 1 && segments.firstEntry().getValue().liveCount == 0) {
+            deleteSegment(segments.firstEntry().getValue());
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, openSegment(0));
+        }
+        writeSegment = segments.lastEntry().getValue();
+        readSequence = segments.firstKey();
+        for (Segment segment : segments.values()) {
+            recordCount += segment.liveCount;
+            recordBytes += segment.liveBytes;
+        }
+    }
+
+    /**
+     * Appends a record to the log.
+     *
+     * @param data
+     *            the record data
+     * @return the position of the record, or -1 if the log is full
+     * @throws IOException
+     *             exception thrown if a new segment can't be created
+     */
+    public synchronized long append(byte[] data) throws IOException {
+        checkIsOpen();
+        int length = RECORD_HEADER_LENGTH + data.length;
+        if (length > segmentSize) {
+            return -1;
+        }
+        if (writeSegment.end + length > segmentSize) {
+            if ((long) (segments.size() + 1) * segmentSize > capacity) {
+                return -1;
+            }
+            Segment previous = writeSegment;
+            writeSegment = openSegment(previous.sequence + 1);
+            segments.put(writeSegment.sequence, writeSegment);
+            if (previous.liveCount == 0) {
+                deleteSegment(previous);
+            }
+        }
+
+        MappedByteBuffer buffer = writeSegment.buffer;
+        int offset = writeSegment.end;
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        buffer.putInt(offset + 1, data.length);
+        buffer.putInt(offset + 5, (int) crc.getValue());
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset + RECORD_HEADER_LENGTH);
+        slice.put(data);
+        int next = offset + length;
+        if (next + RECORD_HEADER_LENGTH <= segmentSize) {
+            // records truncated on recovery may still be there
+            buffer.put(next, STATE_EMPTY);
+        }
+        // the commit marker goes last
+        buffer.put(offset, STATE_COMMITTED);
+        if (sync) {
+            buffer.force();
+        }
+
+        writeSegment.end += length;
+        writeSegment.liveCount++;
+        writeSegment.liveBytes += data.length;
+        recordCount++;
+        recordBytes += data.length;
+        return toPosition(writeSegment.sequence, offset);
+    }
+
+    /**
+     * Gets the position of the oldest record not yet removed.
+     *
+     * @return the position of the record, or -1 if the log is empty
+     */
+    public synchronized long head() {
+        checkIsOpen();
+        while (true) {
+            Map.Entry<Long, Segment> entry = segments.ceilingEntry(readSequence);
+            if (entry == null) {
+                return -1;
+            }
+            Segment segment = entry.getValue();
+            if (segment.sequence != readSequence) {
+                readSequence = segment.sequence;
+                readOffset = 0;
+            }
+            if (readOffset < segment.end) {
+                if (segment.buffer.get(readOffset) == STATE_COMMITTED) {
+                    return toPosition(readSequence, readOffset);
+                }
+                readOffset += RECORD_HEADER_LENGTH + segment.buffer.getInt(readOffset + 1);
+                continue;
+            }
+            if (segment == writeSegment) {
+                return -1;
+            }
+            readSequence++;
+            readOffset = 0;
+        }
+    }
+
+    /**
+     * Gets the positions of all the records not yet removed, in the order they
+     * were appended.
+     *
+     * @return the positions of the records
+     */
+    public synchronized List<Long> getPositions() {
+        checkIsOpen();
+        List<Long> positions = new ArrayList<>(recordCount);
+        for (Segment segment : segments.values()) {
+            int offset = 0;
+            while (offset < segment.end) {
+                if (segment.buffer.get(offset) == STATE_COMMITTED) {
+                    positions.add(toPosition(segment.sequence, offset));
+                }
+                offset += RECORD_HEADER_LENGTH + segment.buffer.getInt(offset + 1);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Reads a record.
+     *
+     * @param position
+     *            the position of the record
+     * @return the record data
+     */
+    public synchronized byte[] read(long position) {
+        checkIsOpen();
+        Segment segment = getSegment(position);
+        int offset = toOffset(position);
+        byte[] data = new byte[segment.buffer.getInt(offset + 1)];
+        ByteBuffer slice = segment.buffer.duplicate();
+        slice.position(offset + RECORD_HEADER_LENGTH);
+        slice.get(data);
+        return data;
+    }
+
+    /**
+     * Removes a record by marking it as consumed, and deletes its segment if
+     * it has no more records.
+     *
+     * @param position
+     *            the position of the record
+     */
+    public synchronized void remove(long position) {
+        checkIsOpen();
+        Segment segment = getSegment(position);
+        int offset = toOffset(position);
+        if (segment.buffer.get(offset) != STATE_COMMITTED) {
+            return;
+        }
+        int length = segment.buffer.getInt(offset + 1);
+        segment.buffer.put(offset, STATE_CONSUMED);
+        segment.liveCount--;
+        segment.liveBytes -= length;
+        recordCount--;
+        recordBytes -= length;
+        if (segment.liveCount == 0 && segment != writeSegment) {
+            deleteSegment(segment);
+        }
+    }
+
+    /**
+     * Gets the number of records not yet removed.
+     *
+     * @return the number of records
+     */
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Gets the total data size of the records not yet removed.
+     *
+     * @return the number of bytes
+     */
+    public synchronized long getRecordBytes() {
+        return recordBytes;
+    }
+
+    /**
+     * Gets the number of segment files.
+     *
+     * @return the number of segments
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Forces the records appended so far to the storage device.
+     */
+    public synchronized void force() {
+        checkIsOpen();
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+        }
+    }
+
+    /**
+     * Closes the log, forcing its records to the storage device, releasing
+     * the segment mappings and unlocking the directory. The records are kept
+     * for the next time the log is opened.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            releaseMapping(segment.buffer);
+        }
+        segments.clear();
+        writeSegment = null;
+        try {
+            lock.release();
+            lockFile.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to unlock segment log directory " + directory, e);
+        }
+    }
+
+    /**
+     * Checks if the log is open.
+     *
+     * @return true, if the log is open
+     */
+    public synchronized boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Releases a mapping right away instead of when it's garbage collected.
+     * The mapping must not be accessed afterwards. It's left to the garbage
+     * collector if the JVM doesn't allow it.
+     *
+     * @param mapping
+     *            the mapping to be released
+     */
+    public static void releaseMapping(MappedByteBuffer mapping) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                invokeCleaner = null;
+            }
+            if (invokeCleaner != null) {
+                // Java 9 and later
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), mapping);
+            } else {
+                Method cleanerMethod = mapping.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(mapping);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Failed to release mapping, leaving it to the garbage collector", e);
+        }
+    }
+
+    private void checkIsOpen() {
+        if (closed) {
+            throw new IllegalStateException("Segment log is closed");
+        }
+    }
+
+    private Segment getSegment(long position) {
+        Segment segment = segments.get(position >>> 32);
+        if (segment == null) {
+            throw new IllegalArgumentException("No segment for position " + position);
+        }
+        return segment;
+    }
+
+    private Segment openSegment(long sequence) throws IOException {
+        File file = new File(directory, String.format("%020d", sequence) + SEGMENT_SUFFIX);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(segmentSize);
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            return new Segment(sequence, file, buffer);
+        }
+    }
+
+    private void deleteSegment(Segment segment) {
+        segments.remove(segment.sequence);
+        releaseMapping(segment.buffer);
+        // on platforms that don't allow deleting mapped files, the file is
+        // left to be deleted when the log is opened again should releasing
+        // the mapping fail
+        if (!segment.file.delete()) {
+            LOGGER.fine("Failed to delete segment file " + segment.file);
+        }
+    }
+
+    private static long toPosition(long sequence, int offset) {
+        return (sequence << 32) | offset;
+    }
+
+    private static int toOffset(long position) {
+        return (int) position;
+    }
+
+    /**
+     * A segment file and its records.
+     */
+    private class Segment {
+        private final long sequence;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int end;
+        private int liveCount;
+        private long liveBytes;
+
+        private Segment(long sequence, File file, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Scans the records up to the first one that is not committed or
+         * consumed, which is where appending continues.
+         */
+        private void recover() {
+            int offset = 0;
+            CRC32 crc = new CRC32();
+            while (offset + RECORD_HEADER_LENGTH <= segmentSize) {
+                byte state = buffer.get(offset);
+                if (state != STATE_COMMITTED && state != STATE_CONSUMED) {
+                    break;
+                }
+                int length = buffer.getInt(offset + 1);
+                if (length < 0 || length > segmentSize - offset - RECORD_HEADER_LENGTH) {
+                    break;
+                }
+                if (state == STATE_COMMITTED) {
+                    byte[] data = new byte[length];
+                    ByteBuffer slice = buffer.duplicate();
+                    slice.position(offset + RECORD_HEADER_LENGTH);
+                    slice.get(data);
+                    crc.reset();
+                    crc.update(data);
+                    if ((int) crc.getValue() != buffer.getInt(offset + 5)) {
+                        LOGGER.warning("Corrupted record in " + file + " at " + offset + ", truncating");
+                        break;
+                    }
+                    liveCount++;
+                    liveBytes += length;
+                }
+                offset += RECORD_HEADER_LENGTH + length;
+            }
+            end = offset;
+            if (end + RECORD_HEADER_LENGTH <= segmentSize) {
+                // clear what a torn write may have left behind
+                buffer.put(end, STATE_EMPTY);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+package com.azero.services.iot.client.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.azero.services.iot.client.AZEROIotTopic;
+
+/**
+ * This class is a bounded LRU cache mapping concrete topics to the list of
+ * subscriptions matching them, so that messages arriving on a stable set of
+ * topics don't have to be matched against the subscriptions every time.
+ * <p>
+ * The cache must be invalidated whenever the subscriptions change. Each
+ * invalidation starts a new generation, and results computed against an older
+ * generation are never cached, so a lookup can't return subscriptions that
+ * have since been removed.
+ * </p>
+ * <p>
+ * As every lookup updates the access order, the entries are split into
+ * segments by topic hash, each guarded by its own lock, so lookups for
+ * different topics rarely contend. The LRU order is kept per segment, which
+ * means the least recently used topic of the segment, rather than of the whole
+ * cache, is evicted when a segment is full.
+ * </p>
+ */
+public class AzeroIotTopicMatchCache {
+
+    /** The maximum number of segments. */
+    private static final int MAX_SEGMENTS = 16;
+
+    /** The minimum number of topics per segment before splitting further. */
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+
+    /** The maximum number of topics to be cached. */
+    private final int capacity;
+
+    /** The cached entries in access order, one map per segment. */
+    private final Segment[] segments;
+
+    /** The generation of the subscriptions the cached entries belong to. */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** The number of lookups served from the cache. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** The number of lookups not found in the cache. */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Instantiates a new cache.
+     *
+     * @param capacity
+     *            the maximum number of topics to be cached
+     */
+    public AzeroIotTopicMatchCache(final int capacity) {
+        this.capacity = capacity;
+        // a power of two, so that the segment can be selected by masking
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, capacity / MIN_SEGMENT_CAPACITY)));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // the segments share the capacity, with the remainder going to the
+            // first ones
+            segments[i] = new Segment(capacity / count + ((i < capacity % count) ? 1 : 0));
+        }
+    }
+
+    /**
+     * Gets the cached subscriptions for the given topic.
+     *
+     * @param topic
+     *            the topic of an inbound message
+     * @return the matching subscriptions, or null if the topic is not cached
+     */
+    public List<AZEROIotTopic> get(String topic) {
+        Segment segment = segmentFor(topic);
+        List<AZEROIotTopic> matches;
+        synchronized (segment) {
+            matches = segment.get(topic);
+        }
+        if (matches == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return matches;
+    }
+
+    /**
+     * Caches the subscriptions for the given topic, unless the cache has been
+     * invalidated since the given generation was read.
+     *
+     * @param topic
+     *            the topic of an inbound message
+     * @param matches
+     *            the matching subscriptions
+     * @param matchGeneration
+     *            the generation read before the subscriptions were matched
+     * @return the cached, read-only list of matching subscriptions
+     */
+    public List<AZEROIotTopic> put(String topic, List<AZEROIotTopic> matches, long matchGeneration) {
+        List<AZEROIotTopic> readOnly = Collections.unmodifiableList(matches);
+        Segment segment = segmentFor(topic);
+        synchronized (segment) {
+            // invalidate() bumps the generation before clearing each segment,
+            // so an entry can't be added to a segment after it was cleared
+            // unless it belongs to the new generation
+            if (matchGeneration == generation.get()) {
+                segment.put(topic, readOnly);
+            }
+        }
+        return readOnly;
+    }
+
+    /**
+     * Gets the current generation, which must be read before matching the
+     * subscriptions for a topic that is to be cached.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Removes all the cached entries and starts a new generation.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private Segment segmentFor(String topic) {
+        int hash = topic.hashCode();
+        // spread the higher bits as the segment count is small
+        hash ^= (hash >>> 16);
+        return segments[hash & (segments.length - 1)];
+    }
+
+    @java.lang.SuppressWarnings("all")
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Gets the number of lookups served from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of lookups not found in the cache.
+     *
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * A segment of the cache holding its entries in access order.
+     */
+    private static class Segment extends LinkedHashMap<String, List<AZEROIotTopic>> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<AZEROIotTopic>> eldest) {
+            return size() > capacity;
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.azero.services.iot.client.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.azero.services.iot.client.AZEROIotTopic;
+
+/**
+ * This class indexes subscriptions by their topic filters, one trie node per
+ * topic level, so that all the subscriptions matching an inbound topic can be
+ * resolved in time proportional to the depth of the topic rather than the
+ * number of subscriptions.
+ * <p>
+ * Wildcards are stored as regular child nodes named {@code +} and {@code #}.
+ * Lookups are lock-free and can run concurrently with updates; updates are
+ * serialized so that empty branches can be pruned safely.
+ * </p>
+ */
+public class AzeroIotTopicTrie {
+
+    /** The single-level wildcard. */
+    private static final String SINGLE_LEVEL_WILDCARD = "+";
+
+    /** The multi-level wildcard. */
+    private static final String MULTI_LEVEL_WILDCARD = "#";
+
+    /** The topic level separator. */
+    private static final char LEVEL_SEPARATOR = '/';
+
+    /** The root node, representing the level above the first topic level. */
+    private final Node root = new Node();
+
+    /**
+     * Adds or replaces the subscription for the given topic filter.
+     *
+     * @param topicFilter
+     *            the topic filter of the subscription
+     * @param topic
+     *            the subscription to be invoked for matching messages
+     */
+    public synchronized void put(String topicFilter, AZEROIotTopic topic) {
+        Node node = root;
+        int start = 0;
+        while (start <= topicFilter.length()) {
+            int end = levelEnd(topicFilter, start);
+            String level = topicFilter.substring(start, end);
+            Node child = node.children.get(level);
+            if (child == null) {
+                child = new Node();
+                node.children.put(level, child);
+            }
+            node = child;
+            start = end + 1;
+        }
+        node.topic = topic;
+    }
+
+    /**
+     * Removes the subscription for the given topic filter. Trie nodes that no
+     * longer lead to any subscription are pruned.
+     *
+     * @param topicFilter
+     *            the topic filter of the subscription
+     * @return the subscription removed, or null if there was none
+     */
+    public synchronized AZEROIotTopic remove(String topicFilter) {
+        return remove(root, topicFilter, 0);
+    }
+
+    /**
+     * Removes all the subscriptions.
+     */
+    public synchronized void clear() {
+        root.children.clear();
+        root.topic = null;
+    }
+
+    /**
+     * Finds all the subscriptions whose topic filter matches the given topic.
+     *
+     * @param topic
+     *            the topic of an inbound message
+     * @return the list of matching subscriptions, which is empty if there's no
+     *         match
+     */
+    public List<AZEROIotTopic> match(String topic) {
+        List<AZEROIotTopic> matches = new ArrayList<>(2);
+        if (topic != null) {
+            match(root, topic, 0, matches);
+        }
+        return matches;
+    }
+
+    private void match(Node node, String topic, int start, List<AZEROIotTopic> matches) {
+        // wildcards at the first level don't match topics starting with '$'
+        boolean reserved = (start == 0 && topic.startsWith("$"));
+
+        // '#' matches the parent level as well as any number of child levels
+        Node wildcard = reserved ? null : node.children.get(MULTI_LEVEL_WILDCARD);
+        if (wildcard != null) {
+            AZEROIotTopic match = wildcard.topic;
+            if (match != null) {
+                matches.add(match);
+            }
+        }
+
+        if (start > topic.length()) {
+            // all the topic levels have been consumed
+            AZEROIotTopic match = node.topic;
+            if (match != null) {
+                matches.add(match);
+            }
+            return;
+        }
+
+        int end = levelEnd(topic, start);
+        Node child = node.children.get(topic.substring(start, end));
+        if (child != null) {
+            match(child, topic, end + 1, matches);
+        }
+        child = reserved ? null : node.children.get(SINGLE_LEVEL_WILDCARD);
+        if (child != null) {
+            match(child, topic, end + 1, matches);
+        }
+    }
+
+    private AZEROIotTopic remove(Node node, String topicFilter, int start) {
+        if (start > topicFilter.length()) {
+            AZEROIotTopic topic = node.topic;
+            node.topic = null;
+            return topic;
+        }
+
+        int end = levelEnd(topicFilter, start);
+        String level = topicFilter.substring(start, end);
+        Node child = node.children.get(level);
+        if (child == null) {
+            return null;
+        }
+
+        AZEROIotTopic topic = remove(child, topicFilter, end + 1);
+        if (child.topic == null && child.children.isEmpty()) {
+            node.children.remove(level);
+        }
+        return topic;
+    }
+
+    private static int levelEnd(String topic, int start) {
+        int end = topic.indexOf(LEVEL_SEPARATOR, start);
+        return (end < 0) ? topic.length() : end;
+    }
+
+    /**
+     * A trie node representing one level of the topic filters.
+     */
+    private static class Node {
+        private final ConcurrentMap<String, Node> children = new ConcurrentHashMap<>();
+        private volatile AZEROIotTopic topic;
+    }
+
+}
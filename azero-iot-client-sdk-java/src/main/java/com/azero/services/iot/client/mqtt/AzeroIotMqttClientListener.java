@@ -1,5 +1,10 @@
 package com.azero.services.iot.client.mqtt;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
@@ -7,6 +12,7 @@ import org.eclipse.paho.client.mqttv3.MqttMessage;
 import com.azero.services.iot.client.AZEROIotMessage;
 import com.azero.services.iot.client.AZEROIotQos;
 import com.azero.services.iot.client.core.AbstractAzeroIotClient;
+import com.azero.services.iot.client.core.AzeroIotBatchPublisher;
 
 /**
  * This class implements listener functions for client related events from the
@@ -14,6 +20,8 @@ import com.azero.services.iot.client.core.AbstractAzeroIotClient;
  */
 public class AzeroIotMqttClientListener implements MqttCallback {
 
+    private static final Logger LOGGER = Logger.getLogger(AzeroIotMqttClientListener.class.getName());
+
     private AbstractAzeroIotClient client;
 
     public AzeroIotMqttClientListener(AbstractAzeroIotClient client) {
@@ -37,8 +45,32 @@ public class AzeroIotMqttClientListener implements MqttCallback {
 
     @Override
     public void messageArrived(String topic, MqttMessage arg1) throws Exception {
-        AZEROIotMessage message = new AZEROIotMessage(topic, AZEROIotQos.valueOf(arg1.getQos()), arg1.getPayload());
-        client.dispatch(message);
+        byte[] payload;
+        try {
+            payload = client.getPayloadCodecs().decode(topic, arg1.getPayload());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to decode payload from topic " + topic + ", dropping the message", e);
+            return;
+        }
+        AZEROIotQos qos = AZEROIotQos.valueOf(arg1.getQos());
+        if (client.isReceiveBatches() && AzeroIotBatchPublisher.isBatch(payload)) {
+            List<byte[]> payloads = AzeroIotBatchPublisher.unbatch(payload);
+            for (byte[] batched : payloads) {
+                dispatch(topic, qos, batched);
+            }
+            return;
+        }
+        // the payload array is never reused by Paho, so the message can own it
+        dispatch(topic, qos, payload);
+    }
+
+    private void dispatch(String topic, AZEROIotQos qos, byte[] payload) {
+        AZEROIotMessage message = client.obtainMessage(topic, qos, payload);
+        try {
+            client.dispatch(message);
+        } finally {
+            message.release();
+        }
     }
 
 }
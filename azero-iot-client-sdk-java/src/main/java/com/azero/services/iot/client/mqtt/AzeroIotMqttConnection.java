@@ -1,9 +1,18 @@
 package com.azero.services.iot.client.mqtt;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import javax.net.SocketFactory;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
 import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
@@ -11,46 +20,87 @@ import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
 import com.azero.services.iot.client.AZEROIotException;
 import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotQos;
 import com.azero.services.iot.client.core.AbstractAzeroIotClient;
 import com.azero.services.iot.client.core.AzeroIotConnection;
+import com.azero.services.iot.client.core.AzeroIotInflightWindow;
 import com.azero.services.iot.client.core.AzeroIotMessageCallback;
 import com.azero.services.iot.client.core.AzeroIotRetryableException;
+import com.azero.services.iot.client.core.AzeroIotRuntimeException;
 
 /**
  * This class extends {@link AzeroIotConnection} to provide the basic MQTT pub/sub
  * functionalities using the Paho MQTT library.
  */
 public class AzeroIotMqttConnection extends AzeroIotConnection {
+    private static final Logger LOGGER = Logger.getLogger(AzeroIotMqttConnection.class.getName());
     private static final String USERNAME_METRIC_STRING = "?SDK=Java&Version=1.3.7";
     private final SocketFactory socketFactory;
-    private MqttAsyncClient mqttClient;
+    private final String serverUri;
+    private volatile MqttAsyncClient mqttClient;
+    private MqttClientPersistence persistence;
     private AzeroIotMqttMessageListener messageListener;
     private AzeroIotMqttClientListener clientListener;
+    private AzeroIotInflightWindow inflightWindow;
 
     public AzeroIotMqttConnection(AbstractAzeroIotClient client, SocketFactory socketFactory, String serverUri) throws AZEROIotException {
         super(client);
         this.socketFactory = socketFactory;
+        this.serverUri = serverUri;
         messageListener = new AzeroIotMqttMessageListener(client);
         clientListener = new AzeroIotMqttClientListener(client);
-        try {
-            mqttClient = new MqttAsyncClient(serverUri, client.getClientId(), new MemoryPersistence());
-            mqttClient.setCallback(clientListener);
-        } catch (MqttException e) {
-            throw new AZEROIotException(e);
-        }
     }
 
     AzeroIotMqttConnection(AbstractAzeroIotClient client, MqttAsyncClient mqttClient) throws AZEROIotException {
         super(client);
         this.mqttClient = mqttClient;
         this.socketFactory = null;
+        this.serverUri = null;
+    }
+
+    /**
+     * Creates the Paho client on first connect rather than in the constructor,
+     * so that the persistence configured on the client after it's constructed
+     * is taken into account.
+     *
+     * @return the Paho client
+     * @throws MqttException
+     *             exception thrown if the client or its persistence can't be
+     *             created
+     */
+    private synchronized MqttAsyncClient createMqttClient() throws MqttException {
+        if (mqttClient == null) {
+            if (client.getMqttPersistenceDirectory() != null) {
+                persistence = new AzeroIotMqttFilePersistence(new File(client.getMqttPersistenceDirectory()),
+                        client.getMqttPersistenceFileSize());
+            } else {
+                persistence = new MemoryPersistence();
+            }
+            MqttAsyncClient newClient = new MqttAsyncClient(serverUri, client.getClientId(), persistence);
+            newClient.setCallback(clientListener);
+            mqttClient = newClient;
+        }
+        return mqttClient;
+    }
+
+    private MqttAsyncClient getConnectedClient() throws AzeroIotRetryableException {
+        MqttAsyncClient connectedClient = mqttClient;
+        if (connectedClient == null) {
+            throw new AzeroIotRetryableException("Client is not connected");
+        }
+        return connectedClient;
     }
 
     public void openConnection(AzeroIotMessageCallback callback) throws AZEROIotException {
         try {
             AzeroIotMqttConnectionListener connectionListener = new AzeroIotMqttConnectionListener(client, true, callback);
             MqttConnectOptions options = buildMqttConnectOptions(client, socketFactory);
-            mqttClient.connect(options, null, connectionListener);
+            if (client.isAdaptiveInflight() && inflightWindow == null) {
+                // the window is kept across reconnects, along with what it
+                // has learned about the link
+                inflightWindow = new AzeroIotInflightWindow(client);
+            }
+            createMqttClient().connect(options, null, connectionListener);
         } catch (MqttException e) {
             throw new AZEROIotException(e);
         }
@@ -58,22 +108,142 @@ public class AzeroIotMqttConnection extends AzeroIotConnection {
 
     public void closeConnection(AzeroIotMessageCallback callback) throws AZEROIotException {
         try {
+            MqttAsyncClient connectedClient = mqttClient;
+            if (connectedClient == null) {
+                throw new AZEROIotException("Client is not connected");
+            }
             AzeroIotMqttConnectionListener connectionListener = new AzeroIotMqttConnectionListener(client, false, callback);
-            mqttClient.disconnect(0, null, connectionListener);
+            connectedClient.disconnect(0, null, connectionListener);
         } catch (MqttException e) {
             throw new AZEROIotException(e);
         }
     }
 
+    @Override
+    public void onConnectionClosed() {
+        super.onConnectionClosed();
+        closeMqttClient();
+    }
+
+    /**
+     * Closes the Paho client once the connection is permanently closed,
+     * releasing its resources and its persistence, e.g. the lock on the
+     * persistence file. A new client is created on the next connect.
+     */
+    private synchronized void closeMqttClient() {
+        MqttAsyncClient closedClient = mqttClient;
+        if (closedClient == null || serverUri == null) {
+            // a client provided by the caller is left to the caller
+            return;
+        }
+        try {
+            closedClient.close();
+        } catch (MqttException e) {
+            LOGGER.log(Level.WARNING, "Failed to close the MQTT client", e);
+            return;
+        }
+        mqttClient = null;
+        // Paho closes the persistence when the connection is shut down
+        if (persistence instanceof AzeroIotMqttFilePersistence
+                && ((AzeroIotMqttFilePersistence) persistence).isOpen()) {
+            try {
+                persistence.close();
+            } catch (MqttException e) {
+                LOGGER.log(Level.WARNING, "Failed to close the MQTT persistence", e);
+            }
+        }
+        persistence = null;
+    }
+
     @Override
     public void publishMessage(AZEROIotMessage message) throws AZEROIotException, AzeroIotRetryableException {
-        String topic = message.getTopic();
-        MqttMessage mqttMessage = new MqttMessage(message.getPayload());
-        mqttMessage.setQos(message.getQos().getValue());
+        AzeroIotInflightWindow window = inflightWindow;
+        if (window == null || message.getQos() == AZEROIotQos.QOS0) {
+            sendMessage(message, messageListener);
+            return;
+        }
+        switch (window.acquire(message)) {
+        case AzeroIotInflightWindow.QUEUED:
+            // sent once acknowledgements free up the window
+            return;
+        case AzeroIotInflightWindow.REJECTED:
+            throw new AZEROIotException("Too many messages waiting for the in-flight window");
+        default:
+            publishInWindow(window, message);
+        }
+    }
+
+    @Override
+    public int getInflightWindow() {
+        AzeroIotInflightWindow window = inflightWindow;
+        return (window != null) ? window.getWindow() : client.getMaxInflight();
+    }
+
+    private void publishInWindow(AzeroIotInflightWindow window, AZEROIotMessage message) throws AZEROIotException, AzeroIotRetryableException {
+        try {
+            sendMessage(message, new InflightListener(window));
+        } catch (AZEROIotException | AzeroIotRetryableException e) {
+            sendPending(window, window.release(0, false));
+            throw e;
+        }
+    }
+
+    private void sendPending(final AzeroIotInflightWindow window, final List<AZEROIotMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                for (AZEROIotMessage message : messages) {
+                    try {
+                        publishInWindow(window, message);
+                    } catch (AzeroIotRetryableException e) {
+                        // connection lost or Paho busy while the message was
+                        // waiting, it's sent with the offline queue
+                        if (!getOfflinePublishQueue().offer(message)) {
+                            message.onFailure();
+                        } else {
+                            onRequestQueued();
+                        }
+                    } catch (AZEROIotException e) {
+                        LOGGER.log(Level.WARNING, "Failed to publish message to " + message.getTopic(), e);
+                        message.onFailure();
+                    }
+                }
+            }
+        };
+        try {
+            client.scheduleTask(task);
+        } catch (AzeroIotRuntimeException e) {
+            // the messages already hold their slots in the window, so they
+            // are sent on this thread rather than dropped
+            task.run();
+        }
+    }
+
+    @Override
+    protected void publishMessageFireAndForget(String topic, byte[] payload) throws AZEROIotException, AzeroIotRetryableException {
+        // without user context and listener, Paho has nothing to call back
+        sendMessage(topic, payload, AZEROIotQos.QOS0.getValue(), null, null);
+    }
+
+    private void sendMessage(AZEROIotMessage message, IMqttActionListener listener) throws AZEROIotException, AzeroIotRetryableException {
+        sendMessage(message.getTopic(), message.getPayloadArray(), message.getQos().getValue(), message, listener);
+    }
+
+    private void sendMessage(String topic, byte[] payload, int qos, Object userContext, IMqttActionListener listener) throws AZEROIotException, AzeroIotRetryableException {
+        try {
+            payload = client.getPayloadCodecs().encode(topic, payload);
+        } catch (IOException e) {
+            throw new AZEROIotException(e);
+        }
+        MqttMessage mqttMessage = new MqttMessage(payload);
+        mqttMessage.setQos(qos);
         try {
-            mqttClient.publish(topic, mqttMessage, message, messageListener);
+            getConnectedClient().publish(topic, mqttMessage, userContext, listener);
         } catch (MqttException e) {
-            if (e.getReasonCode() == MqttException.REASON_CODE_CLIENT_NOT_CONNECTED) {
+            if (isRetryable(e)) {
                 throw new AzeroIotRetryableException(e);
             } else {
                 throw new AZEROIotException(e);
@@ -84,9 +254,9 @@ public class AzeroIotMqttConnection extends AzeroIotConnection {
     @Override
     public void subscribeTopic(AZEROIotMessage message) throws AZEROIotException, AzeroIotRetryableException {
         try {
-            mqttClient.subscribe(message.getTopic(), message.getQos().getValue(), message, messageListener);
+            getConnectedClient().subscribe(message.getTopic(), message.getQos().getValue(), message, messageListener);
         } catch (MqttException e) {
-            if (e.getReasonCode() == MqttException.REASON_CODE_CLIENT_NOT_CONNECTED) {
+            if (isRetryable(e)) {
                 throw new AzeroIotRetryableException(e);
             } else {
                 throw new AZEROIotException(e);
@@ -97,9 +267,9 @@ public class AzeroIotMqttConnection extends AzeroIotConnection {
     @Override
     public void unsubscribeTopic(AZEROIotMessage message) throws AZEROIotException, AzeroIotRetryableException {
         try {
-            mqttClient.unsubscribe(message.getTopic(), message, messageListener);
+            getConnectedClient().unsubscribe(message.getTopic(), message, messageListener);
         } catch (MqttException e) {
-            if (e.getReasonCode() == MqttException.REASON_CODE_CLIENT_NOT_CONNECTED) {
+            if (isRetryable(e)) {
                 throw new AzeroIotRetryableException(e);
             } else {
                 throw new AZEROIotException(e);
@@ -107,6 +277,17 @@ public class AzeroIotMqttConnection extends AzeroIotConnection {
         }
     }
 
+    /**
+     * Checks if a request failed by Paho can be sent again later, i.e. the
+     * client isn't connected, or too many publishes are in progress (32202),
+     * which is backpressure rather than an error.
+     */
+    private static boolean isRetryable(MqttException e) {
+        int reasonCode = e.getReasonCode();
+        return reasonCode == MqttException.REASON_CODE_CLIENT_NOT_CONNECTED
+                || reasonCode == MqttException.REASON_CODE_MAX_INFLIGHT;
+    }
+
     public Set<String> getServerUris() {
         return new HashSet<>();
     }
@@ -117,6 +298,7 @@ public class AzeroIotMqttConnection extends AzeroIotConnection {
         options.setCleanSession(client.isCleanSession());
         options.setConnectionTimeout(client.getConnectionTimeout() / 1000);
         options.setKeepAliveInterval(client.getKeepAliveInterval() / 1000);
+        options.setMaxInflight(AzeroIotInflightWindow.getMaxWindow(client));
         if (client.isClientEnableMetrics()) {
             options.setUserName(USERNAME_METRIC_STRING);
         }
@@ -128,11 +310,38 @@ public class AzeroIotMqttConnection extends AzeroIotConnection {
         }
         if (client.getWillMessage() != null) {
             AZEROIotMessage message = client.getWillMessage();
-            options.setWill(message.getTopic(), message.getPayload(), message.getQos().getValue(), false);
+            options.setWill(message.getTopic(), message.getPayloadArray(), message.getQos().getValue(), false);
         }
         return options;
     }
 
+    /**
+     * The listener of a publish sent within the in-flight window, which
+     * releases its slot and feeds its acknowledgement latency to the window.
+     */
+    private class InflightListener implements IMqttActionListener {
+        private final AzeroIotInflightWindow window;
+        private final long startTime = System.nanoTime();
+
+        private InflightListener(AzeroIotInflightWindow window) {
+            this.window = window;
+        }
+
+        @Override
+        public void onSuccess(IMqttToken token) {
+            List<AZEROIotMessage> ready = window.release(System.nanoTime() - startTime, true);
+            messageListener.onSuccess(token);
+            sendPending(window, ready);
+        }
+
+        @Override
+        public void onFailure(IMqttToken token, Throwable cause) {
+            List<AZEROIotMessage> ready = window.release(0, false);
+            messageListener.onFailure(token, cause);
+            sendPending(window, ready);
+        }
+    }
+
     @java.lang.SuppressWarnings("all")
     public SocketFactory getSocketFactory() {
         return this.socketFactory;
@@ -0,0 +1,452 @@
+package com.azero.services.iot.client.mqtt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+import com.azero.services.iot.client.core.AzeroIotSegmentLog;
+
+/**
+ * This class is an {@link MqttClientPersistence} implementation keeping the
+ * persisted messages of a client in a single memory-mapped log file, as
+ * opposed to the one file per message of Paho's default file persistence.
+ * <p>
+ * Putting a message appends a record to the log and marks the record it
+ * replaces as removed; removing a message only marks its record. Neither
+ * involves a system call, so the persistence keeps up with thousands of
+ * messages per second. Each record has a state byte, written last as its
+ * commit marker, and a CRC32, so a record torn by a crash is never read back.
+ * An index of the live records is kept in memory.
+ * </p>
+ * <p>
+ * When the file is full, the live records are copied to a new file that
+ * atomically replaces it, which is cheap as there are at most as many live
+ * records as messages in flight. The file grows if the live records don't fit.
+ * Mappings are released explicitly rather than by the garbage collector, as a
+ * mapped file can't be replaced on some platforms, e.g. Windows. Should the
+ * file still fail to be replaced, e.g. because the JVM doesn't allow releasing
+ * mappings, it's grown in place instead, and the space of removed records is
+ * only reclaimed by a later compaction that succeeds.
+ * </p>
+ * <p>
+ * The file is locked while the persistence is open, which Paho does while the
+ * client is connected. The file can't be shared by clients with the same
+ * client ID and server URI.
+ * </p>
+ */
+public class AzeroIotMqttFilePersistence implements MqttClientPersistence {
+
+    private static final Logger LOGGER = Logger.getLogger(AzeroIotMqttFilePersistence.class.getName());
+
+    private static final String FILE_SUFFIX = ".log";
+
+    /**
+     * The record header: state byte, key length, header length, payload
+     * length, and CRC32 of the rest of the record.
+     */
+    private static final int RECORD_HEADER_LENGTH = 15;
+
+    private static final byte STATE_EMPTY = 0;
+    private static final byte STATE_LIVE = 1;
+    private static final byte STATE_REMOVED = 2;
+
+    private final File directory;
+    private final int initialSize;
+
+    private File file;
+    private RandomAccessFile raf;
+    private FileLock lock;
+    private MappedByteBuffer buffer;
+
+    /** The offsets of the live records, keyed by message key. */
+    private final Map<String, Integer> index = new HashMap<>();
+
+    /** The offset the next record is appended at. */
+    private int end;
+
+    /**
+     * Instantiates a new persistence.
+     *
+     * @param directory
+     *            the directory of the log files, one per client
+     * @param initialSize
+     *            the initial size of a log file in bytes
+     */
+    public AzeroIotMqttFilePersistence(File directory, int initialSize) {
+        if (initialSize <= RECORD_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Invalid file size");
+        }
+        this.directory = directory;
+        this.initialSize = initialSize;
+    }
+
+    @Override
+    public synchronized void open(String clientId, String serverURI) throws MqttPersistenceException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new MqttPersistenceException(new IOException("Failed to create directory " + directory));
+        }
+        file = new File(directory, toFileName(clientId + "-" + serverURI) + FILE_SUFFIX);
+        try {
+            map(file, (int) Math.max(initialSize, file.length()));
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+        recover();
+    }
+
+    @Override
+    public synchronized void close() throws MqttPersistenceException {
+        checkIsOpen();
+        buffer.force();
+        try {
+            unmap();
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+        index.clear();
+    }
+
+    @Override
+    public synchronized void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+        checkIsOpen();
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int headerLength = persistable.getHeaderLength();
+        int payloadLength = (persistable.getPayloadBytes() == null) ? 0 : persistable.getPayloadLength();
+        int length = RECORD_HEADER_LENGTH + keyBytes.length + headerLength + payloadLength;
+        if (end + length > buffer.capacity()) {
+            compact(length);
+        }
+
+        int offset = end;
+        if (offset + length < buffer.capacity()) {
+            // terminate the log first, as the bytes after the record may be
+            // left from before the log was compacted or cleared
+            buffer.put(offset + length, STATE_EMPTY);
+        }
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset + 1);
+        slice.putShort((short) keyBytes.length);
+        slice.putInt(headerLength);
+        slice.putInt(payloadLength);
+        slice.position(offset + RECORD_HEADER_LENGTH);
+        slice.put(keyBytes);
+        slice.put(persistable.getHeaderBytes(), persistable.getHeaderOffset(), headerLength);
+        if (payloadLength > 0) {
+            slice.put(persistable.getPayloadBytes(), persistable.getPayloadOffset(), payloadLength);
+        }
+        buffer.putInt(offset + 11, checksum(offset, length));
+        // the commit marker goes last
+        buffer.put(offset, STATE_LIVE);
+        end += length;
+
+        Integer previous = index.put(key, offset);
+        if (previous != null) {
+            buffer.put(previous, STATE_REMOVED);
+        }
+    }
+
+    @Override
+    public synchronized MqttPersistable get(String key) throws MqttPersistenceException {
+        checkIsOpen();
+        Integer offset = index.get(key);
+        if (offset == null) {
+            return null;
+        }
+        int keyLength = buffer.getShort(offset + 1) & 0xFFFF;
+        byte[] header = new byte[buffer.getInt(offset + 3)];
+        byte[] payload = new byte[buffer.getInt(offset + 7)];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset + RECORD_HEADER_LENGTH + keyLength);
+        slice.get(header);
+        slice.get(payload);
+        return new Persistable(header, payload);
+    }
+
+    @Override
+    public synchronized void remove(String key) throws MqttPersistenceException {
+        checkIsOpen();
+        Integer offset = index.remove(key);
+        if (offset != null) {
+            buffer.put(offset, STATE_REMOVED);
+        }
+    }
+
+    @Override
+    public synchronized Enumeration<String> keys() throws MqttPersistenceException {
+        checkIsOpen();
+        return Collections.enumeration(new ArrayList<>(index.keySet()));
+    }
+
+    @Override
+    public synchronized void clear() throws MqttPersistenceException {
+        checkIsOpen();
+        buffer.put(0, STATE_EMPTY);
+        index.clear();
+        end = 0;
+    }
+
+    @Override
+    public synchronized boolean containsKey(String key) throws MqttPersistenceException {
+        checkIsOpen();
+        return index.containsKey(key);
+    }
+
+    /**
+     * Checks if the persistence is open.
+     *
+     * @return true, if the persistence is open
+     */
+    public synchronized boolean isOpen() {
+        return buffer != null;
+    }
+
+    /**
+     * Gets the file the log is kept in.
+     *
+     * @return the log file, or null if the persistence has not been opened
+     */
+    public synchronized File getFile() {
+        return file;
+    }
+
+    private void checkIsOpen() throws MqttPersistenceException {
+        if (buffer == null) {
+            throw new MqttPersistenceException();
+        }
+    }
+
+    private void map(File target, int size) throws IOException, MqttPersistenceException {
+        raf = new RandomAccessFile(target, "rw");
+        FileChannel channel = raf.getChannel();
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            raf.close();
+            raf = null;
+            throw new MqttPersistenceException(MqttPersistenceException.REASON_CODE_PERSISTENCE_IN_USE);
+        }
+        if (raf.length() < size) {
+            raf.setLength(size);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void unmap() throws IOException {
+        MappedByteBuffer mapping = buffer;
+        buffer = null;
+        AzeroIotSegmentLog.releaseMapping(mapping);
+        lock.release();
+        lock = null;
+        raf.close();
+        raf = null;
+    }
+
+    /**
+     * Scans the log, indexing the live records up to the first one that is
+     * not committed or doesn't match its checksum.
+     */
+    private void recover() {
+        index.clear();
+        int offset = 0;
+        int capacity = buffer.capacity();
+        while (offset + RECORD_HEADER_LENGTH <= capacity) {
+            byte state = buffer.get(offset);
+            if (state != STATE_LIVE && state != STATE_REMOVED) {
+                break;
+            }
+            int keyLength = buffer.getShort(offset + 1) & 0xFFFF;
+            long length = (long) RECORD_HEADER_LENGTH + keyLength + buffer.getInt(offset + 3)
+                    + buffer.getInt(offset + 7);
+            if (buffer.getInt(offset + 3) < 0 || buffer.getInt(offset + 7) < 0 || offset + length > capacity) {
+                break;
+            }
+            if (state == STATE_LIVE) {
+                if (checksum(offset, (int) length) != buffer.getInt(offset + 11)) {
+                    break;
+                }
+                byte[] key = new byte[keyLength];
+                ByteBuffer slice = buffer.duplicate();
+                slice.position(offset + RECORD_HEADER_LENGTH);
+                slice.get(key);
+                Integer previous = index.put(new String(key, StandardCharsets.UTF_8), offset);
+                if (previous != null) {
+                    // a crash between appending a record and removing the
+                    // one it replaces
+                    buffer.put(previous, STATE_REMOVED);
+                }
+            }
+            offset += length;
+        }
+        end = offset;
+        if (end < capacity) {
+            buffer.put(end, STATE_EMPTY);
+        }
+    }
+
+    /**
+     * Copies the live records to a new file, which then replaces the log
+     * file, leaving room for a record of the given length. If the log file
+     * can't be replaced, it's grown in place instead.
+     */
+    private void compact(int length) throws MqttPersistenceException {
+        int liveLength = 0;
+        for (int offset : index.values()) {
+            liveLength += getRecordLength(offset);
+        }
+        int size = getSize(buffer.capacity(), liveLength + length);
+
+        File compacted = new File(file.getPath() + ".compact");
+        try (RandomAccessFile target = new RandomAccessFile(compacted, "rw");
+                FileChannel channel = target.getChannel()) {
+            target.setLength(0);
+            target.setLength(size);
+            MappedByteBuffer targetBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            // copy in log order, so that replaced records stay replaced
+            ArrayList<Integer> offsets = new ArrayList<>(index.values());
+            Collections.sort(offsets);
+            int position = 0;
+            for (int offset : offsets) {
+                int recordLength = getRecordLength(offset);
+                ByteBuffer record = buffer.duplicate();
+                record.limit(offset + recordLength);
+                record.position(offset);
+                targetBuffer.position(position);
+                targetBuffer.put(record);
+                position += recordLength;
+            }
+            targetBuffer.force();
+            AzeroIotSegmentLog.releaseMapping(targetBuffer);
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+
+        int previousSize = buffer.capacity();
+        try {
+            unmap();
+            Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // keep going with the log as it was, with room for the record
+            LOGGER.log(Level.WARNING, "Failed to replace " + file + " with its compacted copy, growing it instead", e);
+            size = getSize(previousSize, end + length);
+            if (!compacted.delete()) {
+                LOGGER.fine("Failed to delete " + compacted);
+            }
+        }
+        try {
+            map(file, size);
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+        recover();
+    }
+
+    /**
+     * Gets the file size, doubling the given size until there's room for the
+     * given length.
+     */
+    private static int getSize(int size, int length) throws MqttPersistenceException {
+        while (length >= size) {
+            if (size > Integer.MAX_VALUE / 2) {
+                throw new MqttPersistenceException(new IOException("Persistence file is full"));
+            }
+            size *= 2;
+        }
+        return size;
+    }
+
+    private int getRecordLength(int offset) {
+        return RECORD_HEADER_LENGTH + (buffer.getShort(offset + 1) & 0xFFFF) + buffer.getInt(offset + 3)
+                + buffer.getInt(offset + 7);
+    }
+
+    private int checksum(int offset, int length) {
+        CRC32 crc = new CRC32();
+        byte[] header = new byte[10];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset + 1);
+        slice.get(header);
+        crc.update(header);
+        byte[] data = new byte[length - RECORD_HEADER_LENGTH];
+        slice.position(offset + RECORD_HEADER_LENGTH);
+        slice.get(data);
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    private static String toFileName(String name) {
+        StringBuilder fileName = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            fileName.append(Character.isLetterOrDigit(c) || c == '-' ? c : '_');
+        }
+        return fileName.toString();
+    }
+
+    /**
+     * A persisted message read back from the log.
+     */
+    private static class Persistable implements MqttPersistable {
+        private final byte[] header;
+        private final byte[] payload;
+
+        private Persistable(byte[] header, byte[] payload) {
+            this.header = header;
+            this.payload = payload;
+        }
+
+        @Override
+        public byte[] getHeaderBytes() {
+            return header;
+        }
+
+        @Override
+        public int getHeaderLength() {
+            return header.length;
+        }
+
+        @Override
+        public int getHeaderOffset() {
+            return 0;
+        }
+
+        @Override
+        public byte[] getPayloadBytes() {
+            return payload;
+        }
+
+        @Override
+        public int getPayloadLength() {
+            return payload.length;
+        }
+
+        @Override
+        public int getPayloadOffset() {
+            return 0;
+        }
+    }
+
+}
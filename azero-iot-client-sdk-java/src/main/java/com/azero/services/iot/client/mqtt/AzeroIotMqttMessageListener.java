@@ -8,6 +8,7 @@ import org.eclipse.paho.client.mqttv3.internal.wire.MqttSuback;
 
 import com.azero.services.iot.client.AZEROIotMessage;
 import com.azero.services.iot.client.core.AbstractAzeroIotClient;
+import com.azero.services.iot.client.core.AzeroIotCompletion;
 
 /**
  * This class implements listener functions for the message events from the Paho
@@ -46,6 +47,10 @@ public class AzeroIotMqttMessageListener implements IMqttActionListener {
         }
 
         final boolean isSuccess = !forceFailure;
+        if (message instanceof AzeroIotCompletion) {
+            ((AzeroIotCompletion) message).complete(isSuccess, client);
+            return;
+        }
         client.scheduleTask(new Runnable() {
             @Override
             public void run() {
@@ -67,6 +72,10 @@ public class AzeroIotMqttMessageListener implements IMqttActionListener {
         }
 
         LOGGER.warning("Request failed for topic " + message.getTopic() + ": " + token.getException());
+        if (message instanceof AzeroIotCompletion) {
+            ((AzeroIotCompletion) message).complete(false, client);
+            return;
+        }
         client.scheduleTask(new Runnable() {
             @Override
             public void run() {
@@ -16,16 +16,22 @@ import java.util.logging.Logger;
 import com.azero.services.iot.client.AZEROIotConfig;
 import com.azero.services.iot.client.AZEROIotDevice;
 import com.azero.services.iot.client.AZEROIotDeviceProperty;
+import com.azero.services.iot.client.AZEROIotDocumentFormat;
 import com.azero.services.iot.client.AZEROIotException;
+import com.azero.services.iot.client.AZEROIotFuture;
+import com.azero.services.iot.client.AZEROIotJacksonDocumentFormat;
 import com.azero.services.iot.client.AZEROIotMessage;
 import com.azero.services.iot.client.AZEROIotQos;
 import com.azero.services.iot.client.AZEROIotTimeoutException;
 import com.azero.services.iot.client.AZEROIotTopic;
 import com.azero.services.iot.client.core.AbstractAzeroIotClient;
+import com.azero.services.iot.client.core.AzeroIotFutureMessage;
 import com.azero.services.iot.client.shadow.AzeroIotDeviceCommandManager.Command;
 import com.azero.services.iot.client.shadow.AzeroIotDeviceCommandManager.CommandAck;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 
 /**
@@ -46,6 +52,9 @@ public abstract class AbstractAzeroIotDevice {
     private final AzeroIotDeviceCommandManager commandManager;
     private final ConcurrentMap<String, Boolean> deviceSubscriptions;
     private final ObjectMapper jsonObjectMapper;
+    private final boolean customShadowUpdate;
+    private final boolean customDeviceReport;
+    private AZEROIotDocumentFormat documentFormat;
     private AbstractAzeroIotClient client;
     private Future<?> syncTask;
     private AtomicLong localVersion;
@@ -64,6 +73,10 @@ public abstract class AbstractAzeroIotDevice {
         SimpleModule module = new SimpleModule();
         module.addSerializer(AbstractAzeroIotDevice.class, new AzeroIotJsonSerializer());
         jsonObjectMapper.registerModule(module);
+        documentFormat = new AZEROIotJacksonDocumentFormat(jsonObjectMapper);
+        // the string-based callbacks are only used if they are overridden
+        customShadowUpdate = isOverridden("onShadowUpdate", String.class);
+        customDeviceReport = isOverridden("onDeviceReport");
         localVersion = new AtomicLong(-1);
     }
 
@@ -85,6 +98,18 @@ public abstract class AbstractAzeroIotDevice {
         commandManager.runCommand(Command.GET, message, timeout);
     }
 
+    protected AZEROIotFuture<String> getAsync(long timeout) throws AZEROIotException {
+        AzeroIotFutureMessage<String> future = new AzeroIotFutureMessage<String>(null, methodQos) {
+            @Override
+            protected String getSuccessValue() {
+                // the command stores the response document in the payload
+                return getStringPayload();
+            }
+        };
+        commandManager.runCommand(Command.GET, future, timeout);
+        return future;
+    }
+
     protected void update(String jsonState) throws AZEROIotException {
         AZEROIotMessage message = new AZEROIotMessage(null, methodQos, jsonState);
         commandManager.runCommandSync(Command.UPDATE, message);
@@ -99,6 +124,12 @@ public abstract class AbstractAzeroIotDevice {
         commandManager.runCommand(Command.UPDATE, message, timeout);
     }
 
+    protected AZEROIotFuture<Void> updateAsync(String jsonState, long timeout) throws AZEROIotException {
+        AzeroIotFutureMessage<Void> future = new AzeroIotFutureMessage<>(null, methodQos, jsonState);
+        commandManager.runCommand(Command.UPDATE, future, timeout);
+        return future;
+    }
+
     protected void delete() throws AZEROIotException {
         AZEROIotMessage message = new AZEROIotMessage(null, methodQos);
         commandManager.runCommandSync(Command.DELETE, message);
@@ -124,6 +155,17 @@ public abstract class AbstractAzeroIotDevice {
         }
     }
 
+    protected void onShadowUpdate(JsonNode state) {
+        // synchronized block to serialize device accesses
+        synchronized (this) {
+            try {
+                AzeroIotJsonDeserializer.deserialize(this, state);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to update device", e);
+            }
+        }
+    }
+
     protected String onDeviceReport() {
         // synchronized block to serialize device accesses
         synchronized (this) {
@@ -136,6 +178,38 @@ public abstract class AbstractAzeroIotDevice {
         }
     }
 
+    protected JsonNode getDeviceReport() {
+        if (customDeviceReport) {
+            String jsonState = onDeviceReport();
+            if (jsonState == null) {
+                return null;
+            }
+            try {
+                return jsonObjectMapper.readTree(jsonState);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Invalid device report", e);
+                return null;
+            }
+        }
+        // synchronized block to serialize device accesses
+        synchronized (this) {
+            try {
+                return jsonObjectMapper.valueToTree(this);
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(Level.WARNING, "Failed to generate device report", e);
+                return null;
+            }
+        }
+    }
+
+    public void dispatchShadowUpdate(JsonNode state) {
+        if (customShadowUpdate) {
+            onShadowUpdate(state.toString());
+        } else {
+            onShadowUpdate(state);
+        }
+    }
+
     public void activate() throws AZEROIotException {
         stopSync();
         for (String topic : getDeviceTopics()) {
@@ -199,10 +273,10 @@ public abstract class AbstractAzeroIotDevice {
                     startVersionSync();
                     return;
                 }
-                String jsonState = onDeviceReport();
-                if (jsonState != null) {
+                JsonNode state = getDeviceReport();
+                if (state != null) {
                     LOGGER.fine("Sending device report");
-                    sendDeviceReport(reportVersion, jsonState);
+                    sendDeviceReport(reportVersion, state);
                 }
             }
         }, 0L, reportInterval);
@@ -229,19 +303,19 @@ public abstract class AbstractAzeroIotDevice {
         }
     }
 
-    private void sendDeviceReport(long reportVersion, String jsonState) {
-        StringBuilder payload = new StringBuilder("{");
+    private void sendDeviceReport(long reportVersion, JsonNode state) {
+        ObjectNode document = jsonObjectMapper.createObjectNode();
         if (enableVersioning) {
-            payload.append("\"version\":").append(reportVersion).append(",");
+            document.put("version", reportVersion);
         }
-        payload.append("\"state\":{\"reported\":").append(jsonState).append("}}");
-        AzeroIotDeviceReportMessage message = new AzeroIotDeviceReportMessage(null, shadowUpdateQos, reportVersion, payload.toString(), this);
+        document.putObject("state").set("reported", state);
+        AzeroIotDeviceReportMessage message = new AzeroIotDeviceReportMessage(null, shadowUpdateQos, reportVersion, null, this);
         if (enableVersioning && reportVersion != localVersion.get()) {
             LOGGER.warning("Local version number has changed, skip reporting for this round");
             return;
         }
         try {
-            commandManager.runCommand(Command.UPDATE, message, client.getServerAckTimeout(), true);
+            commandManager.runCommand(Command.UPDATE, message, document, client.getServerAckTimeout(), true);
         } catch (AZEROIotTimeoutException e) {
         } catch (
         // async command, shouldn't receive timeout exception
@@ -265,6 +339,19 @@ public abstract class AbstractAzeroIotDevice {
         return properties;
     }
 
+    private boolean isOverridden(String methodName, Class<?>... parameterTypes) {
+        for (Class<?> c = getClass(); c != AZEROIotDevice.class && c != AbstractAzeroIotDevice.class; c = c
+                .getSuperclass()) {
+            try {
+                c.getDeclaredMethod(methodName, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // continue with the super class
+            }
+        }
+        return false;
+    }
+
     private List<String> getDeviceTopics() {
         List<String> topics = new ArrayList<>();
         topics.add(commandManager.getTopic(Command.DELTA, null));
@@ -342,6 +429,11 @@ public abstract class AbstractAzeroIotDevice {
         return this.jsonObjectMapper;
     }
 
+    @java.lang.SuppressWarnings("all")
+    public AZEROIotDocumentFormat getDocumentFormat() {
+        return this.documentFormat;
+    }
+
     @java.lang.SuppressWarnings("all")
     public AbstractAzeroIotClient getClient() {
         return this.client;
@@ -387,6 +479,11 @@ public abstract class AbstractAzeroIotDevice {
         this.methodAckQos = methodAckQos;
     }
 
+    @java.lang.SuppressWarnings("all")
+    public void setDocumentFormat(final AZEROIotDocumentFormat documentFormat) {
+        this.documentFormat = documentFormat;
+    }
+
     @java.lang.SuppressWarnings("all")
     public void setClient(final AbstractAzeroIotClient client) {
         this.client = client;
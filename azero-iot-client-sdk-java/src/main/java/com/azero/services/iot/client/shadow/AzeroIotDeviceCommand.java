@@ -7,6 +7,7 @@ import com.azero.services.iot.client.AZEROIotMessage;
 import com.azero.services.iot.client.AZEROIotTimeoutException;
 import com.azero.services.iot.client.core.AzeroIotCompletion;
 import com.azero.services.iot.client.shadow.AzeroIotDeviceCommandManager.Command;
+import com.fasterxml.jackson.databind.JsonNode;
 
 /**
  * This is a helper class that can be used to manage the execution result of a
@@ -22,6 +23,7 @@ public class AzeroIotDeviceCommand extends AzeroIotCompletion {
     private final Command command;
     private final String commandId;
     private AZEROIotMessage response;
+    private JsonNode responseDocument;
     private Boolean requestSent;
 
     public AzeroIotDeviceCommand(AzeroIotDeviceCommandManager commandManager, Command command, String commandId, AZEROIotMessage request, long commandTimeout, boolean isAsync) {
@@ -42,7 +44,9 @@ public class AzeroIotDeviceCommand extends AzeroIotCompletion {
 
     public String get(AbstractAzeroIotDevice device) throws AZEROIotException, AZEROIotTimeoutException {
         super.get(device.getClient());
-        return (response != null) ? response.getStringPayload() : null;
+        // the response may be a recycled message by now, but its payload has
+        // been copied into the request on success
+        return (response != null) ? request.getStringPayload() : null;
     }
 
     public boolean onReady(AbstractAzeroIotDevice device) {
@@ -60,8 +64,11 @@ public class AzeroIotDeviceCommand extends AzeroIotCompletion {
         // first callback is for the command ack, which we ignore
         if (response == null) {
             return;
+        } else if (responseDocument != null) {
+            // responses are returned to the application as JSON text
+            request.setStringPayload(responseDocument.toString());
         } else {
-            request.setPayload(response.getPayload());
+            request.setPayload(response.getPayloadArray());
         }
         super.onSuccess();
     }
@@ -109,6 +116,11 @@ public class AzeroIotDeviceCommand extends AzeroIotCompletion {
         return this.response;
     }
 
+    @java.lang.SuppressWarnings("all")
+    public JsonNode getResponseDocument() {
+        return this.responseDocument;
+    }
+
     @java.lang.SuppressWarnings("all")
     public Boolean getRequestSent() {
         return this.requestSent;
@@ -118,4 +130,9 @@ public class AzeroIotDeviceCommand extends AzeroIotCompletion {
     public void setResponse(final AZEROIotMessage response) {
         this.response = response;
     }
+
+    @java.lang.SuppressWarnings("all")
+    public void setResponseDocument(final JsonNode responseDocument) {
+        this.responseDocument = responseDocument;
+    }
 }
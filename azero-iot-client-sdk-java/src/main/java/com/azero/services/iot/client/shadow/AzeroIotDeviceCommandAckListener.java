@@ -21,6 +21,12 @@ public class AzeroIotDeviceCommandAckListener extends AZEROIotTopic {
         this.device = device;
     }
 
+    @Override
+    public String getDispatchKey() {
+        // deliver all the shadow messages of a device in order
+        return device.getThingName();
+    }
+
     @Override
     public void onMessage(AZEROIotMessage message) {
         device.onCommandAck(message);
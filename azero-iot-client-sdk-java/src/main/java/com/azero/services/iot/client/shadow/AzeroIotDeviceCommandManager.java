@@ -13,7 +13,9 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.azero.services.iot.client.AZEROIotDeviceErrorCode;
+import com.azero.services.iot.client.AZEROIotDocumentFormat;
 import com.azero.services.iot.client.AZEROIotException;
+import com.azero.services.iot.client.AZEROIotJacksonDocumentFormat;
 import com.azero.services.iot.client.AZEROIotMessage;
 import com.azero.services.iot.client.AZEROIotTimeoutException;
 import com.azero.services.iot.client.core.AzeroIotRuntimeException;
@@ -26,6 +28,12 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
  * pending commands that are yet to be accepted or rejected by the shadow. Upon
  * receiving the shadow response for a command, it will notify therefore resume
  * the execution of the caller.
+ * <p>
+ * Commands and their responses are encoded in the document format of the
+ * device. Request payloads given by the application as JSON text are converted
+ * to the document format before being published, and responses are converted
+ * back to JSON text when the format is not JSON.
+ * </p>
  */
 public class AzeroIotDeviceCommandManager {
     private static final Logger LOGGER = Logger.getLogger(AzeroIotDeviceCommandManager.class.getName());
@@ -104,8 +112,12 @@ public class AzeroIotDeviceCommandManager {
     }
 
     public String runCommand(Command command, AZEROIotMessage request, long commandTimeout, boolean isAsync) throws AZEROIotException, AZEROIotTimeoutException {
+        return runCommand(command, request, null, commandTimeout, isAsync);
+    }
+
+    public String runCommand(Command command, AZEROIotMessage request, ObjectNode document, long commandTimeout, boolean isAsync) throws AZEROIotException, AZEROIotTimeoutException {
         String commandId = newCommandId();
-        appendCommandId(request, commandId);
+        appendCommandId(request, document, commandId);
         request.setTopic(getTopic(command, null));
         AzeroIotDeviceCommand deviceCommand = new AzeroIotDeviceCommand(this, command, commandId, request, commandTimeout, isAsync);
         pendingCommands.put(commandId, deviceCommand);
@@ -217,31 +229,37 @@ public class AzeroIotDeviceCommandManager {
         return null;
     }
 
-    private void appendCommandId(AZEROIotMessage message, String commandId) throws AZEROIotException {
-        String payload = message.getStringPayload();
-        if (payload == null) {
-            payload = "{}";
-        }
+    private void appendCommandId(AZEROIotMessage message, ObjectNode document, String commandId) throws AZEROIotException {
         try {
-            JsonNode jsonNode = objectMapper.readTree(payload);
-            if (!jsonNode.isObject()) {
-                throw new AZEROIotException("Invalid Json string in payload");
+            if (document == null) {
+                // the request document is given by the application in JSON
+                String payload = message.getStringPayload();
+                if (payload == null) {
+                    document = objectMapper.createObjectNode();
+                } else {
+                    JsonNode jsonNode = objectMapper.readTree(payload);
+                    if (!jsonNode.isObject()) {
+                        throw new AZEROIotException("Invalid Json string in payload");
+                    }
+                    document = (ObjectNode) jsonNode;
+                }
             }
-            ((ObjectNode) jsonNode).put(COMMAND_ID_FIELD, commandId);
-            message.setStringPayload(jsonNode.toString());
+            document.put(COMMAND_ID_FIELD, commandId);
+            message.setPayload(device.getDocumentFormat().write(document));
         } catch (IOException e) {
             throw new AZEROIotException(e);
         }
     }
 
     private AzeroIotDeviceCommand getPendingCommand(AZEROIotMessage message) {
-        String payload = message.getStringPayload();
+        byte[] payload = message.getPayloadArray();
         if (payload == null) {
             return null;
         }
+        AZEROIotDocumentFormat format = device.getDocumentFormat();
         try {
-            JsonNode jsonNode = objectMapper.readTree(payload);
-            if (!jsonNode.isObject()) {
+            JsonNode jsonNode = format.read(payload);
+            if (jsonNode == null || !jsonNode.isObject()) {
                 return null;
             }
             JsonNode node = jsonNode.get(COMMAND_ID_FIELD);
@@ -261,6 +279,10 @@ public class AzeroIotDeviceCommandManager {
             if (node != null) {
                 command.setErrorMessage(node.textValue());
             }
+            if (!AZEROIotJacksonDocumentFormat.isJson(format)) {
+                // keep the parsed response for conversion to JSON text
+                command.setResponseDocument(jsonNode);
+            }
             return command;
         } catch (IOException e) {
             return null;
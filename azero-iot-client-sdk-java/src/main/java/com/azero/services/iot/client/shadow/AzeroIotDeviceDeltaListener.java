@@ -23,9 +23,15 @@ public class AzeroIotDeviceDeltaListener extends AZEROIotTopic {
         this.device = device;
     }
 
+    @Override
+    public String getDispatchKey() {
+        // deliver all the shadow messages of a device in order
+        return device.getThingName();
+    }
+
     @Override
     public void onMessage(AZEROIotMessage message) {
-        String payload = message.getStringPayload();
+        byte[] payload = message.getPayloadArray();
         if (payload == null) {
             LOGGER.warning("Received empty delta for device " + device.getThingName());
             return;
@@ -33,8 +39,8 @@ public class AzeroIotDeviceDeltaListener extends AZEROIotTopic {
 
         JsonNode rootNode;
         try {
-            rootNode = device.getJsonObjectMapper().readTree(payload);
-            if (!rootNode.isObject()) {
+            rootNode = device.getDocumentFormat().read(payload);
+            if (rootNode == null || !rootNode.isObject()) {
                 throw new IOException();
             }
         } catch (IOException e) {
@@ -66,7 +72,7 @@ public class AzeroIotDeviceDeltaListener extends AZEROIotTopic {
             LOGGER.warning("Missing state field in delta for device " + device.getThingName());
             return;
         }
-        device.onShadowUpdate(node.toString());
+        device.dispatchShadowUpdate(node);
     }
 
     @Override
@@ -11,14 +11,18 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * This is a customized JSON deserializer for deserializing the delta update
- * document from the shadow.
+ * document from the shadow. The document may also be given as a parsed tree,
+ * regardless of the format it was received in.
  */
 public class AzeroIotJsonDeserializer {
 
     public static void deserialize(AbstractAzeroIotDevice device, String jsonState) throws IOException {
+        deserialize(device, device.getJsonObjectMapper().readTree(jsonState));
+    }
+
+    public static void deserialize(AbstractAzeroIotDevice device, JsonNode node) throws IOException {
         ObjectMapper jsonObjectMapper = device.getJsonObjectMapper();
 
-        JsonNode node = jsonObjectMapper.readTree(jsonState);
         if (node == null) {
             throw new IOException("Invalid delta update received for " + device.getThingName());
         }
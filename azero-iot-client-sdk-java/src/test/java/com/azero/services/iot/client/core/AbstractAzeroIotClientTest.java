@@ -0,0 +1,154 @@
+package com.azero.services.iot.client.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotMqttClient;
+import com.azero.services.iot.client.AZEROIotQos;
+import com.azero.services.iot.client.mqtt.AzeroIotMqttMessageListener;
+
+public class AbstractAzeroIotClientTest {
+
+    private final AZEROIotMqttClient client = AzeroIotTestUtils.newClient();
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+        client.setCallbackExecutor(executor);
+        client.setMaxCallbackQueueSize(1);
+
+        // occupy the only client thread
+        final CountDownLatch started = new CountDownLatch(1);
+        client.scheduleTask(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        unblock.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCallbacksAreDroppedWhenQueueIsFull() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicInteger drops = new AtomicInteger();
+        AzeroIotCallbackTask task = new AzeroIotCallbackTask() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+
+            @Override
+            public void onDropped() {
+                drops.incrementAndGet();
+            }
+        };
+
+        assertTrue(client.scheduleCallback(task));
+        assertFalse(client.scheduleCallback(task));
+        client.onCallbackDropped(task);
+        assertEquals(1, client.getRejectedCallbackCount());
+        assertEquals(1, drops.get());
+
+        unblock.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void testInternalTasksAreNotDroppedWhenQueueIsFull() throws Exception {
+        assertTrue(client.scheduleCallback(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }));
+
+        final CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            client.scheduleTask(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+        }
+        assertEquals(0, client.getRejectedCallbackCount());
+
+        unblock.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSyncPublishReturnsWhenQueueIsFull() throws Exception {
+        assertTrue(client.scheduleCallback(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }));
+
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread publisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.publish("a/b", AZEROIotQos.QOS1, "payload");
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        publisher.start();
+
+        // the client isn't connected, so the request is queued until then
+        AZEROIotMessage request = null;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (request == null && System.currentTimeMillis() < deadline) {
+            request = client.getConnection().getOfflinePublishQueue().poll();
+            if (request == null) {
+                Thread.sleep(1);
+            }
+        }
+        assertNotNull(request);
+
+        IMqttToken token = mock(IMqttToken.class);
+        when(token.getUserContext()).thenReturn(request);
+        new AzeroIotMqttMessageListener(client).onSuccess(token);
+
+        publisher.join(5000);
+        assertFalse(publisher.isAlive());
+        assertNull(error.get());
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.azero.services.iot.client.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.Test;
+
+import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotMqttClient;
+import com.azero.services.iot.client.AZEROIotQos;
+
+public class AzeroIotBoundedQueueTest {
+
+    @Test
+    public void testBoundsApply() {
+        AZEROIotMqttClient client = AzeroIotTestUtils.newClient();
+        client.setMaxOfflineQueueSize(2);
+        client.setMaxOfflineQueueBytes(25);
+        AzeroIotBoundedQueue queue = new AzeroIotBoundedQueue(client);
+        AZEROIotMessage first = new AZEROIotMessage("a/b", AZEROIotQos.QOS0, new byte[10]);
+
+        assertTrue(queue.offer(first));
+        assertFalse(queue.offer(new AZEROIotMessage("a/b", AZEROIotQos.QOS0, new byte[20])));
+        assertTrue(queue.offer(new AZEROIotMessage("a/b", AZEROIotQos.QOS0, new byte[10])));
+        assertFalse(queue.offer(new AZEROIotMessage("a/b", AZEROIotQos.QOS0, new byte[0])));
+        assertEquals(2, queue.size());
+        assertEquals(20, queue.getBytes());
+
+        assertSame(first, queue.poll());
+        assertEquals(1, queue.size());
+        assertEquals(10, queue.getBytes());
+    }
+
+    @Test
+    public void testRequeuedMessageGoesFirst() {
+        AZEROIotMqttClient client = AzeroIotTestUtils.newClient();
+        client.setMaxOfflineQueueSize(2);
+        AzeroIotBoundedQueue queue = new AzeroIotBoundedQueue(client);
+        AZEROIotMessage first = new AZEROIotMessage("a/b", AZEROIotQos.QOS0);
+        AZEROIotMessage second = new AZEROIotMessage("c/d", AZEROIotQos.QOS0);
+        assertTrue(queue.offer(first));
+        assertTrue(queue.offer(second));
+
+        assertSame(first, queue.poll());
+        assertTrue(queue.offerFirst(first));
+        assertFalse(queue.offerFirst(new AZEROIotMessage("e/f", AZEROIotQos.QOS0)));
+        assertSame(first, queue.poll());
+        assertSame(second, queue.poll());
+    }
+
+    @Test
+    public void testSnapshotKeepsOrder() {
+        AzeroIotBoundedQueue queue = new AzeroIotBoundedQueue(AzeroIotTestUtils.newClient());
+        AZEROIotMessage first = new AZEROIotMessage("a/b", AZEROIotQos.QOS0);
+        AZEROIotMessage second = new AZEROIotMessage("c/d", AZEROIotQos.QOS0);
+        assertTrue(queue.offer(first));
+        assertTrue(queue.offer(second));
+
+        List<AZEROIotMessage> messages = queue.getMessages();
+        assertEquals(2, messages.size());
+        assertSame(first, messages.get(0));
+        assertSame(second, messages.get(1));
+
+        messages.clear();
+        assertEquals(2, queue.size());
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testConnectionQueuesAreSnapshots() {
+        AzeroIotConnection connection = AzeroIotTestUtils.newClient().getConnection();
+        AZEROIotMessage subscribe = new AZEROIotMessage("a/b", AZEROIotQos.QOS0);
+        AZEROIotMessage unsubscribe = new AZEROIotMessage("c/d", AZEROIotQos.QOS0);
+        assertTrue(connection.getOfflineSubscribeQueue().offer(subscribe));
+        assertTrue(connection.getOfflineUnsubscribeQueue().offer(unsubscribe));
+
+        ConcurrentLinkedQueue<AZEROIotMessage> subscribeQueue = connection.getSubscribeQueue();
+        assertSame(subscribe, subscribeQueue.peek());
+        assertTrue(subscribeQueue.contains(subscribe));
+        assertSame(unsubscribe, connection.getUnsubscribeQueue().iterator().next());
+
+        // changes to the snapshots don't affect the offline queues
+        assertTrue(subscribeQueue.offer(new AZEROIotMessage("e/f", AZEROIotQos.QOS0)));
+        assertSame(subscribe, subscribeQueue.poll());
+        assertEquals(1, connection.getOfflineSubscribeQueue().size());
+        assertSame(subscribe, connection.getOfflineSubscribeQueue().poll());
+        assertNull(connection.getOfflineSubscribeQueue().poll());
+        assertTrue(connection.getSubscribeQueue().isEmpty());
+    }
+
+}
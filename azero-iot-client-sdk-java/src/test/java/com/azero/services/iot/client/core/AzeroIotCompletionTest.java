@@ -0,0 +1,213 @@
+package com.azero.services.iot.client.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.azero.services.iot.client.AZEROIotException;
+import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotMqttClient;
+import com.azero.services.iot.client.AZEROIotQos;
+import com.azero.services.iot.client.AZEROIotTimeoutException;
+
+public class AzeroIotCompletionTest {
+
+    private final AZEROIotMqttClient client = AzeroIotTestUtils.newClient();
+
+    @Test
+    public void testSuccessTimeoutRaceCompletesOnce() throws Exception {
+        for (int i = 0; i < 2000; i++) {
+            CountingMessage request = new CountingMessage();
+            final AzeroIotCompletion completion = new AzeroIotCompletion(request, 0, true);
+            final CyclicBarrier barrier = new CyclicBarrier(2);
+
+            Thread timer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(barrier);
+                    completion.onTimeout();
+                }
+            });
+            timer.start();
+            await(barrier);
+            completion.onSuccess();
+            timer.join();
+
+            assertEquals(1, request.successes.get() + request.timeouts.get());
+            assertEquals(0, request.failures.get());
+        }
+    }
+
+    @Test
+    public void testSyncCallerIsWokenBySuccess() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            final AzeroIotCompletion completion = new AzeroIotCompletion("a/b", AZEROIotQos.QOS1, 10000);
+            Thread callback = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    completion.onSuccess();
+                }
+            });
+            callback.start();
+
+            long start = System.nanoTime();
+            completion.get(client);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+            callback.join();
+        }
+    }
+
+    @Test
+    public void testSyncCallerReachesDeadline() throws Exception {
+        AzeroIotCompletion completion = new AzeroIotCompletion("a/b", AZEROIotQos.QOS1, 100);
+
+        long start = System.nanoTime();
+        try {
+            completion.get(client);
+            fail("Expected a timeout");
+        } catch (AZEROIotTimeoutException e) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("timed out after " + elapsed + "ms", elapsed >= 100 && elapsed < 5000);
+        }
+
+        // late callbacks are ignored once timed out
+        completion.onSuccess();
+        try {
+            completion.get(client);
+            fail("Expected a timeout");
+        } catch (AZEROIotTimeoutException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSyncCallerRacingDeadline() throws Exception {
+        // completions arriving right at the deadline must either succeed or
+        // time out, but never leave the caller blocked
+        for (int i = 0; i < 200; i++) {
+            final AzeroIotCompletion completion = new AzeroIotCompletion("a/b", AZEROIotQos.QOS1, 5);
+            Thread callback = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    completion.onSuccess();
+                }
+            });
+            callback.start();
+
+            long start = System.nanoTime();
+            try {
+                completion.get(client);
+            } catch (AZEROIotTimeoutException e) {
+                // expected in some runs
+            }
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+            callback.join();
+        }
+    }
+
+    @Test(expected = AZEROIotException.class)
+    public void testSyncCallerSeesFailure() throws Exception {
+        AzeroIotCompletion completion = new AzeroIotCompletion("a/b", AZEROIotQos.QOS1, 10000);
+        completion.onFailure();
+        completion.get(client);
+    }
+
+    @Test
+    public void testSyncCallerIsWokenWhileCallbackExecutorIsSaturated() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch unblock = new CountDownLatch(1);
+        try {
+            client.setCallbackExecutor(executor);
+            client.setMaxCallbackQueueSize(1);
+            for (int i = 0; i < 100; i++) {
+                client.scheduleTask(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            unblock.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+
+            CountingMessage request = new CountingMessage();
+            final AzeroIotCompletion sync = new AzeroIotCompletion("a/b", AZEROIotQos.QOS1, 0);
+            final AzeroIotCompletion async = new AzeroIotCompletion(request, 0, true);
+            Thread ack = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    sync.complete(true, client);
+                    async.complete(true, client);
+                }
+            });
+            ack.start();
+
+            long start = System.nanoTime();
+            sync.get(client);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+            ack.join();
+
+            // the asynchronous callback waits for a client thread, but isn't
+            // dropped
+            assertEquals(0, request.successes.get());
+            unblock.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(1, request.successes.get());
+            assertEquals(0, client.getRejectedCallbackCount());
+        } finally {
+            unblock.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CountingMessage extends AZEROIotMessage {
+        private final AtomicInteger successes = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger timeouts = new AtomicInteger();
+
+        private CountingMessage() {
+            super("a/b", AZEROIotQos.QOS1);
+        }
+
+        @Override
+        public void onSuccess() {
+            successes.incrementAndGet();
+        }
+
+        @Override
+        public void onFailure() {
+            failures.incrementAndGet();
+        }
+
+        @Override
+        public void onTimeout() {
+            timeouts.incrementAndGet();
+        }
+    }
+
+}
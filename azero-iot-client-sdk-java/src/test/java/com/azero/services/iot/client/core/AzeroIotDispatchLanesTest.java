@@ -0,0 +1,167 @@
+package com.azero.services.iot.client.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.azero.services.iot.client.AZEROIotMqttClient;
+
+public class AzeroIotDispatchLanesTest {
+
+    private ExecutorService executor;
+    private AzeroIotDispatchLanes lanes;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        AZEROIotMqttClient client = AzeroIotTestUtils.newClient();
+        client.setCallbackExecutor(executor);
+        lanes = new AzeroIotDispatchLanes(client);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testTasksRunInOrderPerKey() throws InterruptedException {
+        int keys = 8;
+        int tasks = 1000;
+        final List<List<Integer>> results = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(keys * tasks);
+        for (int k = 0; k < keys; k++) {
+            results.add(Collections.synchronizedList(new ArrayList<Integer>()));
+        }
+        for (int i = 0; i < tasks; i++) {
+            for (int k = 0; k < keys; k++) {
+                final List<Integer> result = results.get(k);
+                final int value = i;
+                lanes.submit("key" + k, new Runnable() {
+                    @Override
+                    public void run() {
+                        result.add(value);
+                        done.countDown();
+                    }
+                });
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (List<Integer> result : results) {
+            assertEquals(tasks, result.size());
+            for (int i = 0; i < tasks; i++) {
+                assertEquals(i, (int) result.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testIdleLanesAreRemoved() throws InterruptedException {
+        int keys = 100;
+        final CountDownLatch done = new CountDownLatch(keys);
+        for (int k = 0; k < keys; k++) {
+            lanes.submit("key" + k, new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (lanes.getLaneCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, lanes.getLaneCount());
+    }
+
+    @Test
+    public void testKeyIsReusedAfterLaneRemoval() throws InterruptedException {
+        final List<Integer> result = Collections.synchronizedList(new ArrayList<Integer>());
+        int rounds = 2000;
+        final CountDownLatch done = new CountDownLatch(rounds);
+        for (int i = 0; i < rounds; i++) {
+            final int value = i;
+            lanes.submit("key", new Runnable() {
+                @Override
+                public void run() {
+                    result.add(value);
+                    done.countDown();
+                }
+            });
+            if (i % 10 == 0) {
+                // give the lane a chance to go idle and be retired
+                Thread.yield();
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < rounds; i++) {
+            assertEquals(i, (int) result.get(i));
+        }
+    }
+
+    @Test
+    public void testRejectedLaneIsReleased() throws InterruptedException {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        final CountDownLatch unblock = new CountDownLatch(1);
+        try {
+            AZEROIotMqttClient client = AzeroIotTestUtils.newClient();
+            client.setCallbackExecutor(single);
+            client.setMaxCallbackQueueSize(1);
+            AzeroIotDispatchLanes lanes = new AzeroIotDispatchLanes(client);
+
+            // occupy the only client thread and the only callback slot
+            client.scheduleTask(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        unblock.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            final CountDownLatch ran = new CountDownLatch(2);
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    ran.countDown();
+                }
+            };
+            lanes.submit("a", task);
+
+            lanes.submit("b", task);
+            lanes.submit("b", task);
+            assertEquals(2, client.getRejectedCallbackCount());
+            assertEquals(1, lanes.getLaneCount());
+
+            // the lane is scheduled again once the client has caught up
+            unblock.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (lanes.getLaneCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            lanes.submit("b", task);
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+            assertEquals(2, client.getRejectedCallbackCount());
+        } finally {
+            unblock.countDown();
+            single.shutdownNow();
+        }
+    }
+
+}
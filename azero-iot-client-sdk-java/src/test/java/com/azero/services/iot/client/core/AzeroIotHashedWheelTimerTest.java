@@ -0,0 +1,267 @@
+package com.azero.services.iot.client.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AzeroIotHashedWheelTimerTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+
+    private ScheduledExecutorService scheduler;
+    private AzeroIotHashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        timer = new AzeroIotHashedWheelTimer(scheduler, DIRECT, 10, 8);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testTimeoutExpires() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        Future<?> future = timer.newTimeout(countDown(latch), 50);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+        future.get(5, TimeUnit.SECONDS);
+        assertTrue(future.isDone());
+        assertFalse(future.isCancelled());
+        assertNoPendingTimeouts();
+    }
+
+    @Test
+    public void testCancelledTimeoutDoesNotRun() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        Future<?> future = timer.newTimeout(increment(runs), 50);
+
+        assertTrue(future.cancel(false));
+        assertFalse(future.cancel(false));
+        assertTrue(future.isCancelled());
+        assertTrue(future.isDone());
+        future.get();
+
+        Thread.sleep(200);
+        assertEquals(0, runs.get());
+        assertNoPendingTimeouts();
+    }
+
+    @Test
+    public void testCancelAfterExpiry() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        Future<?> future = timer.newTimeout(countDown(latch), 10);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        future.get(5, TimeUnit.SECONDS);
+        assertFalse(future.cancel(false));
+        assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void testRescheduling() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        // a request timeout being cancelled and replaced, e.g. on each retry
+        Future<?> future = timer.newTimeout(increment(runs), 30);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(future.cancel(false));
+            future = timer.newTimeout(increment(runs), 30);
+        }
+        assertTrue(future.cancel(false));
+        timer.newTimeout(countDown(latch), 30);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(0, runs.get());
+        assertNoPendingTimeouts();
+    }
+
+    @Test
+    public void testWrapAround() throws Exception {
+        // 8 buckets of 10ms, so a 250ms timeout wraps around the wheel 3 times
+        // and shares its bucket with the shorter ones
+        final long start = System.nanoTime();
+        final long[] elapsed = new long[3];
+        final CountDownLatch latch = new CountDownLatch(elapsed.length);
+        long[] delays = { 10, 90, 250 };
+        for (int i = 0; i < delays.length; i++) {
+            final int index = i;
+            timer.newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    elapsed[index] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    latch.countDown();
+                }
+            }, delays[i]);
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < delays.length; i++) {
+            assertTrue("expired after " + elapsed[i] + "ms", elapsed[i] >= delays[i]);
+        }
+        assertTrue(elapsed[0] < elapsed[1]);
+        assertTrue(elapsed[1] < elapsed[2]);
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testGetTimesOut() throws Exception {
+        Future<?> future = timer.newTimeout(increment(new AtomicInteger()), 10000);
+        future.get(20, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testGetIsWokenByCancel() throws Exception {
+        final Future<?> future = timer.newTimeout(increment(new AtomicInteger()), 10000);
+        Thread canceller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                future.cancel(false);
+            }
+        });
+        canceller.start();
+
+        future.get(5, TimeUnit.SECONDS);
+        assertTrue(future.isCancelled());
+        canceller.join();
+    }
+
+    @Test
+    public void testTimerSharesTheSchedulerThread() throws Exception {
+        final Thread[] threads = new Thread[2];
+        final CountDownLatch latch = new CountDownLatch(2);
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                threads[0] = Thread.currentThread();
+                latch.countDown();
+            }
+        });
+        // rejected by the executor, the task of the timeout runs on the timer
+        // thread rather than being lost
+        timer = new AzeroIotHashedWheelTimer(scheduler, new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                throw new RejectedExecutionException();
+            }
+        }, 10, 8);
+        timer.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                threads[1] = Thread.currentThread();
+                latch.countDown();
+            }
+        }, 20);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertSame(threads[0], threads[1]);
+        assertNoPendingTimeouts();
+    }
+
+    @Test
+    public void testPendingTimeoutsExpireAfterStop() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        timer.newTimeout(countDown(latch), 100);
+
+        // the same order as when the client is shut down
+        timer.stop();
+        scheduler.shutdown();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        assertNoPendingTimeouts();
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testStoppedTimerRejectsTimeouts() {
+        timer.stop();
+        timer.newTimeout(increment(new AtomicInteger()), 10);
+    }
+
+    @Test
+    public void testScheduleAndCancelThroughput() throws Exception {
+        AzeroIotHashedWheelTimer wheelTimer = new AzeroIotHashedWheelTimer(scheduler, DIRECT);
+        try {
+            AtomicInteger runs = new AtomicInteger();
+            int timeouts = 200000;
+            // warm up
+            scheduleAndCancel(wheelTimer, runs, timeouts);
+
+            long start = System.nanoTime();
+            scheduleAndCancel(wheelTimer, runs, timeouts);
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals(0, runs.get());
+            // request timeouts are mostly cancelled, so this is the hot path;
+            // the bound is loose enough for slow build machines
+            long rate = timeouts * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsed);
+            assertTrue("schedule and cancel rate " + rate + "/s", rate > 100000);
+        } finally {
+            wheelTimer.stop();
+        }
+    }
+
+    private void assertNoPendingTimeouts() throws InterruptedException {
+        // the count is updated by the timer thread after the task is handed off
+        long deadline = System.currentTimeMillis() + 5000;
+        while (timer.getPendingTimeouts() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, timer.getPendingTimeouts());
+    }
+
+    private static void scheduleAndCancel(AzeroIotHashedWheelTimer timer, AtomicInteger runs, int timeouts) {
+        for (int i = 0; i < timeouts; i++) {
+            timer.newTimeout(increment(runs), 60000).cancel(false);
+        }
+    }
+
+    private static Runnable countDown(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+
+    private static Runnable increment(final AtomicInteger count) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.azero.services.iot.client.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotMqttClient;
+import com.azero.services.iot.client.AZEROIotQos;
+
+public class AzeroIotInflightWindowTest {
+
+    private final AZEROIotMqttClient client = AzeroIotTestUtils.newClient();
+
+    @Test
+    public void testWindowGrowsWithDefaults() {
+        client.setAdaptiveInflight(true);
+        AzeroIotInflightWindow window = new AzeroIotInflightWindow(client);
+        assertEquals(client.getMaxInflight(), window.getWindow());
+        assertEquals(client.getMaxAdaptiveInflight(), AzeroIotInflightWindow.getMaxWindow(client));
+
+        int initial = window.getWindow();
+        ackAtSteadyPace(window, 100);
+        assertTrue("window is " + window.getWindow(), window.getWindow() > initial);
+    }
+
+    @Test
+    public void testWindowIsCapped() {
+        client.setAdaptiveInflight(true);
+        client.setMaxAdaptiveInflight(20);
+        AzeroIotInflightWindow window = new AzeroIotInflightWindow(client);
+
+        ackAtSteadyPace(window, 10000);
+        assertEquals(20, window.getWindow());
+    }
+
+    @Test
+    public void testLargerMaxInflightIsKept() {
+        client.setMaxInflight(200);
+        assertEquals(200, AzeroIotInflightWindow.getMaxWindow(client));
+        client.setAdaptiveInflight(true);
+        assertEquals(200, AzeroIotInflightWindow.getMaxWindow(client));
+    }
+
+    @Test
+    public void testWindowShrinksWhenAcksSlowDown() {
+        client.setAdaptiveInflight(true);
+        AzeroIotInflightWindow window = new AzeroIotInflightWindow(client);
+        ackAtSteadyPace(window, 100);
+        int grown = window.getWindow();
+
+        assertEquals(AzeroIotInflightWindow.ACQUIRED, window.acquire(newMessage()));
+        window.release(1000000000L, true);
+        assertTrue(window.getWindow() < grown);
+    }
+
+    private static void ackAtSteadyPace(AzeroIotInflightWindow window, int rounds) {
+        AZEROIotMessage message = newMessage();
+        for (int i = 0; i < rounds; i++) {
+            // a full window per round trip, all acknowledged at the same pace
+            int size = window.getWindow();
+            for (int j = 0; j < size; j++) {
+                assertEquals(AzeroIotInflightWindow.ACQUIRED, window.acquire(message));
+            }
+            for (int j = 0; j < size; j++) {
+                assertTrue(window.release(1000000L, true).isEmpty());
+            }
+        }
+    }
+
+    private static AZEROIotMessage newMessage() {
+        return new AZEROIotMessage("a/b", AZEROIotQos.QOS1);
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.azero.services.iot.client.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotQos;
+
+public class AzeroIotMessagePoolTest {
+
+    private static final byte[] PAYLOAD = { 1, 2, 3 };
+
+    @Test
+    public void testReleaseRecyclesMessage() {
+        AzeroIotMessagePool pool = new AzeroIotMessagePool(4);
+        AZEROIotMessage message = pool.obtain("a/b", AZEROIotQos.QOS1, PAYLOAD);
+
+        assertEquals("a/b", message.getTopic());
+        assertEquals(AZEROIotQos.QOS1, message.getQos());
+        assertArrayEquals(PAYLOAD, message.getPayload());
+        assertEquals(0, pool.getIdleCount());
+
+        message.setTimeToLive(1000);
+        assertTrue(message.release());
+        assertEquals(1, pool.getIdleCount());
+        assertNull(message.getTopic());
+        assertNull(message.getQos());
+        assertNull(message.getPayload());
+        assertEquals(0, message.getTimeToLive());
+
+        AZEROIotMessage reused = pool.obtain("c/d", AZEROIotQos.QOS0, PAYLOAD);
+        assertSame(message, reused);
+        assertEquals("c/d", reused.getTopic());
+        assertFalse(reused.isExpired());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testRetainedMessageIsRecycledOnLastRelease() {
+        AzeroIotMessagePool pool = new AzeroIotMessagePool(4);
+        AZEROIotMessage message = pool.obtain("a/b", AZEROIotQos.QOS1, PAYLOAD);
+
+        assertSame(message, message.retain());
+        message.retain();
+        assertFalse(message.release());
+        assertFalse(message.release());
+        assertEquals("a/b", message.getTopic());
+        assertEquals(0, pool.getIdleCount());
+
+        assertTrue(message.release());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void testDoubleReleaseIsRejected() {
+        AzeroIotMessagePool pool = new AzeroIotMessagePool(4);
+        AZEROIotMessage message = pool.obtain("a/b", AZEROIotQos.QOS1, PAYLOAD);
+        assertTrue(message.release());
+
+        try {
+            message.release();
+            fail("Expected the double release to be rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            message.retain();
+            fail("Expected retaining a released message to be rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // the failed release must not put the message back twice
+        assertEquals(1, pool.getIdleCount());
+        AZEROIotMessage first = pool.obtain("a/b", AZEROIotQos.QOS1, PAYLOAD);
+        AZEROIotMessage second = pool.obtain("a/b", AZEROIotQos.QOS1, PAYLOAD);
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void testPoolIsBounded() {
+        AzeroIotMessagePool pool = new AzeroIotMessagePool(2);
+        List<AZEROIotMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            messages.add(pool.obtain("a/b", AZEROIotQos.QOS0, PAYLOAD));
+        }
+        for (AZEROIotMessage message : messages) {
+            assertTrue(message.release());
+        }
+
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    @Test
+    public void testConcurrentRelease() throws Exception {
+        final AzeroIotMessagePool pool = new AzeroIotMessagePool(4);
+        int threads = 8;
+        for (int round = 0; round < 200; round++) {
+            final AZEROIotMessage message = pool.obtain("a/b", AZEROIotQos.QOS0, PAYLOAD);
+            for (int i = 1; i < threads; i++) {
+                message.retain();
+            }
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(threads);
+            final int[] recycled = new int[1];
+            for (int i = 0; i < threads; i++) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            if (message.release()) {
+                                synchronized (recycled) {
+                                    recycled[0]++;
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            // ignore
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+            }
+            start.countDown();
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            synchronized (recycled) {
+                assertEquals(1, recycled[0]);
+            }
+            assertEquals(1, pool.getIdleCount());
+        }
+    }
+
+    @Test
+    public void testUnpooledMessageIgnoresRefCount() {
+        AZEROIotMessage message = new AZEROIotMessage("a/b", AZEROIotQos.QOS0, PAYLOAD);
+
+        assertSame(message, message.retain());
+        assertFalse(message.release());
+        assertFalse(message.release());
+        assertEquals("a/b", message.getTopic());
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.azero.services.iot.client.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.azero.services.iot.client.AZEROIotException;
+import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotMqttClient;
+import com.azero.services.iot.client.AZEROIotQos;
+
+public class AzeroIotOfflineQueueTest {
+
+    @Test
+    public void testExpiredMessageIsDroppedWhileDisconnected() throws AZEROIotException, InterruptedException {
+        AZEROIotMqttClient client = AzeroIotTestUtils.newClient();
+        final AtomicBoolean failed = new AtomicBoolean();
+        AZEROIotMessage message = new AZEROIotMessage("a/b", AZEROIotQos.QOS1, new byte[10]) {
+            @Override
+            public void onFailure() {
+                failed.set(true);
+            }
+        };
+        message.setTimeToLive(50);
+
+        // not connected, so the message is queued to be replayed
+        client.publish(message);
+        AzeroIotOfflineQueue queue = client.getConnection().getOfflinePublishQueue();
+        assertEquals(1, queue.size());
+
+        Thread.sleep(100);
+        assertNull(queue.poll());
+        assertTrue(failed.get());
+        assertEquals(Long.valueOf(1), client.getExpiredMessageCounts().get("a/b"));
+    }
+
+    @Test
+    public void testSnapshotKeepsOrder() {
+        AZEROIotMqttClient client = AzeroIotTestUtils.newClient();
+        client.addConflatedTopic("state/#");
+        AzeroIotOfflineQueue queue = new AzeroIotOfflineQueue(client);
+        AZEROIotMessage first = new AZEROIotMessage("a/b", AZEROIotQos.QOS0, new byte[1]);
+        AZEROIotMessage stale = new AZEROIotMessage("state/1", AZEROIotQos.QOS0, new byte[1]);
+        AZEROIotMessage last = new AZEROIotMessage("c/d", AZEROIotQos.QOS0, new byte[1]);
+        AZEROIotMessage latest = new AZEROIotMessage("state/1", AZEROIotQos.QOS0, new byte[1]);
+        assertTrue(queue.offer(first));
+        assertTrue(queue.offer(stale));
+        assertTrue(queue.offer(last));
+        assertTrue(queue.offer(latest));
+
+        List<AZEROIotMessage> messages = queue.getMessages();
+        assertEquals(3, messages.size());
+        assertSame(first, messages.get(0));
+        assertSame(latest, messages.get(1));
+        assertSame(last, messages.get(2));
+
+        // the snapshot is detached from the queue
+        messages.clear();
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void testRequeuedMessageGoesFirst() {
+        AZEROIotMqttClient client = AzeroIotTestUtils.newClient();
+        client.addConflatedTopic("state/#");
+        AzeroIotOfflineQueue queue = new AzeroIotOfflineQueue(client);
+        AZEROIotMessage first = new AZEROIotMessage("a/b", AZEROIotQos.QOS0, new byte[1]);
+        AZEROIotMessage second = new AZEROIotMessage("c/d", AZEROIotQos.QOS0, new byte[1]);
+        assertTrue(queue.offer(first));
+        assertTrue(queue.offer(second));
+
+        assertSame(first, queue.poll());
+        assertTrue(queue.offerFirst(first));
+        assertSame(first, queue.poll());
+        assertSame(second, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testStaleRequeuedMessageIsDropped() {
+        AZEROIotMqttClient client = AzeroIotTestUtils.newClient();
+        client.addConflatedTopic("state/#");
+        AzeroIotOfflineQueue queue = new AzeroIotOfflineQueue(client);
+        AZEROIotMessage stale = new AZEROIotMessage("state/1", AZEROIotQos.QOS0, new byte[1]);
+        AZEROIotMessage latest = new AZEROIotMessage("state/1", AZEROIotQos.QOS0, new byte[1]);
+        assertTrue(queue.offer(stale));
+        assertSame(stale, queue.poll());
+        assertTrue(queue.offer(latest));
+
+        assertTrue(queue.offerFirst(stale));
+        assertEquals(1, queue.size());
+        assertEquals(1, queue.getSupersededCount());
+        assertSame(latest, queue.poll());
+        assertNull(queue.poll());
+
+        // without a newer value, the requeued message is conflated as usual
+        assertTrue(queue.offerFirst(stale));
+        assertTrue(queue.offer(latest));
+        assertEquals(1, queue.size());
+        assertSame(latest, queue.poll());
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testPublishQueueIsSnapshot() {
+        AZEROIotMqttClient client = AzeroIotTestUtils.newClient();
+        AzeroIotConnection connection = client.getConnection();
+        AZEROIotMessage message = new AZEROIotMessage("a/b", AZEROIotQos.QOS0, new byte[1]);
+        assertTrue(connection.getOfflinePublishQueue().offer(message));
+
+        ConcurrentLinkedQueue<AZEROIotMessage> snapshot = connection.getPublishQueue();
+        assertEquals(1, snapshot.size());
+        assertSame(message, snapshot.peek());
+        int count = 0;
+        for (AZEROIotMessage queued : snapshot) {
+            assertSame(message, queued);
+            count++;
+        }
+        assertEquals(1, count);
+
+        snapshot.poll();
+        assertEquals(1, connection.getOfflinePublishQueue().size());
+    }
+
+    @Test
+    public void testUnexpiredMessageIsReplayed() throws AZEROIotException {
+        AZEROIotMqttClient client = AzeroIotTestUtils.newClient();
+        AZEROIotMessage message = new AZEROIotMessage("a/b", AZEROIotQos.QOS1, new byte[10]);
+        message.setTimeToLive(60000);
+
+        client.publish(message);
+        AZEROIotMessage queued = client.getConnection().getOfflinePublishQueue().poll();
+        assertTrue(queued instanceof AzeroIotCompletion);
+        assertSame(message, ((AzeroIotCompletion) queued).request);
+        assertEquals(message.getExpiryTime(), queued.getExpiryTime());
+        assertEquals(60000, queued.getTimeToLive());
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.azero.services.iot.client.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.azero.services.iot.client.AZEROIotDeflateCodec;
+import com.azero.services.iot.client.AZEROIotGzipCodec;
+import com.azero.services.iot.client.AZEROIotMqttClient;
+
+public class AzeroIotPayloadCodecsTest {
+
+    private static final byte[] DOCUMENT = ("{\"state\":{\"reported\":{\"temperature\":21.5,\"humidity\":40,"
+            + "\"firmware\":\"1.2.3\",\"status\":\"online\",\"readings\":[1,2,3,4,5,6,7,8,9,10,1,2,3,4,5,6,7,8,9,10]}},"
+            + "\"metadata\":{\"reported\":{\"temperature\":{\"timestamp\":1500000000},"
+            + "\"humidity\":{\"timestamp\":1500000000},\"firmware\":{\"timestamp\":1500000000},"
+            + "\"status\":{\"timestamp\":1500000000}}},\"version\":42,\"timestamp\":1500000000}")
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private AZEROIotMqttClient client;
+    private AzeroIotPayloadCodecs codecs;
+
+    @Before
+    public void setUp() {
+        client = AzeroIotTestUtils.newClient();
+        codecs = new AzeroIotPayloadCodecs(client);
+    }
+
+    @Test
+    public void testDeflateRoundTrip() throws IOException {
+        codecs.add("things/+/data", new AZEROIotDeflateCodec());
+
+        byte[] encoded = codecs.encode("things/t1/data", DOCUMENT);
+        assertTrue(encoded.length < DOCUMENT.length);
+        assertArrayEquals(DOCUMENT, codecs.decode("things/t1/data", encoded));
+    }
+
+    @Test
+    public void testGzipRoundTrip() throws IOException {
+        codecs.add("things/+/data", new AZEROIotGzipCodec());
+
+        byte[] encoded = codecs.encode("things/t1/data", DOCUMENT);
+        assertTrue(encoded.length < DOCUMENT.length);
+        assertArrayEquals(DOCUMENT, codecs.decode("things/t1/data", encoded));
+    }
+
+    @Test
+    public void testOtherTopicsArePassedThrough() throws IOException {
+        codecs.add("things/+/data", new AZEROIotDeflateCodec());
+        byte[] encoded = codecs.encode("things/t1/data", DOCUMENT);
+
+        assertSame(DOCUMENT, codecs.encode("other/topic", DOCUMENT));
+        // binary payloads that happen to start with the header are untouched
+        assertSame(encoded, codecs.decode("other/topic", encoded));
+
+        codecs.remove("things/+/data");
+        assertSame(encoded, codecs.decode("things/t1/data", encoded));
+    }
+
+    @Test
+    public void testNothingIsDecodedWithoutCodecs() throws IOException {
+        AzeroIotPayloadCodecs publisher = new AzeroIotPayloadCodecs(client);
+        publisher.add("#", new AZEROIotDeflateCodec());
+        byte[] encoded = publisher.encode("a/b", DOCUMENT);
+
+        assertSame(encoded, codecs.decode("a/b", encoded));
+    }
+
+    @Test
+    public void testDecodedSizeIsLimited() throws IOException {
+        codecs.add("#", new AZEROIotDeflateCodec());
+        codecs.add("gzip/#", new AZEROIotGzipCodec());
+        // highly compressible, so a small payload expands to 10MB
+        byte[] bomb = new byte[10 * 1024 * 1024];
+        byte[] deflated = codecs.encode("a/b", bomb);
+        byte[] gzipped = codecs.encode("gzip/a", bomb);
+        assertTrue(deflated.length < 64 * 1024);
+        assertTrue(gzipped.length < 64 * 1024);
+
+        client.setMaxDecodedPayloadSize(1024 * 1024);
+        assertDecodeFails("a/b", deflated);
+        assertDecodeFails("gzip/a", gzipped);
+
+        client.setMaxDecodedPayloadSize(bomb.length);
+        assertArrayEquals(bomb, codecs.decode("a/b", deflated));
+        assertArrayEquals(bomb, codecs.decode("gzip/a", gzipped));
+    }
+
+    @Test
+    public void testGzipEncodeDoesNotCloseStream() throws IOException {
+        final boolean[] closed = new boolean[1];
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        new AZEROIotGzipCodec().encode(DOCUMENT, out);
+
+        assertFalse(closed[0]);
+        assertTrue(out.size() > 0);
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        new AZEROIotGzipCodec().decode(out.toByteArray(), 0, out.size(), decoded);
+        assertArrayEquals(DOCUMENT, decoded.toByteArray());
+    }
+
+    @Test
+    public void testCodecThroughput() throws IOException {
+        codecs.add("deflate/#", new AZEROIotDeflateCodec());
+        codecs.add("gzip/#", new AZEROIotGzipCodec());
+        int iterations = 5000;
+        // warm up
+        encodeAndDecode("deflate/a", iterations);
+        encodeAndDecode("gzip/a", iterations);
+
+        for (String topic : new String[] { "deflate/a", "gzip/a" }) {
+            long start = System.nanoTime();
+            encodeAndDecode(topic, iterations);
+            long elapsed = System.nanoTime() - start;
+
+            // the bound is loose enough for slow build machines, but catches
+            // e.g. deflaters being created or leaked per payload
+            long rate = iterations * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsed);
+            assertTrue(topic + " round trip rate " + rate + "/s", rate > 2000);
+        }
+    }
+
+    private void encodeAndDecode(String topic, int iterations) throws IOException {
+        for (int i = 0; i < iterations; i++) {
+            byte[] encoded = codecs.encode(topic, DOCUMENT);
+            assertNotSame(DOCUMENT, encoded);
+            if (codecs.decode(topic, encoded).length != DOCUMENT.length) {
+                fail("Round trip failed for " + topic);
+            }
+        }
+    }
+
+    private void assertDecodeFails(String topic, byte[] payload) {
+        try {
+            codecs.decode(topic, payload);
+            fail("Expected the decoded payload to exceed the limit");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+}
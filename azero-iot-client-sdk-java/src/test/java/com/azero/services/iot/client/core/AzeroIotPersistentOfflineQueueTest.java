@@ -0,0 +1,220 @@
+package com.azero.services.iot.client.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.azero.services.iot.client.AZEROIotMessage;
+import com.azero.services.iot.client.AZEROIotMqttClient;
+import com.azero.services.iot.client.AZEROIotQos;
+
+public class AzeroIotPersistentOfflineQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AZEROIotMqttClient client;
+    private File directory;
+    private final List<AzeroIotPersistentOfflineQueue> queues = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        client = AzeroIotTestUtils.newClient();
+        client.setPersistentQueueSegmentSize(64 * 1024);
+        client.setPersistentQueueCapacity(1024 * 1024);
+        directory = folder.newFolder("queue");
+    }
+
+    @After
+    public void tearDown() {
+        for (AzeroIotPersistentOfflineQueue queue : queues) {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void testMessagesSurviveReopen() throws IOException {
+        AzeroIotPersistentOfflineQueue queue = open();
+        assertTrue(queue.offer(new AZEROIotMessage("a/b", AZEROIotQos.QOS1, new byte[] { 1, 2 })));
+        assertTrue(queue.offer(new AZEROIotMessage("c/d", AZEROIotQos.QOS0, new byte[] { 3 })));
+
+        queue.close();
+        queue = open();
+        assertEquals(2, queue.size());
+        AZEROIotMessage message = queue.poll();
+        assertEquals("a/b", message.getTopic());
+        assertEquals(AZEROIotQos.QOS1, message.getQos());
+        assertArrayEquals(new byte[] { 1, 2 }, message.getPayload());
+        assertEquals("c/d", queue.poll().getTopic());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testCallbackMessagesAreNotModified() throws IOException {
+        AzeroIotPersistentOfflineQueue queue = open();
+        AZEROIotMessage request = new AZEROIotMessage("a/b", AZEROIotQos.QOS1, new byte[] { 1, 2, 3 }) {
+            @Override
+            public void onSuccess() {
+            }
+        };
+        byte[] payload = request.getPayloadArray();
+        AzeroIotCompletion completion = new AzeroIotCompletion(request, 0, true);
+        assertTrue(queue.offer(completion));
+
+        // the caller still owns the messages while they are queued
+        assertArrayEquals(payload, completion.getPayloadArray());
+        assertSame(payload, request.getPayloadArray());
+
+        assertSame(completion, queue.poll());
+        assertArrayEquals(payload, completion.getPayload());
+        assertSame(payload, request.getPayloadArray());
+    }
+
+    @Test
+    public void testCloseHandsBackCallbackMessages() throws IOException {
+        AzeroIotPersistentOfflineQueue queue = open();
+        AZEROIotMessage request = new AZEROIotMessage("c/d", AZEROIotQos.QOS1, new byte[] { 2 });
+        AzeroIotCompletion completion = new AzeroIotCompletion(request, 0, true);
+        assertTrue(queue.offer(new AZEROIotMessage("a/b", AZEROIotQos.QOS0, new byte[] { 1 })));
+        assertTrue(queue.offer(completion));
+
+        assertEquals(Arrays.asList((AZEROIotMessage) completion), queue.close());
+        assertTrue(queue.close().isEmpty());
+        assertFalse(queue.offer(new AZEROIotMessage("e/f", AZEROIotQos.QOS0, new byte[] { 3 })));
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+
+        // the directory is unlocked, and only the message without callbacks
+        // is left in it
+        queue = open();
+        assertEquals(1, queue.size());
+        assertEquals("a/b", queue.poll().getTopic());
+    }
+
+    @Test(expected = IOException.class)
+    public void testDirectoryIsLocked() throws IOException {
+        open();
+        open();
+    }
+
+    @Test
+    public void testSyncedQueue() throws IOException {
+        client.setPersistentQueueSync(true);
+        AzeroIotPersistentOfflineQueue queue = open();
+        assertTrue(queue.offer(new AZEROIotMessage("a/b", AZEROIotQos.QOS1, new byte[] { 1 })));
+        queue.close();
+
+        queue = open();
+        assertArrayEquals(new byte[] { 1 }, queue.poll().getPayload());
+    }
+
+    @Test
+    public void testSnapshotKeepsOrder() throws IOException {
+        AzeroIotPersistentOfflineQueue queue = open();
+        AZEROIotMessage request = new AZEROIotMessage("c/d", AZEROIotQos.QOS1, new byte[] { 2 });
+        AzeroIotCompletion completion = new AzeroIotCompletion(request, 0, true);
+        assertTrue(queue.offer(new AZEROIotMessage("a/b", AZEROIotQos.QOS0, new byte[] { 1 })));
+        assertTrue(queue.offer(completion));
+
+        List<AZEROIotMessage> messages = queue.getMessages();
+        assertEquals(2, messages.size());
+        assertEquals("a/b", messages.get(0).getTopic());
+        assertArrayEquals(new byte[] { 1 }, messages.get(0).getPayload());
+        assertSame(completion, messages.get(1));
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void testRequeuedMessageGoesFirst() throws IOException {
+        client.addConflatedTopic("state/#");
+        AzeroIotPersistentOfflineQueue queue = open();
+        queue.offer(new AZEROIotMessage("a/b", AZEROIotQos.QOS1, new byte[] { 1 }));
+        queue.offer(new AZEROIotMessage("c/d", AZEROIotQos.QOS1, new byte[] { 2 }));
+
+        AZEROIotMessage first = queue.poll();
+        assertTrue(queue.offerFirst(first));
+        assertEquals(2, queue.size());
+        assertSame(first, queue.getMessages().get(0));
+        assertSame(first, queue.poll());
+        assertArrayEquals(new byte[] { 2 }, queue.poll().getPayload());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testStaleRequeuedMessageIsDropped() throws IOException {
+        client.addConflatedTopic("state/#");
+        AzeroIotPersistentOfflineQueue queue = open();
+        queue.offer(new AZEROIotMessage("state/a", AZEROIotQos.QOS1, new byte[] { 1 }));
+        AZEROIotMessage stale = queue.poll();
+        queue.offer(new AZEROIotMessage("state/a", AZEROIotQos.QOS1, new byte[] { 2 }));
+
+        assertTrue(queue.offerFirst(stale));
+        assertEquals(1, queue.size());
+        assertEquals(1, queue.getSupersededCount());
+
+        // a requeued message is superseded by a newer one offered later
+        queue.poll();
+        assertTrue(queue.offerFirst(stale));
+        queue.offer(new AZEROIotMessage("state/a", AZEROIotQos.QOS1, new byte[] { 3 }));
+        assertEquals(1, queue.size());
+        assertArrayEquals(new byte[] { 3 }, queue.poll().getPayload());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testConflatedPositionsAreRecovered() throws IOException {
+        client.addConflatedTopic("state/#");
+        AzeroIotPersistentOfflineQueue queue = open();
+        queue.offer(new AZEROIotMessage("state/a", AZEROIotQos.QOS1, new byte[] { 1 }));
+        queue.offer(new AZEROIotMessage("other", AZEROIotQos.QOS1, new byte[] { 2 }));
+        queue.offer(new AZEROIotMessage("state/a", AZEROIotQos.QOS1, new byte[] { 3 }));
+        assertEquals(2, queue.size());
+
+        queue.close();
+        queue = open();
+        // a newer message still supersedes the recovered one
+        queue.offer(new AZEROIotMessage("state/a", AZEROIotQos.QOS1, new byte[] { 4 }));
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.getSupersededCount());
+
+        assertEquals("other", queue.poll().getTopic());
+        assertArrayEquals(new byte[] { 4 }, queue.poll().getPayload());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testDuplicateConflatedRecordsAreDroppedOnRecovery() throws IOException {
+        AzeroIotPersistentOfflineQueue queue = open();
+        // queued before the topic was conflated, e.g. by an older version
+        queue.offer(new AZEROIotMessage("state/a", AZEROIotQos.QOS1, new byte[] { 1 }));
+        queue.offer(new AZEROIotMessage("state/a", AZEROIotQos.QOS1, new byte[] { 2 }));
+
+        client.addConflatedTopic("state/#");
+        queue.close();
+        queue = open();
+        assertEquals(1, queue.size());
+        assertArrayEquals(new byte[] { 2 }, queue.poll().getPayload());
+    }
+
+    private AzeroIotPersistentOfflineQueue open() throws IOException {
+        AzeroIotPersistentOfflineQueue queue = new AzeroIotPersistentOfflineQueue(client, directory);
+        queues.add(queue);
+        return queue;
+    }
+
+}
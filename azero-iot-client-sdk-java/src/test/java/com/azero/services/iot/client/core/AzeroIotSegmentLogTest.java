@@ -0,0 +1,263 @@
+package com.azero.services.iot.client.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AzeroIotSegmentLogTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final int HEADER_LENGTH = 9;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private final List<AzeroIotSegmentLog> logs = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("log");
+    }
+
+    @After
+    public void tearDown() {
+        for (AzeroIotSegmentLog log : logs) {
+            log.close();
+        }
+    }
+
+    @Test
+    public void testAppendReadAndRemove() throws IOException {
+        AzeroIotSegmentLog log = open();
+        long first = log.append(data("first"));
+        long second = log.append(data("second"));
+
+        assertEquals(2, log.getRecordCount());
+        assertEquals(11, log.getRecordBytes());
+        assertEquals(first, log.head());
+        assertArrayEquals(data("first"), log.read(first));
+        assertEquals(Arrays.asList(first, second), log.getPositions());
+
+        log.remove(first);
+        // removing twice has no effect
+        log.remove(first);
+        assertEquals(1, log.getRecordCount());
+        assertEquals(second, log.head());
+        assertArrayEquals(data("second"), log.read(second));
+
+        log.remove(second);
+        assertEquals(-1, log.head());
+        assertEquals(0, log.getRecordCount());
+        assertEquals(0, log.getRecordBytes());
+    }
+
+    @Test
+    public void testReopenRecoversRecords() throws IOException {
+        AzeroIotSegmentLog log = open();
+        long removed = log.append(data("removed"));
+        for (int i = 0; i < 100; i++) {
+            log.append(data("record " + i));
+        }
+        log.remove(removed);
+        int segments = log.getSegmentCount();
+        assertTrue(segments > 1);
+
+        log.close();
+        log = open();
+        assertEquals(100, log.getRecordCount());
+        assertEquals(segments, log.getSegmentCount());
+        for (int i = 0; i < 100; i++) {
+            long position = log.head();
+            assertArrayEquals(data("record " + i), log.read(position));
+            log.remove(position);
+        }
+        assertEquals(-1, log.head());
+
+        // appending continues after the recovered records
+        long position = log.append(data("after"));
+        log.close();
+        log = open();
+        assertEquals(position, log.head());
+        assertArrayEquals(data("after"), log.read(position));
+    }
+
+    @Test
+    public void testTornRecordIsTruncated() throws IOException {
+        AzeroIotSegmentLog log = open();
+        long first = log.append(data("first"));
+        long torn = log.append(data("torn"));
+        log.append(data("third"));
+
+        log.close();
+
+        // corrupt the data of the second record, as if the write was torn
+        corrupt(segmentFiles()[0], (int) torn + HEADER_LENGTH);
+
+        log = open();
+        assertEquals(1, log.getRecordCount());
+        assertEquals(Arrays.asList(first), log.getPositions());
+
+        // the torn record is overwritten by the next append
+        long next = log.append(data("next"));
+        assertEquals(torn, next);
+        log.close();
+        log = open();
+        assertEquals(2, log.getRecordCount());
+        log.remove(log.head());
+        assertArrayEquals(data("next"), log.read(log.head()));
+    }
+
+    @Test
+    public void testUncommittedRecordIsIgnored() throws IOException {
+        AzeroIotSegmentLog log = open();
+        log.append(data("first"));
+        long uncommitted = log.append(data("uncommitted"));
+        log.close();
+
+        // clear the commit marker, as if the process died before writing it
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles()[0], "rw")) {
+            file.seek(uncommitted);
+            file.write(0);
+        }
+
+        log = open();
+        assertEquals(1, log.getRecordCount());
+    }
+
+    @Test
+    public void testConsumedSegmentsAreDeleted() throws IOException {
+        AzeroIotSegmentLog log = open();
+        byte[] record = new byte[200];
+        for (int i = 0; i < 20; i++) {
+            log.append(record);
+        }
+        assertTrue(log.getSegmentCount() >= 4);
+        assertEquals(log.getSegmentCount(), segmentFiles().length);
+
+        long position;
+        while ((position = log.head()) >= 0) {
+            log.remove(position);
+        }
+        // only the segment being appended to is kept
+        assertEquals(1, log.getSegmentCount());
+        assertEquals(1, segmentFiles().length);
+    }
+
+    @Test
+    public void testCapacityIsBounded() throws IOException {
+        AzeroIotSegmentLog log = open(2 * SEGMENT_SIZE, false);
+        byte[] record = new byte[200];
+        int appended = 0;
+        while (log.append(record) >= 0) {
+            appended++;
+        }
+        assertEquals(8, appended);
+        assertEquals(-1, log.append(new byte[SEGMENT_SIZE]));
+
+        // consuming the first segment makes room again
+        for (int i = 0; i < 4; i++) {
+            log.remove(log.head());
+        }
+        assertTrue(log.append(record) >= 0);
+    }
+
+    @Test
+    public void testDirectoryIsLocked() throws IOException {
+        AzeroIotSegmentLog log = open();
+        try {
+            open();
+            fail("Expected the directory to be locked");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // closing is idempotent and unlocks the directory
+        log.close();
+        log.close();
+        assertFalse(log.isOpen());
+        assertTrue(open().isOpen());
+    }
+
+    @Test
+    public void testClosedLogKeepsRecords() throws IOException {
+        AzeroIotSegmentLog log = open();
+        long position = log.append(data("kept"));
+        log.close();
+        try {
+            log.append(data("rejected"));
+            fail("Expected the log to be closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        log = open();
+        assertEquals(1, log.getRecordCount());
+        assertArrayEquals(data("kept"), log.read(position));
+    }
+
+    @Test
+    public void testSyncedAppends() throws IOException {
+        AzeroIotSegmentLog log = open(16 * SEGMENT_SIZE, true);
+        long first = log.append(data("first"));
+        log.append(data("second"));
+        log.force();
+        log.close();
+
+        log = open();
+        assertEquals(2, log.getRecordCount());
+        assertArrayEquals(data("first"), log.read(first));
+    }
+
+    private AzeroIotSegmentLog open() throws IOException {
+        return open(16 * SEGMENT_SIZE, false);
+    }
+
+    private AzeroIotSegmentLog open(long capacity, boolean sync) throws IOException {
+        AzeroIotSegmentLog log = new AzeroIotSegmentLog(directory, SEGMENT_SIZE, capacity, sync);
+        logs.add(log);
+        return log;
+    }
+
+    private File[] segmentFiles() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".log");
+            }
+        });
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static void corrupt(File file, int offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0xFF);
+        }
+    }
+
+    private static byte[] data(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
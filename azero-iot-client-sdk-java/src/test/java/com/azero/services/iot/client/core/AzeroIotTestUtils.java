@@ -0,0 +1,46 @@
+package com.azero.services.iot.client.core;
+
+import java.lang.management.ManagementFactory;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import com.azero.services.iot.client.AZEROIotMqttClient;
+
+/**
+ * Helpers shared by the unit tests.
+ */
+public final class AzeroIotTestUtils {
+
+    private AzeroIotTestUtils() {
+    }
+
+    /**
+     * Creates a client that is never connected, for testing the client-side
+     * logic only.
+     *
+     * @return the client
+     */
+    public static AZEROIotMqttClient newClient() {
+        return new AZEROIotMqttClient("test.iot.us-east-1.amazonaws.com", "test",
+                (SSLSocketFactory) SSLSocketFactory.getDefault());
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread.
+     *
+     * @return the allocated bytes, or -1 if the JVM doesn't support measuring
+     *         allocations
+     */
+    public static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) bean;
+        if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.azero.services.iot.client.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.azero.services.iot.client.AZEROIotTopic;
+
+public class AzeroIotTopicMatchCacheTest {
+
+    private static final List<AZEROIotTopic> MATCHES = Arrays.asList(new AZEROIotTopic("a/#"));
+
+    @Test
+    public void testGetAndPut() {
+        AzeroIotTopicMatchCache cache = new AzeroIotTopicMatchCache(10);
+
+        assertNull(cache.get("a/b"));
+        cache.put("a/b", MATCHES, cache.getGeneration());
+        assertEquals(MATCHES, cache.get("a/b"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testStaleGenerationIsNotCached() {
+        AzeroIotTopicMatchCache cache = new AzeroIotTopicMatchCache(10);
+        long generation = cache.getGeneration();
+        cache.put("a/b", MATCHES, generation);
+
+        cache.invalidate();
+        assertNull(cache.get("a/b"));
+
+        List<AZEROIotTopic> result = cache.put("a/c", MATCHES, generation);
+        assertEquals(MATCHES, result);
+        assertNull(cache.get("a/c"));
+    }
+
+    @Test
+    public void testCapacityIsBounded() {
+        int capacity = 100;
+        AzeroIotTopicMatchCache cache = new AzeroIotTopicMatchCache(capacity);
+        int topics = 1000;
+        for (int i = 0; i < topics; i++) {
+            cache.put("t/" + i, MATCHES, cache.getGeneration());
+        }
+
+        int cached = 0;
+        for (int i = 0; i < topics; i++) {
+            if (cache.get("t/" + i) != null) {
+                cached++;
+            }
+        }
+        assertTrue("cached " + cached, cached <= capacity);
+        assertTrue("cached " + cached, cached > capacity / 2);
+    }
+
+    @Test
+    public void testRecentlyUsedTopicIsKept() {
+        AzeroIotTopicMatchCache cache = new AzeroIotTopicMatchCache(4);
+        cache.put("hot", MATCHES, cache.getGeneration());
+        for (int i = 0; i < 100; i++) {
+            cache.get("hot");
+            cache.put("t/" + i, MATCHES, cache.getGeneration());
+        }
+
+        assertEquals(MATCHES, cache.get("hot"));
+    }
+
+}
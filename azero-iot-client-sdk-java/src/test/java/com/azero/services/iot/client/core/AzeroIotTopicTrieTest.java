@@ -0,0 +1,201 @@
+package com.azero.services.iot.client.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.azero.services.iot.client.AZEROIotMqttClient;
+import com.azero.services.iot.client.AZEROIotTopic;
+
+public class AzeroIotTopicTrieTest {
+
+    private static final String[] FILTERS = { "a/b/c", "a/+/c", "a/#", "#", "+/b/c", "+", "a/b", "$aws/things/+/shadow/#",
+            "$SYS/#", "+/+", "a/b/c/#" };
+
+    private static final String[] TOPICS = { "a", "a/b", "a/b/c", "a/x/c", "a/b/c/d", "b", "b/b/c", "a//c", "/a",
+            "$aws/things/t1/shadow/update", "$SYS/broker", "$SYS", "x/y/z" };
+
+    private AzeroIotTopicTrie trie;
+    private AZEROIotMqttClient client;
+
+    @Before
+    public void setUp() {
+        trie = new AzeroIotTopicTrie();
+        client = AzeroIotTestUtils.newClient();
+    }
+
+    @Test
+    public void testExactMatch() {
+        AZEROIotTopic topic = put("a/b/c");
+
+        assertSame(topic, trie.match("a/b/c").get(0));
+        assertTrue(trie.match("a/b").isEmpty());
+        assertTrue(trie.match("a/b/c/d").isEmpty());
+        assertTrue(trie.match("a/b/x").isEmpty());
+    }
+
+    @Test
+    public void testSingleLevelWildcard() {
+        put("a/+/c");
+        put("+");
+
+        assertMatches("a/b/c", "a/+/c");
+        assertMatches("a//c", "a/+/c");
+        assertMatches("a/b/c/d");
+        assertMatches("a/c");
+        assertMatches("a", "+");
+        assertMatches("a/b");
+    }
+
+    @Test
+    public void testMultiLevelWildcard() {
+        put("a/#");
+        put("#");
+
+        assertMatches("a/b/c", "a/#", "#");
+        assertMatches("a/b", "a/#", "#");
+        assertMatches("b", "#");
+        assertMatches("/a", "#");
+    }
+
+    @Test
+    public void testMultiLevelWildcardMatchesParentLevel() {
+        put("a/b/#");
+
+        assertMatches("a/b", "a/b/#");
+        assertMatches("a/b/c", "a/b/#");
+        assertMatches("a");
+        assertMatches("a/bc");
+    }
+
+    @Test
+    public void testReservedTopics() {
+        put("#");
+        put("+/things/+/shadow/update");
+        put("$aws/things/+/shadow/#");
+        put("$SYS/#");
+
+        assertMatches("$aws/things/t1/shadow/update", "$aws/things/+/shadow/#");
+        assertMatches("$SYS", "$SYS/#");
+        assertMatches("$SYS/broker", "$SYS/#");
+        assertMatches("aws/things/t1/shadow/update", "#", "+/things/+/shadow/update");
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        AZEROIotTopic abc = put("a/b/c");
+        put("a/b");
+        put("a/#");
+
+        assertSame(abc, trie.remove("a/b/c"));
+        assertNull(trie.remove("a/b/c"));
+        assertNull(trie.remove("a/x"));
+        assertMatches("a/b/c", "a/#");
+        assertMatches("a/b", "a/b", "a/#");
+
+        trie.clear();
+        assertTrue(trie.match("a/b").isEmpty());
+        assertTrue(trie.match("a").isEmpty());
+    }
+
+    @Test
+    public void testTopicFilterMatch() {
+        assertTrue(client.topicFilterMatch("a/b/c", "a/b/c"));
+        assertTrue(client.topicFilterMatch("a/+/c", "a/b/c"));
+        assertTrue(client.topicFilterMatch("a/+/c", "a//c"));
+        assertTrue(client.topicFilterMatch("+", "a"));
+        assertTrue(client.topicFilterMatch("#", "a/b/c"));
+        assertTrue(client.topicFilterMatch("a/#", "a/b/c"));
+        assertTrue(client.topicFilterMatch("a/#", "a"));
+        assertTrue(client.topicFilterMatch("$aws/things/+/shadow/#", "$aws/things/t1/shadow/update"));
+
+        assertFalse(client.topicFilterMatch("a/b", "a/b/c"));
+        assertFalse(client.topicFilterMatch("a/b/c", "a/b"));
+        assertFalse(client.topicFilterMatch("a/+", "a/b/c"));
+        assertFalse(client.topicFilterMatch("+", "a/b"));
+        assertFalse(client.topicFilterMatch("a/#", "ab"));
+        assertFalse(client.topicFilterMatch("#", "$SYS/broker"));
+        assertFalse(client.topicFilterMatch("+/things/+/shadow/update", "$aws/things/t1/shadow/update"));
+        assertFalse(client.topicFilterMatch(null, "a"));
+        assertFalse(client.topicFilterMatch("a", null));
+    }
+
+    @Test
+    public void testTrieAgreesWithTopicFilterMatch() {
+        for (String filter : FILTERS) {
+            put(filter);
+        }
+        for (String topic : TOPICS) {
+            Set<String> expected = new HashSet<>();
+            for (String filter : FILTERS) {
+                if (client.topicFilterMatch(filter, topic)) {
+                    expected.add(filter);
+                }
+            }
+            assertEquals(topic, expected, getFilters(trie.match(topic)));
+        }
+    }
+
+    @Test
+    public void testTopicFilterMatchDoesNotAllocate() {
+        assumeTrue(AzeroIotTestUtils.getAllocatedBytes() >= 0);
+
+        int iterations = 100000;
+        int matches = 0;
+        for (int i = 0; i < iterations; i++) {
+            matches += matchAll();
+        }
+
+        long before = AzeroIotTestUtils.getAllocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            matches += matchAll();
+        }
+        long allocated = AzeroIotTestUtils.getAllocatedBytes() - before;
+
+        assertTrue(matches > 0);
+        // allow for the measurement itself, but nothing proportional to the calls
+        assertTrue("allocated " + allocated + " bytes", allocated < iterations);
+    }
+
+    private int matchAll() {
+        int matches = 0;
+        for (String filter : FILTERS) {
+            for (String topic : TOPICS) {
+                if (client.topicFilterMatch(filter, topic)) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private AZEROIotTopic put(String topicFilter) {
+        AZEROIotTopic topic = new AZEROIotTopic(topicFilter);
+        trie.put(topicFilter, topic);
+        return topic;
+    }
+
+    private void assertMatches(String topic, String... topicFilters) {
+        assertEquals(topic, new HashSet<>(Arrays.asList(topicFilters)), getFilters(trie.match(topic)));
+    }
+
+    private static Set<String> getFilters(List<AZEROIotTopic> topics) {
+        Set<String> filters = new HashSet<>();
+        for (AZEROIotTopic topic : topics) {
+            filters.add(topic.getTopic());
+        }
+        return filters;
+    }
+
+}
@@ -0,0 +1,187 @@
+package com.azero.services.iot.client.mqtt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.internal.MqttPersistentData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AzeroIotMqttFilePersistenceTest {
+
+    private static final int FILE_SIZE = 1024;
+    private static final int HEADER_LENGTH = 15;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private AzeroIotMqttFilePersistence persistence;
+
+    @Before
+    public void setUp() throws IOException, MqttPersistenceException {
+        directory = folder.newFolder("persistence");
+        persistence = open();
+    }
+
+    @After
+    public void tearDown() throws MqttPersistenceException {
+        if (persistence.isOpen()) {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void testPutReplaceAndRemove() throws MqttPersistenceException {
+        persistence.put("s-1", persistable("header", "first"));
+        persistence.put("s-2", persistable("header", "second"));
+        assertTrue(persistence.containsKey("s-1"));
+        assertEquals(keys("s-1", "s-2"), keys());
+        assertPersisted("header", "first", persistence.get("s-1"));
+
+        persistence.put("s-1", persistable("replaced", "first"));
+        assertEquals(keys("s-1", "s-2"), keys());
+        assertPersisted("replaced", "first", persistence.get("s-1"));
+
+        persistence.remove("s-2");
+        assertFalse(persistence.containsKey("s-2"));
+        assertNull(persistence.get("s-2"));
+        assertEquals(keys("s-1"), keys());
+
+        persistence.clear();
+        assertTrue(keys().isEmpty());
+    }
+
+    @Test
+    public void testReopenRecoversLiveRecords() throws MqttPersistenceException {
+        persistence.put("s-1", persistable("header", "first"));
+        persistence.put("s-2", persistable("header", "second"));
+        persistence.put("s-3", persistable("header", "third"));
+        persistence.put("s-1", persistable("replaced", "first"));
+        persistence.remove("s-2");
+        persistence.close();
+
+        persistence = open();
+        assertEquals(keys("s-1", "s-3"), keys());
+        assertPersisted("replaced", "first", persistence.get("s-1"));
+        assertPersisted("header", "third", persistence.get("s-3"));
+    }
+
+    @Test
+    public void testTornRecordIsNotRecovered() throws IOException, MqttPersistenceException {
+        persistence.put("a", persistable("hh", "ppp"));
+        persistence.put("b", persistable("hh", "ppp"));
+        persistence.put("c", persistable("hh", "ppp"));
+        File file = persistence.getFile();
+        persistence.close();
+
+        // corrupt the header of the second record, as if the write was torn
+        int recordLength = HEADER_LENGTH + 1 + 2 + 3;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(recordLength + HEADER_LENGTH + 1);
+            raf.write('x');
+        }
+
+        // the log is truncated at the torn record
+        persistence = open();
+        assertEquals(keys("a"), keys());
+
+        // appending continues at the torn record, without bringing back the
+        // records after it
+        persistence.put("d", persistable("hh", "ppp"));
+        persistence.close();
+        persistence = open();
+        assertEquals(keys("a", "d"), keys());
+        assertPersisted("hh", "ppp", persistence.get("d"));
+    }
+
+    @Test
+    public void testCompactionReclaimsRemovedRecords() throws MqttPersistenceException {
+        byte[] payload = new byte[100];
+        for (int i = 0; i < 100; i++) {
+            persistence.put("s-" + i, new MqttPersistentData("s-" + i, new byte[2], 0, 2, payload, 0, payload.length));
+            persistence.remove("s-" + i);
+        }
+        persistence.put("s-last", persistable("header", "last"));
+        assertEquals(FILE_SIZE, persistence.getFile().length());
+        assertEquals(keys("s-last"), keys());
+        assertPersisted("header", "last", persistence.get("s-last"));
+    }
+
+    @Test
+    public void testCompactionGrowsFile() throws MqttPersistenceException {
+        byte[] payload = new byte[100];
+        for (int i = 0; i < 50; i++) {
+            payload[0] = (byte) i;
+            persistence.put("s-" + i, new MqttPersistentData("s-" + i, new byte[2], 0, 2, payload, 0, payload.length));
+        }
+        assertTrue(persistence.getFile().length() > FILE_SIZE);
+        persistence.close();
+
+        persistence = open();
+        assertEquals(50, keys().size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals((byte) i, persistence.get("s-" + i).getPayloadBytes()[0]);
+        }
+    }
+
+    @Test
+    public void testFileIsLockedWhileOpen() throws MqttPersistenceException {
+        try {
+            open();
+            fail("Expected the persistence to be in use");
+        } catch (MqttPersistenceException e) {
+            assertEquals(MqttPersistenceException.REASON_CODE_PERSISTENCE_IN_USE, e.getReasonCode());
+        }
+
+        persistence.close();
+        assertFalse(persistence.isOpen());
+        // released on close
+        persistence = open();
+    }
+
+    private AzeroIotMqttFilePersistence open() throws MqttPersistenceException {
+        AzeroIotMqttFilePersistence newPersistence = new AzeroIotMqttFilePersistence(directory, FILE_SIZE);
+        newPersistence.open("client", "ssl://localhost:8883");
+        return newPersistence;
+    }
+
+    private Set<String> keys(String... keys) {
+        Set<String> set = new HashSet<>();
+        Collections.addAll(set, keys);
+        return set;
+    }
+
+    private Set<String> keys() throws MqttPersistenceException {
+        return new HashSet<>(Collections.list(persistence.keys()));
+    }
+
+    private static MqttPersistable persistable(String header, String payload) {
+        byte[] headerBytes = header.getBytes();
+        byte[] payloadBytes = payload.getBytes();
+        return new MqttPersistentData("", headerBytes, 0, headerBytes.length, payloadBytes, 0, payloadBytes.length);
+    }
+
+    private static void assertPersisted(String header, String payload, MqttPersistable persistable)
+            throws MqttPersistenceException {
+        assertArrayEquals(header.getBytes(), persistable.getHeaderBytes());
+        assertArrayEquals(payload.getBytes(), persistable.getPayloadBytes());
+    }
+
+}